@@ -18,6 +18,10 @@ if (CUDA_SUCCESS != status) {\
   return rtn;\
 }
 
+//exception summary the kernel keeps in the gc info, see CudaKernel.c
+#define EXCEPTION_COUNT_OFFSET        24
+#define FIRST_EXCEPTION_OFFSET        32
+
 static CUdevice cuDevice;
 static CUmodule cuModule;
 static CUfunction cuFunction;
@@ -93,12 +97,44 @@ void throw_cuda_errror_exception(JNIEnv *env, const char *message, int error) {
 
 void setLongField(JNIEnv *env, jobject obj, const char * name, jlong value){
 
-  jfieldID fid = (*env)->GetFieldID(env, thisRefClass, name, "J");
+  jclass cls = (*env)->GetObjectClass(env, obj);
+  jfieldID fid = (*env)->GetFieldID(env, cls, name, "J");
   (*env)->SetLongField(env, obj, fid, value);
   
   return;
 }
 
+jlong getLongField(JNIEnv *env, jobject obj, const char * name){
+
+  jclass cls = (*env)->GetObjectClass(env, obj);
+  jfieldID fid = (*env)->GetFieldID(env, cls, name, "J");
+  return (*env)->GetLongField(env, obj, fid);
+}
+
+/*
+ * Copies the first size bytes of the to-space between host and device. The
+ * range [skip_start, skip_end) is left out when it is not empty, the java 
+ * side only sets it when the device already holds the same bytes.
+ */
+void copyToSpace(int to_device, jlong size, jlong skip_start, jlong skip_end){
+
+  if(skip_end <= skip_start || skip_end > size){
+    skip_start = size;
+    skip_end = size;
+  }
+  if(to_device){
+    cuMemcpyHtoD(gpuToSpace, toSpace, skip_start);
+    if(size > skip_end){
+      cuMemcpyHtoD(gpuToSpace + skip_end, (char *) toSpace + skip_end, size - skip_end);
+    }
+  } else {
+    cuMemcpyDtoH(toSpace, gpuToSpace, skip_start);
+    if(size > skip_end){
+      cuMemcpyDtoH((char *) toSpace + skip_end, gpuToSpace + skip_end, size - skip_end);
+    }
+  }
+}
+
 void getBestDevice(JNIEnv *env){
   int num_devices;
   int status;
@@ -667,11 +703,17 @@ JNIEXPORT jint JNICALL Java_edu_syr_pcpratts_rootbeer_runtime2_cuda_CudaRuntime2
   (JNIEnv *env, jobject this_obj, jint num_blocks, jint block_shape, jint grid_shape){
 
   CUresult status;
-  jlong * infoSpace = (jlong *) malloc(gc_space_size);
+  jlong skipStart = getLongField(env, this_obj, "m_SkipStart");
+  jlong skipEnd = getLongField(env, this_obj, "m_SkipEnd");
+  jlong * infoSpace = (jlong *) calloc(1, gc_space_size);
+  jlong num_exceptions;
+  jint first_exception;
   infoSpace[1] = heapEndPtr;
+  //the kernel counts the faulting threads and keeps the lowest index
+  *((jint *) ((char *) infoSpace + FIRST_EXCEPTION_OFFSET)) = num_blocks;
   cuCtxPushCurrent(cuContext);
   cuMemcpyHtoD(gcInfoSpace, infoSpace, gc_space_size);
-  cuMemcpyHtoD(gpuToSpace, toSpace, heapEndPtr);
+  copyToSpace(1, heapEndPtr, skipStart, skipEnd);
   //cuMemcpyHtoD(gpuTexture, textureMemory, textureMemSize);
   cuMemcpyHtoD(gpuHandlesMemory, handlesMemory, num_blocks * sizeof(jlong));
   cuMemcpyHtoD(gpuHeapEndPtr, &heapEndPtr, sizeof(jlong));
@@ -714,8 +756,15 @@ JNIEXPORT jint JNICALL Java_edu_syr_pcpratts_rootbeer_runtime2_cuda_CudaRuntime2
   
   cuMemcpyDtoH(infoSpace, gcInfoSpace, gc_space_size);
   heapEndPtr = infoSpace[1];
-  cuMemcpyDtoH(toSpace, gpuToSpace, heapEndPtr);
-  cuMemcpyDtoH(exceptionsMemory, gpuExceptionsMemory, num_blocks * sizeof(jlong));
+  copyToSpace(0, heapEndPtr, skipStart, skipEnd);
+  num_exceptions = *((jlong *) ((char *) infoSpace + EXCEPTION_COUNT_OFFSET));
+  first_exception = *((jint *) ((char *) infoSpace + FIRST_EXCEPTION_OFFSET));
+  if(num_exceptions != 0){
+    cuMemcpyDtoH((jint *) exceptionsMemory + first_exception, 
+      gpuExceptionsMemory + first_exception * sizeof(jint), sizeof(jint));
+  }
+  setLongField(env, this_obj, "m_ExceptionCount", num_exceptions);
+  setLongField(env, this_obj, "m_FirstException", (jlong) first_exception);
   free(infoSpace);
   cuCtxPopCurrent(&cuContext);
   
@@ -180,3 +180,14 @@ JNIEXPORT void JNICALL Java_edu_syr_pcpratts_rootbeer_runtime2_cuda_FastMemory_d
   jlong * longHostMemory = (jlong *) cpu_base;
   longHostMemory[ptr / 8] = value;
 }
+
+/*
+ * Class:     edu_syr_pcpratts_rootbeer_runtime2_cuda_FastMemory
+ * Method:    doWrap
+ * Signature: (JJ)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_edu_syr_pcpratts_rootbeer_runtime2_cuda_FastMemory_doWrap
+  (JNIEnv *env, jclass cls, jlong address, jlong length){
+
+  return (*env)->NewDirectByteBuffer(env, (void *) address, length);
+}
@@ -119,6 +119,14 @@ JNIEXPORT void JNICALL Java_edu_syr_pcpratts_rootbeer_runtime2_cuda_FastMemory_d
 JNIEXPORT void JNICALL Java_edu_syr_pcpratts_rootbeer_runtime2_cuda_FastMemory_doWriteLong
   (JNIEnv *, jobject, jlong, jlong, jlong);
 
+/*
+ * Class:     edu_syr_pcpratts_rootbeer_runtime2_cuda_FastMemory
+ * Method:    doWrap
+ * Signature: (JJ)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_edu_syr_pcpratts_rootbeer_runtime2_cuda_FastMemory_doWrap
+  (JNIEnv *, jclass, jlong, jlong);
+
 #ifdef __cplusplus
 }
 #endif
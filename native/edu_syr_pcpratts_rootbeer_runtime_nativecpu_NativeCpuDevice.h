@@ -10,10 +10,18 @@ extern "C" {
 /*
  * Class:     edu_syr_pcpratts_rootbeer_runtime_nativecpu_NativeCpuDevice
  * Method:    runOnCpu
- * Signature: (Ljava/util/List;I[B[B[B[B[IILjava/lang/String;)V
+ * Signature: ([Ljava/nio/ByteBuffer;JLjava/nio/ByteBuffer;Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;[IIIJ)V
  */
 JNIEXPORT void JNICALL Java_edu_syr_pcpratts_rootbeer_runtime_nativecpu_NativeCpuDevice_runOnCpu
-  (JNIEnv *, jobject, jobject, jint, jbyteArray, jbyteArray, jbyteArray, jbyteArray, jintArray, jint, jstring);
+  (JNIEnv *, jobject, jobjectArray, jlong, jobject, jobject, jobject, jobject, jintArray, jint, jint, jlong);
+
+/*
+ * Class:     edu_syr_pcpratts_rootbeer_runtime_nativecpu_NativeCpuDevice
+ * Method:    loadEntry
+ * Signature: (Ljava/lang/String;)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_syr_pcpratts_rootbeer_runtime_nativecpu_NativeCpuDevice_loadEntry
+  (JNIEnv *, jobject, jstring);
 
 #ifdef __cplusplus
 }
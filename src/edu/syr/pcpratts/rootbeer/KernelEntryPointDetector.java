@@ -33,14 +33,19 @@ public class KernelEntryPointDetector implements EntryPointDetector {
   }
 
   private boolean isKernel(SootMethod sm){
-    if(sm.getSubSignature().equals("void gpuMethod()") == false){
+    String iface_name;
+    if(sm.getSubSignature().equals("void gpuMethod()")){
+      iface_name = "edu.syr.pcpratts.rootbeer.runtime.Kernel";
+    } else if(sm.getSubSignature().equals("void gpuMethod(int)")){
+      iface_name = "edu.syr.pcpratts.rootbeer.runtime.IndexedKernel";
+    } else {
       return false;
     }
     SootClass soot_class = sm.getDeclaringClass();
     Iterator<SootClass> iter = soot_class.getInterfaces().iterator();
     while(iter.hasNext()){
       SootClass iface = iter.next();
-      if(iface.getName().equals("edu.syr.pcpratts.rootbeer.runtime.Kernel")){
+      if(iface.getName().equals(iface_name)){
         return true;
       }
     }
@@ -76,7 +76,8 @@ public class TestCaseEntryPointDetector implements EntryPointDetector {
         Iterator<SootClass> iter = to_call.getInterfaces().iterator();
         while(iter.hasNext()){
           SootClass iface = iter.next();
-          if(iface.getName().equals("edu.syr.pcpratts.rootbeer.runtime.Kernel")){
+          if(iface.getName().equals("edu.syr.pcpratts.rootbeer.runtime.Kernel") ||
+            iface.getName().equals("edu.syr.pcpratts.rootbeer.runtime.IndexedKernel")){
             return to_call;
           }
         }
@@ -37,7 +37,13 @@ public class Transform2 {
     OpenCLScene.setInstance(scene);
     
     SootClass soot_class1 = Scene.v().getSootClass(cls);
-    SootMethod method = soot_class1.getMethod("void gpuMethod()");
+    SootMethod method;
+    if(soot_class1.declaresMethod("void gpuMethod()")){
+      method = soot_class1.getMethod("void gpuMethod()");
+    } else {
+      //an IndexedKernel
+      method = soot_class1.getMethod("void gpuMethod(int)");
+    }
     
     //generate RuntimeBasicBlock and GcObjectVisitor
     String uuid = getUuid();
@@ -39,6 +39,13 @@ public class Configuration {
   private boolean m_compilerInstance;
   private static boolean m_runAll;
   private static boolean m_printMem;
+  private static int m_serializerThreads;
+  private static long m_nemuHeapCeiling = 512L*1024L*1024L;
+  private static boolean m_nemuDebug;
+  private static boolean m_nemuNativeArch;
+  private static int m_nemuThreads;
+  private static int m_pipelineDepth;
+  private static boolean m_hybridCpu;
   private boolean m_remapAll;
   
   private Configuration(){
@@ -88,4 +95,90 @@ public class Configuration {
   public static void setPrintMem(boolean print){
     m_printMem = print;
   }
+  
+  public static int getSerializerThreads(){
+    if(m_serializerThreads <= 0){
+      return Runtime.getRuntime().availableProcessors();
+    }
+    return m_serializerThreads;
+  }
+  
+  public static void setSerializerThreads(int threads){
+    m_serializerThreads = threads;
+  }
+  
+  /**
+   * @return the largest to-space the native cpu heaps grow to
+   */
+  public static long getNemuHeapCeiling(){
+    return m_nemuHeapCeiling;
+  }
+  
+  public static void setNemuHeapCeiling(long bytes){
+    m_nemuHeapCeiling = bytes;
+  }
+  
+  /**
+   * @return true if native cpu kernels are built for debugging instead of 
+   *   being optimized
+   */
+  public static boolean getNemuDebug(){
+    return m_nemuDebug;
+  }
+  
+  public static void setNemuDebug(boolean debug){
+    m_nemuDebug = debug;
+  }
+  
+  /**
+   * @return true if optimized native cpu kernels are built for the host
+   *   processor with -march=native
+   */
+  public static boolean getNemuNativeArch(){
+    return m_nemuNativeArch;
+  }
+  
+  public static void setNemuNativeArch(boolean native_arch){
+    m_nemuNativeArch = native_arch;
+  }
+  
+  /**
+   * @return the number of worker threads native cpu kernels run on
+   */
+  public static int getNemuThreads(){
+    if(m_nemuThreads <= 0){
+      return Runtime.getRuntime().availableProcessors();
+    }
+    return m_nemuThreads;
+  }
+  
+  public static void setNemuThreads(int threads){
+    m_nemuThreads = threads;
+  }
+  
+  /**
+   * @return how many batches may be in flight when the runtime supports
+   *   pipelining. Below two every batch is serialized, executed and 
+   *   deserialized before the next one starts.
+   */
+  public static int getPipelineDepth(){
+    return m_pipelineDepth;
+  }
+  
+  public static void setPipelineDepth(int depth){
+    m_pipelineDepth = depth;
+  }
+  
+  /**
+   * @return true if the batches of gpu and nemu runs are split between the
+   *   device and java threads on the host. Only for kernels that do not 
+   *   write static fields or use shared memory.
+   */
+  public static boolean getHybridCpu(){
+    return m_hybridCpu;
+  }
+  
+  public static void setHybridCpu(boolean hybrid){
+    m_hybridCpu = hybrid;
+  }
 }
@@ -53,6 +53,46 @@ public class AbstractVisitorGen {
     return false;
   }
 
+  /**
+   * Jumps to body_labels[i] for the first types[i] that param is an instance
+   * of, or to none_label. The serializer caches i+1 per class (0 for none) so
+   * only the first object of a class walks the instanceof chain, later
+   * objects take a single tableswitch. id_name selects the cache: "Write" or
+   * "Read".
+   */
+  protected void makeTypeSwitch(Local param, List<Type> types, String id_name,
+    List<String> body_labels, String none_label){
+    
+    BytecodeLanguage bcl = m_bcl.top();
+    SootClass obj_cls = Scene.v().getSootClass("java.lang.Object");
+    bcl.pushMethod(m_thisRef, "get"+id_name+"TypeId", IntType.v(), obj_cls.getType());
+    Local type_id = bcl.invokeMethodRet(m_thisRef, param);
+    
+    List<String> targets = new ArrayList<String>();
+    targets.add(none_label);
+    targets.addAll(body_labels);
+    String chain_label = getNextLabel();
+    bcl.tableSwitch(type_id, 0, targets, chain_label);
+    
+    bcl.label(chain_label);
+    for(int i = 0; i < types.size(); ++i){
+      String next_label = getNextLabel();
+      bcl.ifInstanceOfStmt(param, types.get(i), next_label);
+      setTypeId(param, id_name, i + 1);
+      bcl.gotoLabel(body_labels.get(i));
+      bcl.label(next_label);
+    }
+    setTypeId(param, id_name, 0);
+    bcl.gotoLabel(none_label);
+  }
+  
+  private void setTypeId(Local param, String id_name, int id){
+    BytecodeLanguage bcl = m_bcl.top();
+    SootClass obj_cls = Scene.v().getSootClass("java.lang.Object");
+    bcl.pushMethod(m_thisRef, "set"+id_name+"TypeId", VoidType.v(), obj_cls.getType(), IntType.v());
+    bcl.invokeMethodNoRet(m_thisRef, param, IntConstant.v(id));
+  }
+  
   protected SootClass getClassForType(RefType ref_type){   
     SootClass soot_class = ref_type.getSootClass();
     soot_class = Scene.v().getSootClass(soot_class.getName()); 
@@ -229,9 +229,14 @@ public class BclMemory {
     mBcl.invokeMethodNoRet(mMem);
   }
 
-  public void readIntArray(Value ret, Value size) {
-    mBcl.pushMethod(mMem, "readIntArray", VoidType.v(), ret.getType(), size.getType());
-    mBcl.invokeMethodNoRet(mMem, ret, size);
+  public void readArray(Value ret, Value offset, Value length) {
+    mBcl.pushMethod(mMem, "readArray", VoidType.v(), ret.getType(), IntType.v(), IntType.v());
+    mBcl.invokeMethodNoRet(mMem, ret, offset, length);
+  }
+
+  public void writeArray(Value array, Value offset, Value length) {
+    mBcl.pushMethod(mMem, "writeArray", VoidType.v(), array.getType(), IntType.v(), IntType.v());
+    mBcl.invokeMethodNoRet(mMem, array, offset, length);
   }
 
   public void mallocWithSize(Value size) {
@@ -125,6 +125,8 @@ public class BytecodeLanguage {
     Value binop = null;
     if(op.equals("*")){
       binop = jimple.newMulExpr(lhs, rhs);
+    } else if(op.equals("&")){
+      binop = jimple.newAndExpr(lhs, rhs);
     }
 
     Local ret = jimple.newLocal(getLocalName(), lhs.getType());
@@ -476,6 +478,14 @@ public class BytecodeLanguage {
     mAssembler.addGoto(label2);
   }
 
+  /**
+   * Jumps to target_labels[key - low_index] or to default_label when key is
+   * out of range.
+   */
+  public void tableSwitch(Value key, int low_index, List<String> target_labels, String default_label){
+    mAssembler.addTableSwitch(key, low_index, target_labels, default_label);
+  }
+
   public void makeVoidCtor() {
     startMethod("<init>", VoidType.v());
     SootClass super_soot_class = mCurrClass.getSuperclass();
@@ -12,4 +12,6 @@ public class Constants {
   //if SiceGcInfo is 16, the synch tests fail
   public final static int SizeGcInfo = 32;
   public final static int ArrayOffsetSize = 16;
+  //GC_DIRTY_BIT in GarbageCollector.c, set in the color byte on gpu writes
+  public final static int GcDirtyBit = 0x40;
 }
@@ -40,6 +40,8 @@ public class FieldReadWriteInspector {
   private Set<SootField> mReadOnGpuFields;
   private Set<SootField> mWrittenOnGpuFields;
   private Set<Local> mWrittenOnGpuArrayLocals;
+  private Set<Type> mWrittenOnGpuArrayTypes;
+  private Set<Type> mFieldsWrittenOnGpuTypes;
   private SootClass mRuntimeBasicBlock;
   private Set<SootMethod> mMethodsInspected;
   private Set<String> mWritenOnGpuFieldsClassesChecked;
@@ -49,6 +51,8 @@ public class FieldReadWriteInspector {
     mReadOnGpuFields = new HashSet<SootField>();
     mWrittenOnGpuFields = new HashSet<SootField>();
     mWrittenOnGpuArrayLocals = new HashSet<Local>();
+    mWrittenOnGpuArrayTypes = new HashSet<Type>();
+    mFieldsWrittenOnGpuTypes = new HashSet<Type>();
     mAllFields = new HashSet<SootField>();
     mMethodsInspected = new HashSet<SootMethod>();
     mWritenOnGpuFieldsClassesChecked = new HashSet<String>();
@@ -62,6 +66,8 @@ public class FieldReadWriteInspector {
     mReadOnGpuFields = new HashSet<SootField>();
     mWrittenOnGpuFields = new HashSet<SootField>();
     mWrittenOnGpuArrayLocals = new HashSet<Local>();
+    mWrittenOnGpuArrayTypes = new HashSet<Type>();
+    mFieldsWrittenOnGpuTypes = new HashSet<Type>();
     mAllFields = new HashSet<SootField>();
     mMethodsInspected = new HashSet<SootMethod>();
     mWritenOnGpuFieldsClassesChecked = new HashSet<String>();
@@ -103,6 +109,9 @@ public class FieldReadWriteInspector {
     if(mWrittenOnGpuFields.contains(soot_field))
       return true;
     
+    if(mWrittenOnGpuArrayTypes.contains(soot_field.getType()))
+      return true;
+    
     if(soot_field.getDeclaringClass().getName().equals("java.lang.String"))
       return true;
     
@@ -142,6 +151,91 @@ public class FieldReadWriteInspector {
     return false;
   }
 
+  /**
+   * Returns if reading an object of exactly this type back from the gpu can
+   * change anything on the host: a field of the type is written or leads to
+   * written objects, or the elements of the array type are written. Objects
+   * of other types only need to be read back when created on the gpu.
+   * @param type
+   * @return
+   */
+  public boolean typeIsWrittenOnGpu(Type type){
+    mWritenOnGpuFieldsClassesChecked.clear();
+    if(type instanceof ArrayType){
+      return arrayTypeIsWrittenOnGpu((ArrayType) type);
+    }
+    if(type instanceof RefType == false)
+      return false;
+    SootClass soot_class = Scene.v().getSootClass(type.toString());
+    return classIsWrittenOnGpu(soot_class);
+  }
+
+  private boolean arrayTypeIsWrittenOnGpu(ArrayType type){
+    if(mWrittenOnGpuArrayTypes.contains(type))
+      return true;
+    Type element_type = type.getElementType();
+    if(element_type instanceof ArrayType)
+      return arrayTypeIsWrittenOnGpu((ArrayType) element_type);
+    if(element_type instanceof RefType == false)
+      return false;
+    //the elements can be of any subtype
+    RefType ref_type = (RefType) element_type;
+    if(ref_type.getClassName().equals("java.lang.Object"))
+      return true;
+    SootClass soot_class = Scene.v().getSootClass(ref_type.getClassName());
+    List<Type> hierarchy = RootbeerClassLoader.v().getDfsInfo().getHierarchy(soot_class);
+    for(Type curr_type : hierarchy){
+      if(curr_type instanceof RefType == false)
+        continue;
+      if(classIsWrittenOnGpu(((RefType) curr_type).getSootClass()))
+        return true;
+    }
+    return false;
+  }
+
+  private boolean classIsWrittenOnGpu(SootClass soot_class){
+    if(soot_class.getName().equals("java.lang.String"))
+      return true;
+    while(true){
+      soot_class = Scene.v().getSootClass(soot_class.getName());
+      for(SootField field : soot_class.getFields()){
+        if(field.isStatic())
+          continue;
+        if(fieldIsWrittenOnGpu(field))
+          return true;
+      }
+      if(soot_class.hasSuperclass() == false)
+        return false;
+      soot_class = soot_class.getSuperclass();
+    }
+  }
+
+  /**
+   * Returns if the gpu can change a static field or an object reachable
+   * from one
+   * @return
+   */
+  public boolean staticsAreWrittenOnGpu(){
+    DfsInfo dfs_info = RootbeerClassLoader.v().getDfsInfo();
+    for(SootField field : dfs_info.getFields()){
+      if(field.isStatic() == false)
+        continue;
+      mWritenOnGpuFieldsClassesChecked.clear();
+      if(fieldIsWrittenOnGpu(field))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the types with an instance field the bytecode stores to and the
+   * array types it stores elements into. Subtypes are not listed.
+   * @return
+   */
+  public Set<Type> getTypesWithFieldsWrittenOnGpu(){
+    return mFieldsWrittenOnGpuTypes;
+  }
+
   public boolean localRepresentingArrayIsWrittenOnGpu(Local local){
     return mWrittenOnGpuArrayLocals.contains(local);
   }
@@ -217,8 +311,16 @@ public class FieldReadWriteInspector {
         SootField field = field_ref.getField();
         addWriteField(field);
         mAllFields.add(field);
+        if(field.isStatic() == false){
+          mFieldsWrittenOnGpuTypes.add(field.getDeclaringClass().getType());
+        }
       } else if (def instanceof ArrayRef){
         ArrayRef array_ref = (ArrayRef) def;
+        Type array_type = array_ref.getBase().getType();
+        mWrittenOnGpuArrayTypes.add(array_type);
+        if(array_type instanceof ArrayType){
+          mFieldsWrittenOnGpuTypes.add(array_type);
+        }
         SootField field = findFieldMakingArray(body, array_ref.getBase());
         if(field != null){
           addWriteField(field);
@@ -62,6 +62,8 @@ public class GenerateRuntimeBasicBlock {
     makeGpuBody();
     makeIsUsingGarbageCollectorBody();
     makeIsReadOnly();    
+    makeWritesStatics();
+    makeWritesFieldsOf();
     makeExceptionNumbers();
                             
     GcHeapReadWriteAdder adder = new GcHeapReadWriteAdder();
@@ -257,13 +259,48 @@ public class GenerateRuntimeBasicBlock {
     bcl.openClass(mSootClass);
     bcl.startMethod("isReadOnly", BooleanType.v());
     bcl.refThis();
-    if(OpenCLScene.v().getReadOnlyTypes().isRootReadOnly())
+    FieldReadWriteInspector inspector = codeSegment.getReadWriteFieldInspector();
+    Type root_type = codeSegment.getSootClass().getType();
+    if(inspector.typeIsWrittenOnGpu(root_type) == false)
       bcl.returnValue(IntConstant.v(1));
     else
       bcl.returnValue(IntConstant.v(0));
     bcl.endMethod();
   }
 
+  private void makeWritesStatics() {
+    BytecodeLanguage bcl = new BytecodeLanguage();
+    bcl.openClass(mSootClass);
+    bcl.startMethod("writesStatics", BooleanType.v());
+    bcl.refThis();
+    FieldReadWriteInspector inspector = codeSegment.getReadWriteFieldInspector();
+    if(inspector.staticsAreWrittenOnGpu())
+      bcl.returnValue(IntConstant.v(1));
+    else
+      bcl.returnValue(IntConstant.v(0));
+    bcl.endMethod();
+  }
+
+  private void makeWritesFieldsOf() {
+    BytecodeLanguage bcl = new BytecodeLanguage();
+    bcl.openClass(mSootClass);
+    SootClass object = Scene.v().getSootClass("java.lang.Object");
+    bcl.startMethod("writesFieldsOf", BooleanType.v(), object.getType());
+    bcl.refThis();
+    Local param = bcl.refParameter(0);
+    FieldReadWriteInspector inspector = codeSegment.getReadWriteFieldInspector();
+    int index = 0;
+    for(Type type : inspector.getTypesWithFieldsWrittenOnGpu()){
+      String label = "fields_not_written"+index;
+      bcl.ifInstanceOfStmt(param, type, label);
+      bcl.returnValue(IntConstant.v(1));
+      bcl.label(label);
+      ++index;
+    }
+    bcl.returnValue(IntConstant.v(0));
+    bcl.endMethod();
+  }
+
   private void makeExceptionNumbers() {
     String prefix = Options.v().rbcl_remap_prefix();
     if(Options.v().rbcl_remap_all() == false){
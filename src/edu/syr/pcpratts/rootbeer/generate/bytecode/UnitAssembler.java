@@ -232,6 +232,20 @@ public class UnitAssembler {
     add(u);
   }
 
+  public void addTableSwitch(Value key, int low_index, List<String> target_labels, String default_label){
+    List<UnitBox> targets = new ArrayList<UnitBox>();
+    for(String label : target_labels){
+      UnitBox target = mJimple.newStmtBox(null);
+      addLabelToUnitBox(label, target);
+      targets.add(target);
+    }
+    UnitBox default_target = mJimple.newStmtBox(null);
+    addLabelToUnitBox(default_label, default_target);
+    int high_index = low_index + target_labels.size() - 1;
+    Unit u = mJimple.newTableSwitchStmt(key, low_index, high_index, targets, default_target);
+    add(u);
+  }
+
   public void addLabel(String label){
     if(label.equals("phillabel2")){
       label = "phillabel2";
@@ -10,6 +10,7 @@ package edu.syr.pcpratts.rootbeer.generate.bytecode;
 import edu.syr.pcpratts.rootbeer.generate.opencl.OpenCLScene;
 import edu.syr.pcpratts.rootbeer.generate.opencl.fields.OpenCLField;
 import edu.syr.pcpratts.rootbeer.util.Stack;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -90,8 +91,20 @@ public class VisitorReadGen extends AbstractVisitorGen {
     String null_readers = getNextLabel();
     bcl.ifStmt(m_Param0, "==", NullConstant.v(), null_readers);    
     
+    List<Type> types = new ArrayList<Type>();
+    List<String> body_labels = new ArrayList<String>();
     for(Type type : m_OrderedHistory){
-      makeReadFromHeapMethodForType(type, false);
+      if(types.contains(type) == false && shouldMakeReadFromHeapBody(type, false)){
+        types.add(type);
+        body_labels.add(getNextLabel());
+      }
+    }
+    
+    makeTypeSwitch(m_Param0, types, "Read", body_labels, null_readers);
+    
+    for(int i = 0; i < types.size(); ++i){
+      bcl.label(body_labels.get(i));
+      makeReadFromHeapBodyForType(types.get(i));
     }
 
     bcl.label(null_readers);
@@ -106,29 +119,41 @@ public class VisitorReadGen extends AbstractVisitorGen {
    
   private void makeReadFromHeapMethodForType(Type type, boolean doing_object)
   {
+    if(shouldMakeReadFromHeapBody(type, doing_object) == false)
+      return;
+    
+    String label = getNextLabel();
+    BytecodeLanguage bcl = m_bcl.top();
+    bcl.ifInstanceOfStmt(m_Param0, type, label);
+    makeReadFromHeapBodyForType(type);
+    bcl.label(label);
+  }
+  
+  private boolean shouldMakeReadFromHeapBody(Type type, boolean doing_object){
     if(type instanceof ArrayType == false &&
        type instanceof RefType == false){
-      return;
+      return false;
     }
     
     if(m_ReadFromHeapMethodsMade.containsKey(type))
-      return;
+      return false;
     
     if(type instanceof RefType){
       RefType ref_type = (RefType) type;
       if(ref_type.getClassName().equals("java.lang.Object")){
         if(!doing_object){
-          return;
+          return false;
         }
       }
       if(differentPackageAndPrivate(ref_type)){
-        return;  
+        return false;  
       }
     }
-    
-    String label = getNextLabel();
+    return true;
+  }
+  
+  private void makeReadFromHeapBodyForType(Type type){
     BytecodeLanguage bcl = m_bcl.top();
-    bcl.ifInstanceOfStmt(m_Param0, type, label);
     
     //mBcl.println("reading: "+type.toString());
     //BclMemory bcl_mem = new BclMemory(mBcl, mMem);
@@ -144,7 +169,6 @@ public class VisitorReadGen extends AbstractVisitorGen {
     }
     m_ReadFromHeapMethodsMade.put(type, ret);
     bcl.returnValue(ret);
-    bcl.label(label);
   }
 
   private Local makeReadFromHeapBodyForArrayType(ArrayType type) {
@@ -153,7 +177,9 @@ public class VisitorReadGen extends AbstractVisitorGen {
 
     BclMemory bcl_mem = new BclMemory(bcl, m_currMem.top());   
     
-    bcl_mem.incrementAddress(3);
+    bcl_mem.incrementAddress(1);
+    Local color = bcl_mem.readByte();
+    bcl_mem.incrementAddress(1);
     Local ctor_used = bcl_mem.readByte();
     
     bcl_mem.incrementAddress(4);
@@ -184,8 +210,20 @@ public class VisitorReadGen extends AbstractVisitorGen {
     ret = bcl.invokeMethodRet(m_thisRef, m_RefParam, ret);
     ret = bcl.cast(type, ret);
 
-    if(type.baseType == IntType.v() && type.numDimensions == 1){
-      bcl_mem.readIntArray(ret, size);
+    //elements of arrays never written on the gpu are only read when created there
+    String after_elements_label = getNextLabel();
+    boolean written = m_fieldInspector.typeIsWrittenOnGpu(type);
+    if(written == false){
+      bcl.ifStmt(ctor_used, "==", IntConstant.v(0), after_elements_label);
+    }
+    
+    //elements of ref arrays are followed even when clean, they may be dirty
+    boolean primitive_elements = type.numDimensions == 1 && type.baseType instanceof PrimType;
+    if(primitive_elements){
+      if(written){
+        ifNotDirty(ctor_used, color, after_elements_label);
+      }
+      bcl_mem.readArray(ret, IntConstant.v(0), size);
     } else {
       Local i = bcl.local(IntType.v());
       bcl.assign(i, IntConstant.v(0));
@@ -199,11 +237,9 @@ public class VisitorReadGen extends AbstractVisitorGen {
 
       if(type.numDimensions != 1){
         new_curr = readFromHeapArray(object_to_read_from, i, previous_size);
-      } else if(type.baseType instanceof RefType){
+      } else {
         Local temp = readFromHeapArray(object_to_read_from, i, previous_size);
         new_curr = bcl.cast(type.baseType, temp);
-      } else {
-        new_curr = bcl_mem.readVar(type.baseType);
       }
 
       bcl.assignElementToArray(ret, new_curr, i);
@@ -212,6 +248,9 @@ public class VisitorReadGen extends AbstractVisitorGen {
       bcl.gotoLabel(before_if_label);
       bcl.label(end_for_label);
     }
+    if(written == false || primitive_elements){
+      bcl.label(after_elements_label);
+    }
     bcl_mem.finishReading();
 
     return ret;
@@ -227,8 +266,10 @@ public class VisitorReadGen extends AbstractVisitorGen {
     String label = getNextLabel();
     BclMemory bcl_mem = new BclMemory(bcl, m_currMem.top());
     
-    //get to ctor flag
-    bcl_mem.incrementAddress(3);
+    //get to color and ctor flag
+    bcl_mem.incrementAddress(1);
+    Local color = bcl_mem.readByte();
+    bcl_mem.incrementAddress(1);
     Local ctor_used = bcl_mem.readByte();
     
     bcl.ifStmt(ctor_used, "==", IntConstant.v(0), label);
@@ -253,18 +294,50 @@ public class VisitorReadGen extends AbstractVisitorGen {
     int read_bytes = 4;
     bcl_mem.incrementAddress(Constants.SizeGcInfo-read_bytes);       
     
+    //objects of types never written on the gpu are only read when created there
+    String after_fields_label = getNextLabel();
+    boolean written = m_fieldInspector.typeIsWrittenOnGpu(type);
+    if(written == false){
+      bcl.ifStmt(ctor_used, "==", IntConstant.v(0), after_fields_label);
+    }
+    
     m_CurrObj.push(object_to_write_to);
     m_objSerializing.push(object_to_write_to);
+    //ref fields are followed even when clean, the objects they reach may be dirty
     readFields(soot_class, true);
+    String after_non_ref_label = getNextLabel();
+    if(written){
+      ifNotDirty(ctor_used, color, after_non_ref_label);
+    }
     readFields(soot_class, false);
+    if(written){
+      bcl.label(after_non_ref_label);
+    }
     m_CurrObj.pop();
     m_objSerializing.pop();
-   
+    
+    if(written == false){
+      bcl.label(after_fields_label);
+    }
     bcl_mem.finishReading();
 
     return object_to_write_to;
   }
   
+  /**
+   * Jumps to label when the object was neither created nor written on the
+   * gpu, the gpu sets the dirty bit in the color byte on every write
+   */
+  private void ifNotDirty(Local ctor_used, Local color, String label){
+    BytecodeLanguage bcl = m_bcl.top();
+    String dirty_label = getNextLabel();
+    bcl.ifStmt(ctor_used, "!=", IntConstant.v(0), dirty_label);
+    Local color_int = bcl.cast(IntType.v(), color);
+    Local dirty = bcl.binOp(color_int, "&", IntConstant.v(Constants.GcDirtyBit));
+    bcl.ifStmt(dirty, "==", IntConstant.v(0), label);
+    bcl.label(dirty_label);
+  }
+  
   private void readFields(SootClass curr_class, boolean ref_types){
     if(curr_class.isApplicationClass()){
       attachReader(curr_class.getName(), ref_types);
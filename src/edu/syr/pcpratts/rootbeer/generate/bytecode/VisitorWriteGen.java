@@ -112,50 +112,60 @@ public class VisitorWriteGen extends AbstractVisitorGen {
     bcl.label(label2);        
     m_CurrentMem.push(mem);
         
+    List<Type> types = new ArrayList<Type>();
+    List<String> body_labels = new ArrayList<String>();
     for(Type type : m_OrderedHistory){
-      makeWriteToHeapMethodForType(type);
+      if(shouldMakeWriteToHeapBody(type)){
+        types.add(type);
+        body_labels.add(getNextLabel());
+      }
+    }
+    
+    String none_label = getNextLabel();
+    makeTypeSwitch(m_Param0, types, "Write", body_labels, none_label);
+    
+    for(int i = 0; i < types.size(); ++i){
+      bcl.label(body_labels.get(i));
+      makeWriteToHeapMethodForType(types.get(i));
     }
 
+    bcl.label(none_label);
     bcl.returnVoid();
     bcl.endMethod();
   }
   
-  private void makeWriteToHeapMethodForType(Type type){
+  private boolean shouldMakeWriteToHeapBody(Type type){
     if(type instanceof ArrayType == false &&
        type instanceof RefType == false){
-      return;
+      return false;
     }
     
     if(mWriteToHeapMethodsMade.contains(type))
-      return;
+      return false;
     mWriteToHeapMethodsMade.add(type);
     
     if(type instanceof RefType){
       RefType ref_type = (RefType) type;
       SootClass soot_class = ref_type.getSootClass();
       if(soot_class.getName().equals("java.lang.Object"))
-        return; 
+        return false; 
       if(differentPackageAndPrivate(ref_type)){
-        return;  
+        return false;  
       }
       if(m_classesToIgnore.contains(ref_type.getSootClass().getName())){
-        return; 
+        return false; 
       }              
     }
     
-    if(typeIsPublic(type) == false)
-      return;
-    
-    String label = getNextLabel();
-    BytecodeLanguage bcl = m_bcl.top();
-    bcl.ifInstanceOfStmt(m_Param0, type, label);
-        
+    return typeIsPublic(type);
+  }
+  
+  private void makeWriteToHeapMethodForType(Type type){
     if(type instanceof ArrayType){
       makeWriteToHeapBodyForArrayType((ArrayType) type);
     }else{
       makeWriteToHeapBodyForRefType((RefType) type);
     }
-    bcl.label(label);
   }
   
   private void makeWriteToHeapBodyForArrayType(ArrayType type) {
@@ -187,14 +197,18 @@ public class VisitorWriteGen extends AbstractVisitorGen {
     bcl_mem.writeInt(length);    
     bcl_mem.writeInt(-1);
 
+    if(type.numDimensions == 1 && type.baseType instanceof PrimType){
+      bcl_mem.writeArray(object_to_write_from, IntConstant.v(0), length);
+      bcl.returnVoid();
+      return;
+    }
+    
     Local space_for_elements = bcl.local(IntType.v());
     bcl.assign(space_for_elements, length);
     bcl.mult(space_for_elements, IntConstant.v(4));
 
-    if(type.numDimensions != 1 || type.baseType instanceof RefType){      
-      bcl_mem.startIntegerList();
-      bcl_mem.incrementAddress(space_for_elements);
-    }
+    bcl_mem.startIntegerList();
+    bcl_mem.incrementAddress(space_for_elements);
 
     Local i = bcl.local(IntType.v());
     bcl.assign(i, IntConstant.v(0));
@@ -205,26 +219,15 @@ public class VisitorWriteGen extends AbstractVisitorGen {
     bcl.ifStmt(i, "==", length, end_for_label);
     Local curr = bcl.indexArray(object_to_write_from, i);
 
-    if(type.numDimensions != 1){
-      SootClass object_soot_class = Scene.v().getSootClass("java.lang.Object");
-      bcl.pushMethod(m_thisRef, "writeToHeap", LongType.v(), object_soot_class.getType(), BooleanType.v());
-      Local array_element = bcl.invokeMethodRet(m_thisRef, curr, m_Param1);
-      bcl_mem.addIntegerToList(array_element);
-    } else if(type.baseType instanceof RefType){
-      SootClass object_soot_class = Scene.v().getSootClass("java.lang.Object");
-      bcl.pushMethod(m_thisRef, "writeToHeap", LongType.v(), object_soot_class.getType(), BooleanType.v());
-      Local array_element = bcl.invokeMethodRet(m_thisRef, curr, m_Param1);
-      bcl_mem.addIntegerToList(array_element);
-    } else {
-      bcl_mem.writeVar(curr);
-    }
+    SootClass object_soot_class = Scene.v().getSootClass("java.lang.Object");
+    bcl.pushMethod(m_thisRef, "writeToHeap", LongType.v(), object_soot_class.getType(), BooleanType.v());
+    Local array_element = bcl.invokeMethodRet(m_thisRef, curr, m_Param1);
+    bcl_mem.addIntegerToList(array_element);
     bcl.plus(i, 1);
     bcl.gotoLabel(before_if_label);
     bcl.label(end_for_label);
 
-    if(type.numDimensions != 1 || type.baseType instanceof RefType){
-      bcl_mem.endIntegerList();
-    } 
+    bcl_mem.endIntegerList();
     //return ret;
     bcl.returnVoid();
   }
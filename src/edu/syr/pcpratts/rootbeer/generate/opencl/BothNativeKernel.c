@@ -1,7 +1,24 @@
 
+//gc_info holds a summary of the exceptions after TO_SPACE_OFFSET,
+//TO_SPACE_FREE_POINTER_OFFSET and SPACE_SIZE_OFFSET so the host only
+//reads the exception of the lowest faulting thread and nothing on a
+//clean run. Threads without an exception leave their slot untouched.
+#define EXCEPTION_COUNT_OFFSET        24
+#define FIRST_EXCEPTION_OFFSET        32
+
+//the host writes the end of the to-space. the collector compacts the space
+//the kernels allocated above the heap end the host wrote, GC_START_OFFSET,
+//once the free pointer passes GC_THRESHOLD_OFFSET. objects the host wrote
+//do not move, they are only traced for references into that space.
+#define TO_SPACE_END_OFFSET           40
+#define GC_THRESHOLD_OFFSET           48
+#define GC_START_OFFSET               56
+
+#define GC_PHASE_MARK                 0
+#define GC_PHASE_UPDATE               1
+
 char * global_gc_info;
 long long * global_handles;
-int thread_id;
 int global_num_threads;
 long long * global_exceptions;
 int * global_class_refs;
@@ -32,28 +49,60 @@ edu_syr_pcpratts_gc_deref(char * gc_info, int handle){
   return &data_arr[offset];
 }
 
+char *
+edu_syr_pcpratts_gc_address(char * gc_info, long long address){
+  return edu_syr_pcpratts_gc_deref(gc_info, (int) (address >> 4));
+}
+
+long long
+edu_syr_pcpratts_gc_chunk_size(char * mem){
+  long long size;
+  size = edu_syr_pcpratts_gc_get_size(mem);
+  return (size + 15) & ~15LL;
+}
+
+//gives [start, end) a white header so the heap can be walked over it
+void
+edu_syr_pcpratts_gc_fill(char * gc_info, long long start, long long end){
+  char * mem;
+
+  if(start >= end){
+    return;
+  }
+  mem = edu_syr_pcpratts_gc_address(gc_info, start);
+  edu_syr_pcpratts_gc_set_count(mem, 0);
+  edu_syr_pcpratts_gc_set_color(mem, COLOR_WHITE);
+  edu_syr_pcpratts_gc_set_type(mem, 0);
+  edu_syr_pcpratts_gc_set_ctor_used(mem, 0);
+  edu_syr_pcpratts_gc_set_size(mem, (int) (end - start));
+}
+
 int
 edu_syr_pcpratts_gc_malloc(char * gc_info, long long size){
   long long * addr;
   long long space_size;
+  long long end;
   long long ret;
-  int mod;
   long long start_array;
   long long end_array;
 
   addr = (long long *) (gc_info + TO_SPACE_FREE_POINTER_OFFSET);
-  space_size = edu_syr_pcpratts_getlong(gc_info, 16);
-  size += 8;
+  space_size = edu_syr_pcpratts_getlong(gc_info, SPACE_SIZE_OFFSET);
+  end = edu_syr_pcpratts_getlong(gc_info, TO_SPACE_END_OFFSET);
+  //a handle is the address shifted by 4, every chunk starts on 16
+  size = (size + 15) & ~15LL;
   while(1){
-    ret = atom_add(addr, (long) size);
-    mod = ret % 8;
-    if(mod != 0)
-      ret += (8 - mod);
+    ret = atom_add(addr, size);
+    if(end != 0 && ret + size > end){
+      edu_syr_pcpratts_gc_fill(gc_info, ret, end);
+      return -1;
+    }
 
     start_array = ret / space_size;
-    end_array = (ret + size) / space_size;
+    end_array = (ret + size - 1) / space_size;
 
     if(start_array != end_array){
+      edu_syr_pcpratts_gc_fill(gc_info, ret, ret + size);
       continue;
     }
 
@@ -62,20 +111,321 @@ edu_syr_pcpratts_gc_malloc(char * gc_info, long long size){
   }
 }
 
+void
+edu_syr_pcpratts_record_exception(char * gc_info, int index){
+  int * first;
+  int curr;
+  int old;
+
+  atom_add((long long *) (gc_info + EXCEPTION_COUNT_OFFSET), 1);
+  first = (int *) (gc_info + FIRST_EXCEPTION_OFFSET);
+  curr = *first;
+  while(index < curr){
+    old = atomicCAS(first, curr, index);
+    if(old == curr){
+      break;
+    }
+    curr = old;
+  }
+}
+
 int
 edu_syr_pcpratts_classConstant(int type_num){
   return global_class_refs[type_num];
 }
 
+long long
+edu_syr_pcpratts_gc_threshold(long long free_ptr, long long end){
+  if(end == 0){
+    return 0x7fffffffffffffffLL;
+  }
+  //the other half is left for the kernels still running
+  return free_ptr + ((end - free_ptr) / 2);
+}
+
+int
+edu_syr_pcpratts_gc_should_collect(char * gc_info){
+  long long free_ptr;
+  free_ptr = edu_syr_pcpratts_getlong(gc_info, TO_SPACE_FREE_POINTER_OFFSET);
+  return free_ptr > edu_syr_pcpratts_getlong(gc_info, GC_THRESHOLD_OFFSET);
+}
+
+//the collector runs on the host, its stacks grow with realloc and are kept
+//between collections
+struct edu_syr_pcpratts_gc_list {
+  long long * data;
+  int size;
+  int capacity;
+};
+
+struct edu_syr_pcpratts_gc_list gc_mark_stack;
+struct edu_syr_pcpratts_gc_list gc_host_marked;
+long long gc_start;
+long long gc_end;
+
+void
+edu_syr_pcpratts_gc_list_add(struct edu_syr_pcpratts_gc_list * list, long long value){
+  if(list->size == list->capacity){
+    list->capacity = list->capacity * 2 + 1024;
+    list->data = (long long *) realloc(list->data, list->capacity * sizeof(long long));
+  }
+  list->data[list->size] = value;
+  ++list->size;
+}
+
+void
+edu_syr_pcpratts_gc_recolor(char * mem, char color){
+  char dirty;
+  dirty = mem[sizeof(GC_OBJ_TYPE_COUNT)] & GC_DIRTY_BIT;
+  edu_syr_pcpratts_gc_set_color(mem, dirty | color);
+}
+
+void
+edu_syr_pcpratts_gc_mark(char * gc_info, int handle){
+  long long address;
+  char * mem;
+
+  //null and the statics
+  if(handle <= 0){
+    return;
+  }
+  address = handle;
+  address = address << 4;
+  if(address >= gc_end){
+    return;
+  }
+  mem = edu_syr_pcpratts_gc_address(gc_info, address);
+  if(edu_syr_pcpratts_gc_get_color(mem) == COLOR_BLACK){
+    return;
+  }
+  edu_syr_pcpratts_gc_recolor(mem, COLOR_BLACK);
+  edu_syr_pcpratts_gc_list_add(&gc_mark_stack, address);
+  if(address < gc_start){
+    edu_syr_pcpratts_gc_list_add(&gc_host_marked, address);
+  }
+}
+
+//the new handle of a marked object is kept in its monitor until it moves
+int
+edu_syr_pcpratts_gc_forward(char * gc_info, int handle){
+  long long address;
+  char * mem;
+
+  if(handle <= 0){
+    return handle;
+  }
+  address = handle;
+  address = address << 4;
+  if(address < gc_start || address >= gc_end){
+    return handle;
+  }
+  mem = edu_syr_pcpratts_gc_address(gc_info, address);
+  return edu_syr_pcpratts_getint(mem, 12);
+}
+
+void
+edu_syr_pcpratts_gc_visit(char * gc_info, int * slot, int phase){
+  if(phase == GC_PHASE_MARK){
+    edu_syr_pcpratts_gc_mark(gc_info, *slot);
+  } else {
+    *slot = edu_syr_pcpratts_gc_forward(gc_info, *slot);
+  }
+}
+
+void
+edu_syr_pcpratts_gc_scan(char * gc_info, char * mem, int phase){
+  GC_OBJ_TYPE_TYPE type;
+  int length;
+  int offset;
+  int i;
+
+  type = edu_syr_pcpratts_gc_get_type(mem);
+  if(edu_syr_pcpratts_gc_is_ref_array(type)){
+    length = edu_syr_pcpratts_getint(mem, 8);
+    for(i = 0; i < length; ++i){
+      edu_syr_pcpratts_gc_visit(gc_info, (int *) (mem + 16 + (i * 4)), phase);
+    }
+  } else {
+    for(i = 0; (offset = edu_syr_pcpratts_gc_ref_offset(type, i)) != -1; ++i){
+      edu_syr_pcpratts_gc_visit(gc_info, (int *) (mem + offset), phase);
+    }
+  }
+}
+
+//the exception slots of threads that did not throw in this launch are
+//stale, so only the slot the host reads counts and only if it holds an 
+//object the kernels allocated
+int
+edu_syr_pcpratts_gc_exception_root(char * gc_info){
+  int index;
+  long long address;
+  long long curr;
+  char * mem;
+
+  if(edu_syr_pcpratts_getlong(gc_info, EXCEPTION_COUNT_OFFSET) == 0){
+    return -1;
+  }
+  index = edu_syr_pcpratts_getint(gc_info, FIRST_EXCEPTION_OFFSET);
+  address = global_exceptions[index];
+  if(address <= 0){
+    return -1;
+  }
+  address = address << 4;
+  curr = gc_start;
+  while(curr < gc_end && curr <= address){
+    mem = edu_syr_pcpratts_gc_address(gc_info, curr);
+    if(curr == address && edu_syr_pcpratts_gc_get_color(mem) != COLOR_WHITE){
+      return index;
+    }
+    curr += edu_syr_pcpratts_gc_chunk_size(mem);
+  }
+  return -1;
+}
+
+void
+edu_syr_pcpratts_gc_roots(char * gc_info, int exception_root, int phase){
+  char * statics;
+  int offset;
+  int count;
+  int handle;
+  int i;
+
+  statics = edu_syr_pcpratts_gc_deref(gc_info, 0);
+  for(i = 0; (offset = edu_syr_pcpratts_gc_static_ref_offset(i)) != -1; ++i){
+    edu_syr_pcpratts_gc_visit(gc_info, (int *) (statics + offset), phase);
+  }
+#if %%indexed%%
+  count = 1;
+#else
+  count = global_num_threads;
+#endif
+  //the kernels not run yet are live too
+  for(i = 0; i < count; ++i){
+    handle = (int) (global_handles[i] >> 4);
+    edu_syr_pcpratts_gc_visit(gc_info, &handle, phase);
+    global_handles[i] = ((long long) handle) << 4;
+  }
+  if(exception_root != -1){
+    handle = (int) global_exceptions[exception_root];
+    edu_syr_pcpratts_gc_visit(gc_info, &handle, phase);
+    global_exceptions[exception_root] = handle;
+  }
+}
+
+//objects never cross a to_space segment, one that would is moved to the
+//start of the next segment. the new place is never above the old one.
+long long
+edu_syr_pcpratts_gc_place(char * gc_info, long long compact, long long size, int fill){
+  long long space_size;
+  long long boundary;
+
+  space_size = edu_syr_pcpratts_getlong(gc_info, SPACE_SIZE_OFFSET);
+  boundary = ((compact / space_size) + 1) * space_size;
+  if(compact + size > boundary){
+    if(fill){
+      edu_syr_pcpratts_gc_fill(gc_info, compact, boundary);
+    }
+    compact = boundary;
+  }
+  return compact;
+}
+
+//a sliding mark-compact over the space the kernels allocated, run while 
+//no kernel is running so the only roots are the statics, the kernel 
+//objects and the exception the host will read.
+void
+edu_syr_pcpratts_gc_collect(char * gc_info){
+  long long end;
+  long long address;
+  long long compact;
+  long long size;
+  int exception_root;
+  int i;
+  char * mem;
+
+  end = edu_syr_pcpratts_getlong(gc_info, TO_SPACE_END_OFFSET);
+  gc_start = edu_syr_pcpratts_getlong(gc_info, GC_START_OFFSET);
+  gc_end = edu_syr_pcpratts_getlong(gc_info, TO_SPACE_FREE_POINTER_OFFSET);
+  if(end != 0 && gc_end > end){
+    gc_end = end;
+  }
+  gc_mark_stack.size = 0;
+  gc_host_marked.size = 0;
+
+  //mark
+  exception_root = edu_syr_pcpratts_gc_exception_root(gc_info);
+  edu_syr_pcpratts_gc_roots(gc_info, exception_root, GC_PHASE_MARK);
+  while(gc_mark_stack.size > 0){
+    --gc_mark_stack.size;
+    address = gc_mark_stack.data[gc_mark_stack.size];
+    mem = edu_syr_pcpratts_gc_address(gc_info, address);
+    edu_syr_pcpratts_gc_scan(gc_info, mem, GC_PHASE_MARK);
+  }
+
+  //new addresses
+  compact = gc_start;
+  for(address = gc_start; address < gc_end; address += size){
+    mem = edu_syr_pcpratts_gc_address(gc_info, address);
+    size = edu_syr_pcpratts_gc_chunk_size(mem);
+    if(edu_syr_pcpratts_gc_get_color(mem) == COLOR_BLACK){
+      compact = edu_syr_pcpratts_gc_place(gc_info, compact, size, 0);
+      edu_syr_pcpratts_setint(mem, 12, (int) (compact >> 4));
+      compact += size;
+    }
+  }
+
+  //update references
+  edu_syr_pcpratts_gc_roots(gc_info, exception_root, GC_PHASE_UPDATE);
+  for(i = 0; i < gc_host_marked.size; ++i){
+    mem = edu_syr_pcpratts_gc_address(gc_info, gc_host_marked.data[i]);
+    edu_syr_pcpratts_gc_scan(gc_info, mem, GC_PHASE_UPDATE);
+    edu_syr_pcpratts_gc_recolor(mem, COLOR_GREY);
+  }
+  for(address = gc_start; address < gc_end; address += size){
+    mem = edu_syr_pcpratts_gc_address(gc_info, address);
+    size = edu_syr_pcpratts_gc_chunk_size(mem);
+    if(edu_syr_pcpratts_gc_get_color(mem) == COLOR_BLACK){
+      edu_syr_pcpratts_gc_scan(gc_info, mem, GC_PHASE_UPDATE);
+    }
+  }
+
+  //move, a forward copy is safe since nothing moves up
+  compact = gc_start;
+  for(address = gc_start; address < gc_end; address += size){
+    mem = edu_syr_pcpratts_gc_address(gc_info, address);
+    size = edu_syr_pcpratts_gc_chunk_size(mem);
+    if(edu_syr_pcpratts_gc_get_color(mem) == COLOR_BLACK){
+      compact = edu_syr_pcpratts_gc_place(gc_info, compact, size, 1);
+      edu_syr_pcpratts_gc_init_monitor(mem);
+      edu_syr_pcpratts_gc_recolor(mem, COLOR_GREY);
+      edu_syr_pcpratts_gc_memcpy(edu_syr_pcpratts_gc_address(gc_info, compact), mem, (int) size);
+      compact += size;
+    }
+  }
+
+  edu_syr_pcpratts_setlong(gc_info, TO_SPACE_FREE_POINTER_OFFSET, compact);
+  edu_syr_pcpratts_setlong(gc_info, GC_THRESHOLD_OFFSET, 
+    edu_syr_pcpratts_gc_threshold(compact, end));
+}
+
 char *
 edu_syr_pcpratts_gc_init(char * gc_info_space,
                          long long * to_space,
                          long long to_space_free_ptr,
-                         long long space_size){
+                         long long space_size,
+                         int num_threads){
+  long long end;
 
+  to_space_free_ptr = (to_space_free_ptr + 15) & ~15LL;
+  end = edu_syr_pcpratts_getlong(gc_info_space, TO_SPACE_END_OFFSET);
   edu_syr_pcpratts_setlong(gc_info_space, 0, (long long) to_space);
   edu_syr_pcpratts_setlong(gc_info_space, 8, to_space_free_ptr);
   edu_syr_pcpratts_setlong(gc_info_space, 16, space_size);
+  edu_syr_pcpratts_setlong(gc_info_space, EXCEPTION_COUNT_OFFSET, 0);
+  edu_syr_pcpratts_setint(gc_info_space, FIRST_EXCEPTION_OFFSET, num_threads);
+  edu_syr_pcpratts_setlong(gc_info_space, GC_THRESHOLD_OFFSET, 
+    edu_syr_pcpratts_gc_threshold(to_space_free_ptr, end));
+  edu_syr_pcpratts_setlong(gc_info_space, GC_START_OFFSET, to_space_free_ptr);
     
   return (char *) gc_info_space;
-}
\ No newline at end of file
+}
@@ -1,4 +1,9 @@
 
+//the same exception summary BothNativeKernel.c keeps after
+//SPACE_SIZE_OFFSET, the host reads only the lowest faulting slot
+#define EXCEPTION_COUNT_OFFSET        24
+#define FIRST_EXCEPTION_OFFSET        32
+
 __device__ int
 edu_syr_pcpratts_classConstant(int type_num){
   int * temp = (int *) m_Local[2];   
@@ -29,13 +34,14 @@ edu_syr_pcpratts_gc_malloc(char * gc_info, long long size){
 __device__ long long
 edu_syr_pcpratts_gc_malloc_no_fail(char * gc_info, long long size){
   unsigned long long * addr = (unsigned long long *) (gc_info + TO_SPACE_FREE_POINTER_OFFSET);
-  size += 8;
+  //a handle is the address shifted by 4, so objects start on 16
+  size = ((size + 15) & ~15LL) + 16;
   long long ret;
-    
+
   ret = atomicAdd(addr, (unsigned long long) size);
-  int mod = ret % 8;
+  int mod = ret % 16;
   if(mod != 0)
-    ret += mod;
+    ret += (16 - mod);
 
   return ret;
 }
@@ -66,9 +72,20 @@ __global__ void entry(char * gc_info, char * to_space, int * handles,
   if(loop_control >= num_blocks){  
     return;
   } else {
-    int handle = handles[loop_control];
     int exception = 0;   
+#if %%indexed%%
+    //one kernel object shared by every thread, handles[1] is the index of
+    //the first thread of this launch
+    int handle = handles[0];
+    %%invoke_run%%(gc_info, handle, handles[1] + loop_control, &exception);
+#else
+    int handle = handles[loop_control];
     %%invoke_run%%(gc_info, handle, &exception);
+#endif
     exceptions[loop_control] = exception;
+    if(exception != 0){
+      atomicAdd((unsigned long long *) (gc_info + EXCEPTION_COUNT_OFFSET), 1ULL);
+      atomicMin((int *) (gc_info + FIRST_EXCEPTION_OFFSET), loop_control);
+    }
   }
 }
\ No newline at end of file
@@ -8,6 +8,9 @@
 #define COLOR_BLACK 1
 #define COLOR_WHITE 2
 
+//set in the color byte when the gpu writes to an object
+#define GC_DIRTY_BIT 0x40
+
 $$__device__$$ void edu_syr_pcpratts_gc_collect($$__global$$ char * gc_info);
 $$__device__$$ void edu_syr_pcpratts_gc_assign($$__global$$ char * gc_info, int * lhs, int rhs);
 $$__device__$$ $$__global$$ char * edu_syr_pcpratts_gc_deref($$__global$$ char * gc_info, int handle);
@@ -379,7 +382,15 @@ edu_syr_pcpratts_gc_init_monitor($$__global$$ char * mem_loc){
 $$__device__$$ GC_OBJ_TYPE_COLOR
 edu_syr_pcpratts_gc_get_color($$__global$$ char * mem_loc){
   mem_loc += sizeof(GC_OBJ_TYPE_COUNT);
-  return mem_loc[0];
+  return mem_loc[0] & ~GC_DIRTY_BIT;
+}
+
+$$__device__$$ void
+edu_syr_pcpratts_gc_set_dirty($$__global$$ char * mem_loc){
+  mem_loc += sizeof(GC_OBJ_TYPE_COUNT);
+  if((mem_loc[0] & GC_DIRTY_BIT) == 0){
+    mem_loc[0] |= GC_DIRTY_BIT;
+  }
 }
 
 $$__device__$$ void
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.generate.opencl;
+
+import edu.syr.pcpratts.rootbeer.generate.bytecode.StaticOffsets;
+import edu.syr.pcpratts.rootbeer.generate.opencl.fields.CompositeField;
+import edu.syr.pcpratts.rootbeer.generate.opencl.fields.FieldCloner;
+import edu.syr.pcpratts.rootbeer.generate.opencl.fields.OffsetCalculator;
+import edu.syr.pcpratts.rootbeer.generate.opencl.fields.OpenCLField;
+import edu.syr.pcpratts.rootbeer.generate.opencl.tweaks.Tweaks;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import soot.SootClass;
+import soot.rbclassload.RootbeerClassLoader;
+
+/**
+ * Generates the tables the collector uses to find references: the offsets
+ * of the reference fields of every type, the array types holding references
+ * and the offsets of the static reference fields.
+ */
+public class GcTypeInfoGenerate {
+
+  public String get(Set<OpenCLArrayType> arrays, Map<String, OpenCLClass> classes){
+    StringBuilder ret = new StringBuilder();
+    FieldCloner cloner = new FieldCloner();
+    cloner.setup(classes);
+    List<CompositeField> composites = cloner.getCompositeFields();
+    refOffsets(ret, composites);
+    staticRefOffsets(ret, composites);
+    refArrays(ret, arrays);
+    return ret.toString();
+  }
+
+  private void refOffsets(StringBuilder ret, List<CompositeField> composites){
+    Map<Integer, Set<Integer>> offsets = new LinkedHashMap<Integer, Set<Integer>>();
+    for(CompositeField composite : composites){
+      OffsetCalculator calc = new OffsetCalculator(composite);
+      for(SootClass soot_class : composite.getClasses()){
+        int type = RootbeerClassLoader.v().getDfsInfo().getClassNumber(soot_class);
+        if(offsets.containsKey(type)){
+          continue;
+        }
+        Set<Integer> class_offsets = new TreeSet<Integer>();
+        for(OpenCLField field : composite.getRefFields()){
+          if(field.isInstance() == false){
+            continue;
+          }
+          int offset = calc.getOffset(field, soot_class);
+          if(offset != -1){
+            class_offsets.add(offset);
+          }
+        }
+        if(class_offsets.isEmpty() == false){
+          offsets.put(type, class_offsets);
+        }
+      }
+    }
+    String device_function_qual = Tweaks.v().getDeviceFunctionQualifier();
+    ret.append(device_function_qual+" int\n");
+    ret.append("edu_syr_pcpratts_gc_ref_offset(GC_OBJ_TYPE_TYPE type, int index){\n");
+    ret.append("  if(0){}\n");
+    Iterator<Integer> iter = offsets.keySet().iterator();
+    while(iter.hasNext()){
+      int type = iter.next();
+      ret.append("  else if(type == (GC_OBJ_TYPE_TYPE) "+type+"){\n");
+      indexSwitch(ret, offsets.get(type), "    ");
+      ret.append("  }\n");
+    }
+    ret.append("  return -1;\n");
+    ret.append("}\n");
+  }
+
+  private void staticRefOffsets(StringBuilder ret, List<CompositeField> composites){
+    StaticOffsets static_offsets = new StaticOffsets();
+    Set<Integer> offsets = new TreeSet<Integer>();
+    for(CompositeField composite : composites){
+      for(SootClass soot_class : composite.getClasses()){
+        for(OpenCLField field : static_offsets.getStaticFields(soot_class)){
+          if(field.getType().isRefType()){
+            offsets.add(static_offsets.getIndex(field));
+          }
+        }
+      }
+    }
+    String device_function_qual = Tweaks.v().getDeviceFunctionQualifier();
+    ret.append(device_function_qual+" int\n");
+    ret.append("edu_syr_pcpratts_gc_static_ref_offset(int index){\n");
+    indexSwitch(ret, offsets, "  ");
+    ret.append("}\n");
+  }
+
+  private void indexSwitch(StringBuilder ret, Set<Integer> offsets, String indent){
+    List<Integer> sorted = new ArrayList<Integer>(offsets);
+    ret.append(indent+"switch(index){\n");
+    for(int i = 0; i < sorted.size(); ++i){
+      ret.append(indent+"  case "+i+": return "+sorted.get(i)+";\n");
+    }
+    ret.append(indent+"}\n");
+    ret.append(indent+"return -1;\n");
+  }
+
+  private void refArrays(StringBuilder ret, Set<OpenCLArrayType> arrays){
+    String device_function_qual = Tweaks.v().getDeviceFunctionQualifier();
+    ret.append(device_function_qual+" int\n");
+    ret.append("edu_syr_pcpratts_gc_is_ref_array(GC_OBJ_TYPE_TYPE type){\n");
+    for(OpenCLArrayType atype : arrays){
+      if(atype.hasRefElements()){
+        ret.append("  if(type == (GC_OBJ_TYPE_TYPE) "+atype.getTypeInteger()+"){\n");
+        ret.append("    return 1;\n");
+        ret.append("  }\n");
+      }
+    }
+    ret.append("  return 0;\n");
+    ret.append("}\n");
+  }
+}
@@ -163,7 +163,7 @@ public class OpenCLArrayType {
       ret.append("*(("+address_qual+" int *) &thisref_deref["+offset_size+"+(parameter0*"+element_size+")]) = 0;\n");
     }
     ret.append("*(("+address_qual+" "+getAssignType()+" *) &thisref_deref["+offset_size+"+(parameter0*"+element_size+")]) = parameter1;\n");
-    
+    ret.append("edu_syr_pcpratts_gc_set_dirty(thisref_deref);\n");
     ret.append("}\n");
     
     //new
@@ -302,6 +302,12 @@ public class OpenCLArrayType {
     return RootbeerClassLoader.v().getDfsInfo().getClassNumber(m_arrayType);
   }
 
+  boolean hasRefElements() {
+    if(m_arrayType.numDimensions != 1)
+      return true;
+    return isBaseRefType();
+  }
+
   private boolean isCharArray() {
     Type base_type = getBaseType();
     String str = base_type.toString();
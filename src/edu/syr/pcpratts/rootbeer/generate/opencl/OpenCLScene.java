@@ -261,11 +261,18 @@ public class OpenCLScene {
 
   private String setupEntryPoint(StringBuilder builder){
     String cuda_code = builder.toString();
-    String mangle = NameMangling.v().mangle(VoidType.v());
+    SootMethod root_method = m_codeSegment.getRootMethod();
+    String mangle = NameMangling.v().mangleArgs(root_method);
     String replacement = getRuntimeBasicBlockClassName()+"_gpuMethod"+mangle;
     //class names can have $ in them, make them regex safe
     replacement = replacement.replace("$", "\\$");
     cuda_code = cuda_code.replaceAll("%%invoke_run%%", replacement);  
+    //an IndexedKernel is written once and gets the thread id as the index
+    String indexed = "0";
+    if(root_method.getParameterCount() == 1){
+      indexed = "1";
+    }
+    cuda_code = cuda_code.replaceAll("%%indexed%%", indexed);
     return cuda_code;
   }
   
@@ -364,6 +371,9 @@ public class OpenCLScene {
     
     ObjectCloneGenerate clone_generate = new ObjectCloneGenerate();
     bodies.add(clone_generate.get(m_arrayTypes, m_classes, m_oclToSoot));
+
+    GcTypeInfoGenerate gc_type_info = new GcTypeInfoGenerate();
+    bodies.add(gc_type_info.get(m_arrayTypes, m_classes));
     
     List<OpenCLMethod> methods = m_methodHierarchies.getMethods();
     for(OpenCLMethod method : methods){ 
@@ -4,30 +4,37 @@
 
 #include <sys/time.h>
 #include <pthread.h>
+#include <unistd.h>
 
 pthread_key_t threadIdKey = 0;
-pthread_mutex_t atom_add_mutex;
-pthread_mutex_t thread_id_mutex;
 pthread_attr_t attr;
 
-void lock_atom_add(){
-  pthread_mutex_lock(&atom_add_mutex);
+//the atomics use the gcc __sync builtins, which are full barriers
+
+long long atom_add(long long * addr, long long value){
+  return __sync_fetch_and_add(addr, value);
 }
 
-void unlock_atom_add(){
-  pthread_mutex_unlock(&atom_add_mutex);
+unsigned long long atomicAdd(unsigned long long * addr, long long value){
+  return __sync_fetch_and_add(addr, (unsigned long long) value);
 }
 
-void lock_thread_id(){
-  pthread_mutex_lock(&thread_id_mutex);
+int atomicCAS(int * addr, int compare, int set){
+  return __sync_val_compare_and_swap(addr, compare, set);
 }
 
-void unlock_thread_id(){
-  pthread_mutex_unlock(&thread_id_mutex);
+int atomicExch(int * addr, int value){
+  int old;
+  //__sync_lock_test_and_set is only an acquire barrier and atomicExch 
+  //releases monitors, so exchange with a compare and swap loop
+  do {
+    old = *((volatile int *) addr);
+  } while(__sync_val_compare_and_swap(addr, old, value) != old);
+  return old;
 }
 
 int getThreadId(){
-  return (int) pthread_getspecific(threadIdKey);
+  return (int) (long) pthread_getspecific(threadIdKey);
 }
 
 long long java_lang_System_nanoTime(char * gc_info, int * exception){
@@ -1,33 +1,153 @@
+//workers stay alive between calls to entry and wait for the next launch.
+//launch_mutex serializes calls to entry, pool_mutex guards the pool state.
+pthread_mutex_t launch_mutex = PTHREAD_MUTEX_INITIALIZER;
+pthread_mutex_t pool_mutex = PTHREAD_MUTEX_INITIALIZER;
+pthread_cond_t pool_start_cond = PTHREAD_COND_INITIALIZER;
+pthread_cond_t pool_done_cond = PTHREAD_COND_INITIALIZER;
+int pool_initialized = 0;
+int pool_size = 0;
+int pool_launch = 0;
+int pool_active = 0;
+int pool_running = 0;
 
-static void * run(void * data){
+volatile int next_index;
+int chunk_size;
+
+//a collection waits until every worker still in run_chunks is done with
+//its kernel, the last one to get there collects. gc_mutex guards the rest.
+pthread_mutex_t gc_mutex = PTHREAD_MUTEX_INITIALIZER;
+pthread_cond_t gc_done_cond = PTHREAD_COND_INITIALIZER;
+volatile int gc_requested;
+int gc_workers;
+int gc_waiting;
+int gc_epoch;
+
+static void gc_collect_now(){
+  edu_syr_pcpratts_gc_collect(global_gc_info);
+  gc_requested = 0;
+  gc_waiting = 0;
+  ++gc_epoch;
+  pthread_cond_broadcast(&gc_done_cond);
+}
+
+static void gc_safepoint(){
+  int epoch;
+
+  pthread_mutex_lock(&gc_mutex);
+  if(gc_requested == 0){
+    //another worker may have collected since the check
+    if(edu_syr_pcpratts_gc_should_collect(global_gc_info) == 0){
+      pthread_mutex_unlock(&gc_mutex);
+      return;
+    }
+    gc_requested = 1;
+  }
+  ++gc_waiting;
+  if(gc_waiting == gc_workers){
+    gc_collect_now();
+  } else {
+    epoch = gc_epoch;
+    while(epoch == gc_epoch){
+      pthread_cond_wait(&gc_done_cond, &gc_mutex);
+    }
+  }
+  pthread_mutex_unlock(&gc_mutex);
+}
+
+static void gc_leave(){
+  pthread_mutex_lock(&gc_mutex);
+  --gc_workers;
+  if(gc_requested && gc_workers > 0 && gc_waiting == gc_workers){
+    gc_collect_now();
+  }
+  pthread_mutex_unlock(&gc_mutex);
+}
+
+static void run_chunks(){
+  int start;
+  int end;
   int index;
   long long lhandle;
   int exception;
-  int handle;    
+  int handle;
 
   while(1){
-    lock_thread_id();
-    index = thread_id;
-    ++thread_id;
-    unlock_thread_id();
-    
-    if(index >= global_num_threads){
+    start = __sync_fetch_and_add(&next_index, chunk_size);
+    if(start >= global_num_threads){
       break;
     }
+    end = start + chunk_size;
+    if(end > global_num_threads){
+      end = global_num_threads;
+    }
 
-    pthread_setspecific(threadIdKey, (void *) index);
+    for(index = start; index < end; ++index){
+      pthread_setspecific(threadIdKey, (void *) (long) index);
 
-    lhandle = global_handles[index];
-    lhandle = lhandle >> 4;
-    handle = (int) lhandle;
-    exception = 0;
-    %%invoke_run%%(global_gc_info, handle, &exception);
-    global_exceptions[index] = exception;
+      exception = 0;
+#if %%indexed%%
+      //one kernel object shared by every thread
+      lhandle = global_handles[0];
+      lhandle = lhandle >> 4;
+      handle = (int) lhandle;
+      %%invoke_run%%(global_gc_info, handle, index, &exception);
+#else
+      lhandle = global_handles[index];
+      lhandle = lhandle >> 4;
+      handle = (int) lhandle;
+      %%invoke_run%%(global_gc_info, handle, &exception);
+#endif
+      if(exception != 0){
+        global_exceptions[index] = exception;
+        edu_syr_pcpratts_record_exception(global_gc_info, index);
+      }
+      //between kernels no roots are left in locals
+      if(gc_requested || edu_syr_pcpratts_gc_should_collect(global_gc_info)){
+        gc_safepoint();
+      }
+    }
   }
+  gc_leave();
+}
+
+static void * worker(void * data){
+  int id;
+  int seen;
 
+  id = (int) (long) data;
+  pthread_mutex_lock(&pool_mutex);
+  //a worker is only created during the launch that needs it
+  seen = pool_launch - 1;
+  while(1){
+    while(pool_launch == seen){
+      pthread_cond_wait(&pool_start_cond, &pool_mutex);
+    }
+    seen = pool_launch;
+    if(id >= pool_active){
+      continue;
+    }
+    pthread_mutex_unlock(&pool_mutex);
+
+    run_chunks();
+
+    pthread_mutex_lock(&pool_mutex);
+    --pool_running;
+    if(pool_running == 0){
+      pthread_cond_signal(&pool_done_cond);
+    }
+  }
   return NULL;
 }
 
+static int machine_cores(){
+  long ret;
+  ret = sysconf(_SC_NPROCESSORS_ONLN);
+  if(ret < 1){
+    return 1;
+  }
+  return (int) ret;
+}
+
 void entry(char * gc_info_space,
            long long * to_space,
            long long * handles,
@@ -35,48 +155,76 @@ void entry(char * gc_info_space,
            long long * exceptions,
            int * java_lang_class_refs,
            long long space_size,
-           int num_threads){
-  int i;
-  int rc;
-  int num_cores;
+           int num_threads,
+           int num_cores){
+  pthread_t thread;
   char * gc_info;
-  pthread_t ** threads;
-  pthread_t * thread;
+
+  pthread_mutex_lock(&launch_mutex);
 
   gc_info = edu_syr_pcpratts_gc_init(gc_info_space, to_space,
-    *to_space_free_ptr, space_size);
+    *to_space_free_ptr, space_size, num_threads);
   global_num_threads = num_threads;
-  thread_id = 0;
   global_gc_info = gc_info;
   global_handles = handles;
   global_exceptions = exceptions;
   global_class_refs = java_lang_class_refs;
 
-  pthread_mutex_init(&thread_id_mutex, NULL);
-  pthread_mutex_init(&atom_add_mutex, NULL);
-  pthread_key_create(&threadIdKey, NULL);
-   
-  pthread_attr_init(&attr);
-  pthread_attr_setdetachstate(&attr, PTHREAD_CREATE_JOINABLE);
-
-  num_cores = 4;
-  threads = (pthread_t **) malloc(sizeof(pthread_t *)*num_cores);
+  if(num_cores < 1){
+    num_cores = machine_cores();
+  }
+  if(num_cores > num_threads){
+    num_cores = num_threads;
+  }
+  if(num_cores < 1){
+    num_cores = 1;
+  }
 
-  for(i = 0; i < num_cores; ++i){
-    thread = (pthread_t *) malloc(sizeof(pthread_t));
-    pthread_create(thread, &attr, &run, NULL);
-    threads[i] = thread;
+  //several chunks per worker so uneven kernels still balance
+  chunk_size = num_threads / (num_cores * 8);
+  if(chunk_size < 1){
+    chunk_size = 1;
   }
+  next_index = 0;
 
-  for(i = 0; i < num_cores; ++i){
-    thread = threads[i];
-    rc = pthread_join(*thread, NULL);
-    if (rc) {
-      printf("ERROR; return code from pthread_join() is %d\n", rc);
-      exit(-1);
+  pthread_mutex_lock(&pool_mutex);
+  if(pool_initialized == 0){
+    pthread_key_create(&threadIdKey, NULL);
+    pthread_attr_init(&attr);
+    pthread_attr_setdetachstate(&attr, PTHREAD_CREATE_DETACHED);
+    pool_initialized = 1;
+  }
+  while(pool_size < num_cores){
+    if(pthread_create(&thread, &attr, &worker, (void *) (long) pool_size) != 0){
+      break;
     }
-  } 
+    ++pool_size;
+  }
+  if(num_cores > pool_size){
+    num_cores = pool_size;
+  }
+  gc_requested = 0;
+  gc_waiting = 0;
+  gc_workers = num_cores;
+  if(num_cores == 0){
+    //no worker could be started, run on the calling thread
+    pthread_mutex_unlock(&pool_mutex);
+    gc_workers = 1;
+    run_chunks();
+    pthread_mutex_unlock(&launch_mutex);
+    fflush(stdout);
+    return;
+  }
 
-  free(threads);
+  pool_active = num_cores;
+  pool_running = num_cores;
+  ++pool_launch;
+  pthread_cond_broadcast(&pool_start_cond);
+  while(pool_running != 0){
+    pthread_cond_wait(&pool_done_cond, &pool_mutex);
+  }
+  pthread_mutex_unlock(&pool_mutex);
+
+  pthread_mutex_unlock(&launch_mutex);
   fflush(stdout);
-}
\ No newline at end of file
+}
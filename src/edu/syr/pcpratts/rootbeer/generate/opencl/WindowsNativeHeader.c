@@ -4,27 +4,27 @@
 #include <Windows.h>
 
 DWORD threadIdKey;
-CRITICAL_SECTION atom_add_mutex;
-CRITICAL_SECTION thread_id_mutex;
 
-void lock_atom_add(){
-  EnterCriticalSection(&atom_add_mutex);
+//the Interlocked functions are full barriers
+
+long long atom_add(long long * addr, long long value){
+  return InterlockedExchangeAdd64((volatile LONGLONG *) addr, value);
 }
 
-void unlock_atom_add(){
-  LeaveCriticalSection(&atom_add_mutex);
+unsigned long long atomicAdd(unsigned long long * addr, long long value){
+  return (unsigned long long) InterlockedExchangeAdd64((volatile LONGLONG *) addr, value);
 }
 
-void lock_thread_id(){
-  EnterCriticalSection(&thread_id_mutex);
+int atomicCAS(int * addr, int compare, int set){
+  return (int) InterlockedCompareExchange((volatile LONG *) addr, set, compare);
 }
 
-void unlock_thread_id(){
-  LeaveCriticalSection(&thread_id_mutex);
+int atomicExch(int * addr, int value){
+  return (int) InterlockedExchange((volatile LONG *) addr, value);
 }
 
 int getThreadId(){
-  return (int) TlsGetValue(threadIdKey);
+  return (int) (LONG_PTR) TlsGetValue(threadIdKey);
 }
 
 long long java_lang_System_nanoTime(char * gc_info, int * exception){
@@ -1,34 +1,171 @@
+//workers stay alive between calls to entry and wait for the next launch.
+//launch_mutex serializes calls to entry, pool_mutex guards the pool state.
+CRITICAL_SECTION launch_mutex;
+CRITICAL_SECTION pool_mutex;
+CONDITION_VARIABLE pool_start_cond;
+CONDITION_VARIABLE pool_done_cond;
+volatile LONG pool_init_state = 0;
+int pool_size = 0;
+int pool_launch = 0;
+int pool_active = 0;
+int pool_running = 0;
 
-DWORD run(void * data)
-{
+volatile LONG next_index;
+int chunk_size;
+
+//a collection waits until every worker still in run_chunks is done with
+//its kernel, the last one to get there collects. gc_mutex guards the rest.
+CRITICAL_SECTION gc_mutex;
+CONDITION_VARIABLE gc_done_cond;
+volatile int gc_requested;
+int gc_workers;
+int gc_waiting;
+int gc_epoch;
+
+void gc_collect_now(){
+  edu_syr_pcpratts_gc_collect(global_gc_info);
+  gc_requested = 0;
+  gc_waiting = 0;
+  ++gc_epoch;
+  WakeAllConditionVariable(&gc_done_cond);
+}
+
+void gc_safepoint(){
+  int epoch;
+
+  EnterCriticalSection(&gc_mutex);
+  if(gc_requested == 0){
+    //another worker may have collected since the check
+    if(edu_syr_pcpratts_gc_should_collect(global_gc_info) == 0){
+      LeaveCriticalSection(&gc_mutex);
+      return;
+    }
+    gc_requested = 1;
+  }
+  ++gc_waiting;
+  if(gc_waiting == gc_workers){
+    gc_collect_now();
+  } else {
+    epoch = gc_epoch;
+    while(epoch == gc_epoch){
+      SleepConditionVariableCS(&gc_done_cond, &gc_mutex, INFINITE);
+    }
+  }
+  LeaveCriticalSection(&gc_mutex);
+}
+
+void gc_leave(){
+  EnterCriticalSection(&gc_mutex);
+  --gc_workers;
+  if(gc_requested && gc_workers > 0 && gc_waiting == gc_workers){
+    gc_collect_now();
+  }
+  LeaveCriticalSection(&gc_mutex);
+}
+
+void run_chunks(){
+  int start;
+  int end;
   int index;
   long long lhandle;
   int exception;
-  int handle;    
+  int handle;
 
   while(1){
-    lock_thread_id();
-    index = thread_id;
-    ++thread_id;
-    unlock_thread_id();
-    
-    if(index >= global_num_threads){
+    start = InterlockedExchangeAdd(&next_index, chunk_size);
+    if(start >= global_num_threads){
       break;
     }
+    end = start + chunk_size;
+    if(end > global_num_threads){
+      end = global_num_threads;
+    }
 
-    TlsSetValue(threadIdKey, (void *) index);
+    for(index = start; index < end; ++index){
+      TlsSetValue(threadIdKey, (void *) (LONG_PTR) index);
 
-    lhandle = global_handles[index];
-    lhandle = lhandle >> 4;
-    handle = (int) lhandle;
-    exception = 0;
-    %%invoke_run%%(global_gc_info, handle, &exception);
-    global_exceptions[index] = exception;
+      exception = 0;
+#if %%indexed%%
+      //one kernel object shared by every thread
+      lhandle = global_handles[0];
+      lhandle = lhandle >> 4;
+      handle = (int) lhandle;
+      %%invoke_run%%(global_gc_info, handle, index, &exception);
+#else
+      lhandle = global_handles[index];
+      lhandle = lhandle >> 4;
+      handle = (int) lhandle;
+      %%invoke_run%%(global_gc_info, handle, &exception);
+#endif
+      if(exception != 0){
+        global_exceptions[index] = exception;
+        edu_syr_pcpratts_record_exception(global_gc_info, index);
+      }
+      //between kernels no roots are left in locals
+      if(gc_requested || edu_syr_pcpratts_gc_should_collect(global_gc_info)){
+        gc_safepoint();
+      }
+    }
   }
+  gc_leave();
+}
+
+DWORD WINAPI worker(void * data)
+{
+  int id;
+  int seen;
+
+  id = (int) (LONG_PTR) data;
+  EnterCriticalSection(&pool_mutex);
+  //a worker is only created during the launch that needs it
+  seen = pool_launch - 1;
+  while(1){
+    while(pool_launch == seen){
+      SleepConditionVariableCS(&pool_start_cond, &pool_mutex, INFINITE);
+    }
+    seen = pool_launch;
+    if(id >= pool_active){
+      continue;
+    }
+    LeaveCriticalSection(&pool_mutex);
+
+    run_chunks();
 
+    EnterCriticalSection(&pool_mutex);
+    --pool_running;
+    if(pool_running == 0){
+      WakeConditionVariable(&pool_done_cond);
+    }
+  }
   return 0;
 }
 
+void pool_init(){
+  if(InterlockedCompareExchange(&pool_init_state, 1, 0) == 0){
+    InitializeCriticalSection(&launch_mutex);
+    InitializeCriticalSection(&pool_mutex);
+    InitializeConditionVariable(&pool_start_cond);
+    InitializeConditionVariable(&pool_done_cond);
+    InitializeCriticalSection(&gc_mutex);
+    InitializeConditionVariable(&gc_done_cond);
+    threadIdKey = TlsAlloc();
+    InterlockedExchange(&pool_init_state, 2);
+  } else {
+    while(pool_init_state != 2){
+      Sleep(0);
+    }
+  }
+}
+
+int machine_cores(){
+  SYSTEM_INFO info;
+  GetSystemInfo(&info);
+  if(info.dwNumberOfProcessors < 1){
+    return 1;
+  }
+  return (int) info.dwNumberOfProcessors;
+}
+
 void entry(char * gc_info_space,
            long long * to_space,
            long long * handles,
@@ -36,37 +173,73 @@ void entry(char * gc_info_space,
            long long * exceptions,
            int * java_lang_class_refs,
            long long space_size,
-           int num_threads){
-  int i;
-  int rc;
-  int num_cores;
+           int num_threads,
+           int num_cores){
+  HANDLE thread;
   char * gc_info;
-  HANDLE * threads;
+
+  pool_init();
+  EnterCriticalSection(&launch_mutex);
 
   gc_info = edu_syr_pcpratts_gc_init(gc_info_space, to_space,
-    *to_space_free_ptr, space_size);
+    *to_space_free_ptr, space_size, num_threads);
   global_num_threads = num_threads;
-  thread_id = 0;
   global_gc_info = gc_info;
   global_handles = handles;
   global_exceptions = exceptions;
   global_class_refs = java_lang_class_refs;
 
-  InitializeCriticalSection(&thread_id_mutex);
-  InitializeCriticalSection(&atom_add_mutex);
-  threadIdKey = TlsAlloc();
+  if(num_cores < 1){
+    num_cores = machine_cores();
+  }
+  if(num_cores > num_threads){
+    num_cores = num_threads;
+  }
+  if(num_cores < 1){
+    num_cores = 1;
+  }
 
-  num_cores = 4;
-  threads = (HANDLE *) malloc(sizeof(HANDLE)*num_cores);
+  //several chunks per worker so uneven kernels still balance
+  chunk_size = num_threads / (num_cores * 8);
+  if(chunk_size < 1){
+    chunk_size = 1;
+  }
+  next_index = 0;
 
-  for(i = 0; i < num_cores; ++i){
-    threads[i] = CreateThread(NULL, 0, &run, NULL, 0, NULL);
+  EnterCriticalSection(&pool_mutex);
+  while(pool_size < num_cores){
+    thread = CreateThread(NULL, 0, &worker, (void *) (LONG_PTR) pool_size, 0, NULL);
+    if(thread == NULL){
+      break;
+    }
+    CloseHandle(thread);
+    ++pool_size;
+  }
+  if(num_cores > pool_size){
+    num_cores = pool_size;
+  }
+  gc_requested = 0;
+  gc_waiting = 0;
+  gc_workers = num_cores;
+  if(num_cores == 0){
+    //no worker could be started, run on the calling thread
+    LeaveCriticalSection(&pool_mutex);
+    gc_workers = 1;
+    run_chunks();
+    LeaveCriticalSection(&launch_mutex);
+    fflush(stdout);
+    return;
   }
 
-  for(i = 0; i < num_cores; ++i){
-    WaitForSingleObject(threads[i], INFINITE);
+  pool_active = num_cores;
+  pool_running = num_cores;
+  ++pool_launch;
+  WakeAllConditionVariable(&pool_start_cond);
+  while(pool_running != 0){
+    SleepConditionVariableCS(&pool_done_cond, &pool_mutex, INFINITE);
   }
+  LeaveCriticalSection(&pool_mutex);
 
-  free(threads);
+  LeaveCriticalSection(&launch_mutex);
   fflush(stdout);
-}
\ No newline at end of file
+}
@@ -208,6 +208,7 @@ public class OpenCLField {
         ret.append("*(("+address_qual+" "+cast_string+" *) &thisref_deref[offset]) = parameter0;\n");
       }
     }
+    ret.append("edu_syr_pcpratts_gc_set_dirty(thisref_deref);\n");
     ret.append("}\n");
     
     return ret.toString();
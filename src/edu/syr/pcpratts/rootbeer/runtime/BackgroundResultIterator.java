@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime;
+
+import java.util.Iterator;
+
+/**
+ * Runs the batches of any ParallelRuntime one after another on a background
+ * thread, so the caller consumes batch N while batch N+1 runs.
+ */
+public class BackgroundResultIterator extends StreamingResultIterator {
+
+  private final ParallelRuntime m_runtime;
+  private final Rootbeer m_rootbeer;
+  private final ThreadConfig m_threadConfig;
+
+  public BackgroundResultIterator(Iterator<Kernel> jobs, ParallelRuntime runtime,
+    Rootbeer rootbeer, ThreadConfig thread_config, int depth){
+
+    super(depth);
+    m_runtime = runtime;
+    m_rootbeer = rootbeer;
+    m_threadConfig = thread_config;
+    startThread(new RunStage(jobs), "run");
+  }
+
+  @Override
+  protected void finish(){
+    //the runtimes add their own StatsRows
+  }
+
+  private class RunStage implements Runnable {
+
+    private Iterator<Kernel> m_jobs;
+
+    public RunStage(Iterator<Kernel> jobs){
+      m_jobs = jobs;
+    }
+
+    public void run(){
+      while(isFailed() == false){
+        takeSlot();
+        if(isFailed() || m_jobs.hasNext() == false){
+          break;
+        }
+        try {
+          PartiallyCompletedParallelJob partial = m_runtime.run(m_jobs, m_rootbeer, m_threadConfig);
+          complete(partial.getActiveJobs());
+          m_jobs = partial.getJobsToEnqueue();
+        } catch(Throwable ex){
+          fail(ex);
+        }
+      }
+      end();
+    }
+  }
+}
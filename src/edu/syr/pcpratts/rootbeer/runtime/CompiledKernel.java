@@ -17,4 +17,21 @@ public interface CompiledKernel {
   public String getCubin();
   public Serializer getSerializer(Memory mem, Memory texture_mem);
   public boolean isUsingGarbageCollector();
+  
+  /**
+   * @return true when the gpu never writes anything reachable from the 
+   * kernel, so kernels need not be read back
+   */
+  public boolean isReadOnly();
+  
+  /**
+   * @return true when the gpu can change a static field or an object 
+   * reachable from one, so statics must be read back before the next run
+   */
+  public boolean writesStatics();
+  
+  /**
+   * @return true when the gpu can store into a field or an element of o
+   */
+  public boolean writesFieldsOf(Object o);
 }
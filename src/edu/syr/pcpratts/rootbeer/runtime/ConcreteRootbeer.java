@@ -50,13 +50,101 @@ public class ConcreteRootbeer implements IRootbeerInternal {
     }
   }
   
+  /**
+   * @return the runtime runAll would use for first, or the one of the 
+   *   configured mode if first is null
+   */
+  private ParallelRuntime selectRuntime(Kernel first){
+    int mode = Configuration.runtimeInstance().getMode();
+    if(mode == Configuration.MODE_NEMU){
+      Tweaks.setInstance(new NativeCpuTweaks());
+      return hybrid(NativeCpuRuntime.v());
+    } else if(mode == Configuration.MODE_JEMU || 
+      (first != null && first instanceof CompiledKernel == false)){
+      
+      return CpuRuntime.v();
+    } else {
+      Tweaks.setInstance(new CudaTweaks());
+      return hybrid(CudaRuntime2.v());
+    }
+  }
+  
+  /**
+   * @return device, or a HybridRuntime sharing its work with the host cores
+   *   if Configuration.getHybridCpu() 
+   */
+  private ParallelRuntime hybrid(ParallelRuntime device){
+    if(Configuration.getHybridCpu()){
+      return HybridRuntime.v(device);
+    }
+    return device;
+  }
+  
+  public <T> RootbeerFuture<T> runAsync(Iterator<Kernel> jobs, Kernel first, final T result) {
+    final ParallelRuntime runtime = selectRuntime(first);
+    final ThreadConfig thread_config = m_threadConfig;
+    final RootbeerFuture<T> ret = new RootbeerFuture<T>();
+    final Iterator<Kernel> cancellable = ret.wrap(jobs);
+    DeviceThread.v(runtime).submit(new Runnable(){
+      public void run(){
+        if(ret.start() == false){
+          return;
+        }
+        try {
+          Iterator<Kernel> iter = cancellable;
+          while(ret.isCancelled() == false && iter.hasNext()){
+            PartiallyCompletedParallelJob partial = runtime.run(iter, m_rootbeer, thread_config);
+            iter = partial.getJobsToEnqueue();
+          }
+          ret.complete(result);
+        } catch(Throwable ex){
+          ret.fail(ex);
+        }
+      }
+    });
+    return ret;
+  }
+  
+  /**
+   * Streams the results: kernels are returned as their batch completes while
+   * later batches run, and only a few batches are in memory at once.
+   */
   public Iterator<Kernel> run(Iterator<Kernel> iter) {
+    int depth = Math.max(2, Configuration.getPipelineDepth());
     if(Configuration.runtimeInstance().getMode() == Configuration.MODE_NEMU){
-      return runOnNativeCpu(iter);
+      Tweaks.setInstance(new NativeCpuTweaks());
+      if(Configuration.getHybridCpu()){
+        return new BackgroundResultIterator(iter, HybridRuntime.v(NativeCpuRuntime.v()), 
+          m_rootbeer, m_threadConfig, depth);
+      }
+      //a depth of one asks for the stages of a batch not to overlap
+      if(Configuration.getPipelineDepth() > 1){
+        return new PipelinedResultIterator(iter, NativeCpuRuntime.v(), m_rootbeer, 
+          m_threadConfig, depth);
+      }
+      return new BackgroundResultIterator(iter, NativeCpuRuntime.v(), m_rootbeer, 
+        m_threadConfig, depth);
     } else if(Configuration.runtimeInstance().getMode() == Configuration.MODE_JEMU){
-      return runOnCpu(iter);
+      return new BackgroundResultIterator(iter, CpuRuntime.v(), m_rootbeer, 
+        m_threadConfig, depth);
     } else {
-      return runOnCudaGpu(iter);
+      Tweaks.setInstance(new CudaTweaks());
+      return new BackgroundResultIterator(iter, hybrid(CudaRuntime2.v()), m_rootbeer, 
+        m_threadConfig, depth);
+    }
+  }
+
+  public void runIndexed(IndexedKernel kernel, ThreadConfig thread_config) {
+    int num_threads = thread_config.getBlockShapeX() * thread_config.getGridShapeX();
+    int mode = Configuration.runtimeInstance().getMode();
+    if(mode == Configuration.MODE_NEMU){
+      Tweaks.setInstance(new NativeCpuTweaks());
+      NativeCpuRuntime.v().runIndexed((CompiledKernel) kernel, num_threads);
+    } else if(mode == Configuration.MODE_JEMU || kernel instanceof CompiledKernel == false){
+      CpuRuntime.v().runIndexed(kernel, num_threads);
+    } else {
+      Tweaks.setInstance(new CudaTweaks());
+      CudaRuntime2.v().runIndexed((CompiledKernel) kernel, m_rootbeer, thread_config);
     }
   }
 
@@ -73,16 +161,39 @@ public class ConcreteRootbeer implements IRootbeerInternal {
   
   private Iterator<Kernel> runOnCudaGpu(Iterator<Kernel> jobs) {    
     Tweaks.setInstance(new CudaTweaks());
+    if(Configuration.getHybridCpu()){
+      return runHybrid(CudaRuntime2.v(), jobs);
+    }
     PartiallyCompletedParallelJob partial = CudaRuntime2.v().run(jobs, m_rootbeer, m_threadConfig);
     return new ResultIterator(partial, CudaRuntime2.v(), m_rootbeer);
   }
   
   private Iterator<Kernel> runOnNativeCpu(Iterator<Kernel> jobs) {
     Tweaks.setInstance(new NativeCpuTweaks());
+    if(Configuration.getHybridCpu()){
+      return runHybrid(NativeCpuRuntime.v(), jobs);
+    }
+    int depth = Configuration.getPipelineDepth();
+    if(depth > 1){
+      return new PipelinedResultIterator(jobs, NativeCpuRuntime.v(), m_rootbeer, 
+        m_threadConfig, depth);
+    }
     PartiallyCompletedParallelJob partial = NativeCpuRuntime.v().run(jobs, m_rootbeer, m_threadConfig);
     return new ResultIterator(partial, NativeCpuRuntime.v(), m_rootbeer);
   }
 
+  private Iterator<Kernel> runHybrid(ParallelRuntime device, Iterator<Kernel> jobs) {
+    HybridRuntime runtime = HybridRuntime.v(device);
+    try {
+      PartiallyCompletedParallelJob partial = runtime.run(jobs, m_rootbeer, m_threadConfig);
+      return new ResultIterator(partial, runtime, m_rootbeer);
+    } catch(RuntimeException ex){
+      throw ex;
+    } catch(Exception ex){
+      throw new RuntimeException(ex);
+    }
+  }
+
   public void setThreadConfig(ThreadConfig thread_config) {
     m_threadConfig = thread_config;
   }
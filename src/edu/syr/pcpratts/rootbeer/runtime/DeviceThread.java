@@ -0,0 +1,60 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime;
+
+import edu.syr.pcpratts.rootbeer.runtime2.cuda.BlockingQueue;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The thread asynchronous runs on one device are made on. Runs are made one 
+ * at a time in the order they were submitted. A HybridRuntime shares the 
+ * thread of its device.
+ */
+public class DeviceThread implements Runnable {
+
+  private static Map<ParallelRuntime, DeviceThread> m_Instances = 
+    new HashMap<ParallelRuntime, DeviceThread>();
+  
+  public static synchronized DeviceThread v(ParallelRuntime runtime){
+    ParallelRuntime device = runtime;
+    if(runtime instanceof HybridRuntime){
+      device = ((HybridRuntime) runtime).getDevice();
+    }
+    DeviceThread ret = m_Instances.get(device);
+    if(ret == null){
+      ret = new DeviceThread();
+      m_Instances.put(device, ret);
+    }
+    return ret;
+  }
+  
+  private BlockingQueue<Runnable> m_Queue;
+  
+  private DeviceThread(){
+    m_Queue = new BlockingQueue<Runnable>();
+    Thread thread = new Thread(this, "rootbeer device");
+    thread.setDaemon(true);
+    thread.start();
+  }
+  
+  public void submit(Runnable run){
+    m_Queue.put(run);
+  }
+
+  public void run() {
+    while(true){
+      Runnable run = m_Queue.take();
+      try {
+        run.run();
+      } catch(Throwable ex){
+        ex.printStackTrace();
+      }
+    }
+  }
+}
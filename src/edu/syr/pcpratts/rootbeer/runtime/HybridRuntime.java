@@ -0,0 +1,152 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime;
+
+import edu.syr.pcpratts.rootbeer.runtime2.cuda.CpuRunner;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits every batch between a device and java threads on the host cores.
+ * The share of the cpu follows the kernels per second both sides reached on
+ * the earlier batches, so both should finish at about the same time. Only
+ * kernels that give the same result on either side may be split, kernels
+ * writing static fields or using shared memory may not.
+ */
+public class HybridRuntime implements ParallelRuntime {
+
+  private static Map<ParallelRuntime, HybridRuntime> m_Instances =
+    new HashMap<ParallelRuntime, HybridRuntime>();
+
+  public static synchronized HybridRuntime v(ParallelRuntime device){
+    HybridRuntime ret = m_Instances.get(device);
+    if(ret == null){
+      ret = new HybridRuntime(device);
+      m_Instances.put(device, ret);
+    }
+    return ret;
+  }
+
+  private static final double m_MaxCpuFraction = 0.9;
+  private static final int m_MinWindow = 4096;
+
+  private final ParallelRuntime m_Device;
+  private final CpuRunner m_CpuRunner;
+  private double m_CpuFraction;
+  private int m_Window;
+
+  private HybridRuntime(ParallelRuntime device){
+    m_Device = device;
+    m_CpuRunner = new CpuRunner();
+    m_CpuFraction = 0;
+    m_Window = m_MinWindow;
+  }
+
+  /**
+   * @return the share of the kernels the next batch gives to the cpu
+   */
+  public synchronized double getCpuFraction(){
+    return m_CpuFraction;
+  }
+
+  public synchronized PartiallyCompletedParallelJob run(Iterator<Kernel> jobs, Rootbeer rootbeer,
+    ThreadConfig thread_config) throws Exception {
+
+    List<Kernel> window = new ArrayList<Kernel>();
+    while(window.size() < m_Window && jobs.hasNext()){
+      window.add(jobs.next());
+    }
+    int cpu_count = cpuCount(window.size());
+    List<Kernel> cpu_jobs = window.subList(0, cpu_count);
+    List<Kernel> device_jobs = window.subList(cpu_count, window.size());
+
+    //the device starts on its part of the window and goes on with jobs
+    PartiallyCompletedParallelJob device_input = new PartiallyCompletedParallelJob(jobs);
+    device_input.addNotWritten(device_jobs);
+    Iterator<Kernel> device_iter = device_input.getJobsToEnqueue();
+
+    if(cpu_jobs.isEmpty() == false){
+      m_CpuRunner.run(cpu_jobs);
+    }
+    PartiallyCompletedParallelJob device_ret = null;
+    long device_nanos = 0;
+    try {
+      if(device_iter.hasNext()){
+        long start = System.nanoTime();
+        device_ret = m_Device.run(device_iter, rootbeer, thread_config);
+        device_nanos = System.nanoTime() - start;
+      }
+    } finally {
+      if(cpu_jobs.isEmpty() == false){
+        m_CpuRunner.join();
+      }
+    }
+
+    PartiallyCompletedParallelJob ret;
+    int device_count = 0;
+    if(device_ret == null){
+      ret = new PartiallyCompletedParallelJob(device_iter);
+    } else {
+      ret = new PartiallyCompletedParallelJob(device_ret.getJobsToEnqueue());
+      device_count = device_ret.getActiveJobs().size();
+    }
+    ret.enqueueJobs(cpu_jobs);
+    if(device_ret != null){
+      ret.enqueueJobs(device_ret.getActiveJobs());
+    }
+    rebalance(cpu_jobs.size(), m_CpuRunner.getElapsedNanos(), device_count, device_nanos);
+    return ret;
+  }
+
+  /**
+   * Before anything was measured every core gets one kernel so the cpu
+   * side is measured, but the device always gets at least half.
+   */
+  private int cpuCount(int window_size){
+    int ret = (int) (window_size * m_CpuFraction);
+    ret = Math.max(ret, m_CpuRunner.getNumCores());
+    ret = Math.min(ret, (int) (window_size * m_MaxCpuFraction));
+    if(m_CpuFraction == 0){
+      ret = Math.min(ret, window_size / 2);
+    }
+    return ret;
+  }
+
+  private void rebalance(int cpu_count, long cpu_nanos, int device_count, long device_nanos){
+    if(cpu_count > 0 && device_count > 0 && cpu_nanos > 0 && device_nanos > 0){
+      double cpu_rate = (double) cpu_count / cpu_nanos;
+      double device_rate = (double) device_count / device_nanos;
+      double fraction = cpu_rate / (cpu_rate + device_rate);
+      if(m_CpuFraction == 0){
+        m_CpuFraction = fraction;
+      } else {
+        m_CpuFraction = (m_CpuFraction + fraction) / 2;
+      }
+      m_CpuFraction = Math.min(m_CpuFraction, m_MaxCpuFraction);
+    }
+    if(device_count > 0){
+      //the next window is one device batch plus the share of the cpu
+      double window = device_count / (1 - m_CpuFraction);
+      m_Window = (int) Math.max(m_MinWindow, Math.min(Integer.MAX_VALUE / 2, window));
+    }
+  }
+
+  /**
+   * @return the runtime the share of the device is run on
+   */
+  public ParallelRuntime getDevice(){
+    return m_Device;
+  }
+
+  public boolean isGpuPresent() {
+    return m_Device.isGpuPresent();
+  }
+}
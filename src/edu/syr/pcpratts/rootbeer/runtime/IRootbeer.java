@@ -14,5 +14,11 @@ public interface IRootbeer {
   
   void runAll(List<Kernel> jobs);
   Iterator<Kernel> run(Iterator<Kernel> jobs);
+  RootbeerFuture<List<Kernel>> runAllAsync(List<Kernel> jobs);
+  RootbeerFuture<Void> runAsync(Iterator<Kernel> jobs);
+  void run(IndexedKernel kernel, ThreadConfig thread_config);
+  void pin(Object o);
+  void unpin(Object o);
+  void markDirty(Object o);
 
 }
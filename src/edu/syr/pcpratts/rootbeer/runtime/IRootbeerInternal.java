@@ -14,6 +14,8 @@ public interface IRootbeerInternal {
 
   void runAll(List<Kernel> jobs);
   Iterator<Kernel> run(Iterator<Kernel> jobs);
+  <T> RootbeerFuture<T> runAsync(Iterator<Kernel> jobs, Kernel first, T result);
+  void runIndexed(IndexedKernel kernel, ThreadConfig thread_config);
   void setThreadConfig(ThreadConfig thread_config);
   void clearThreadConfig();
 }
@@ -0,0 +1,17 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime;
+
+/**
+ * A kernel that is written to the device once and run by every thread of a
+ * ThreadConfig. index is the thread id, the same as RootbeerGpu.getThreadId().
+ * Every thread shares the fields of the one instance.
+ */
+public interface IndexedKernel {
+  void gpuMethod(int index);
+}
@@ -9,7 +9,6 @@ package edu.syr.pcpratts.rootbeer.runtime;
 
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 public class PartiallyCompletedParallelJob {
@@ -19,8 +18,8 @@ public class PartiallyCompletedParallelJob {
   private List<Kernel> m_NotWritten;
 
   public PartiallyCompletedParallelJob(Iterator<Kernel> remaining_jobs) {
-    m_RemainingJobs = remaining_jobs;
-    m_ActiveJobs = new LinkedList<Kernel>();
+    m_RemainingJobs = unwrap(remaining_jobs);
+    m_ActiveJobs = new ArrayList<Kernel>();
     m_NotWritten = new ArrayList<Kernel>();
   }
 
@@ -29,8 +28,26 @@ public class PartiallyCompletedParallelJob {
   }
 
   public Iterator<Kernel> getJobsToEnqueue(){
+    if(m_NotWritten.isEmpty()){
+      return m_RemainingJobs;
+    }
     return new CompositeIterator(m_NotWritten, m_RemainingJobs);
   }
+  
+  /**
+   * Drops the CompositeIterators of earlier batches once their not written
+   * jobs are used up, so a long run does not build a chain of them.
+   */
+  private static Iterator<Kernel> unwrap(Iterator<Kernel> jobs){
+    while(jobs instanceof CompositeIterator){
+      CompositeIterator composite = (CompositeIterator) jobs;
+      if(composite.m_NotWritten.hasNext()){
+        break;
+      }
+      jobs = composite.m_Remaining;
+    }
+    return jobs;
+  }
 
   public void enqueueJob(Kernel job){
     m_ActiveJobs.add(job);
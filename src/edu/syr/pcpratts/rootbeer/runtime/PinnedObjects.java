@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The object graphs pinned with Rootbeer.pin. Every to-space keeps its own
+ * PinnedSpace and is told here what was pinned, unpinned or dirtied since
+ * its last run. The spaces are only changed while holding this object.
+ */
+public class PinnedObjects {
+
+  private static PinnedObjects m_Instance;
+
+  public static synchronized PinnedObjects v(){
+    if(m_Instance == null){
+      m_Instance = new PinnedObjects();
+    }
+    return m_Instance;
+  }
+
+  private final Map<Object, Boolean> m_Roots;
+  private final List<WeakReference<PinnedSpace>> m_Spaces;
+
+  private PinnedObjects(){
+    m_Roots = new IdentityHashMap<Object, Boolean>();
+    m_Spaces = new ArrayList<WeakReference<PinnedSpace>>();
+  }
+
+  /**
+   * @return a space for one to-space, it writes every root on its first run
+   */
+  public synchronized PinnedSpace createSpace(){
+    PinnedSpace ret = new PinnedSpace(this);
+    m_Spaces.add(new WeakReference<PinnedSpace>(ret));
+    return ret;
+  }
+
+  public synchronized void pin(Object o){
+    if(m_Roots.containsKey(o)){
+      return;
+    }
+    m_Roots.put(o, Boolean.TRUE);
+    for(PinnedSpace space : spaces()){
+      space.pinned(o);
+    }
+  }
+
+  /**
+   * Objects reachable from o stay in the to-spaces until the next run
+   * writes the remaining roots again.
+   */
+  public synchronized void unpin(Object o){
+    if(m_Roots.remove(o) == null){
+      return;
+    }
+    for(PinnedSpace space : spaces()){
+      space.invalidate();
+    }
+  }
+
+  public synchronized void markDirty(Object o){
+    for(PinnedSpace space : spaces()){
+      space.dirtied(o);
+    }
+  }
+
+  synchronized List<Object> getRoots(){
+    return new ArrayList<Object>(m_Roots.keySet());
+  }
+
+  synchronized boolean isEmpty(){
+    return m_Roots.isEmpty();
+  }
+
+  private List<PinnedSpace> spaces(){
+    List<PinnedSpace> ret = new ArrayList<PinnedSpace>();
+    Iterator<WeakReference<PinnedSpace>> iter = m_Spaces.iterator();
+    while(iter.hasNext()){
+      PinnedSpace space = iter.next().get();
+      if(space == null){
+        iter.remove();
+      } else {
+        ret.add(space);
+      }
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime;
+
+import edu.syr.pcpratts.rootbeer.runtime.memory.Memory;
+import edu.syr.pcpratts.rootbeer.runtime.memory.RegionAllocator;
+import edu.syr.pcpratts.rootbeer.runtime.util.IdentityRefMap;
+import edu.syr.pcpratts.rootbeer.runtime.util.RefObjectMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The pinned objects of one to-space. They are kept right after the statics
+ * and the objects of each run are allocated after them, so a pinned object
+ * keeps its ref from run to run. A run only writes the objects pinned or
+ * dirtied since the last run of this space. Pinned objects are never read
+ * back and a kernel may not store into them: the host copy would no longer
+ * match the one on the device, and a stored reference would point to an
+ * object the next run overwrites.
+ */
+public class PinnedSpace {
+
+  private final PinnedObjects m_Registry;
+  private IdentityRefMap m_Refs;
+  private RefObjectMap m_Objects;
+  private volatile int m_Count;
+  private Map<Class<?>, Object> m_Samples;
+  private Map<Object, Boolean> m_NewRoots;
+  private Map<Object, Boolean> m_Dirty;
+  private boolean m_Valid;
+  private long m_Start;
+  private long m_End;
+  private long m_BytesWritten;
+  private boolean m_Uploaded;
+
+  PinnedSpace(PinnedObjects registry){
+    m_Registry = registry;
+    m_Refs = new IdentityRefMap();
+    m_Objects = new RefObjectMap();
+    m_Samples = new HashMap<Class<?>, Object>();
+    m_NewRoots = new IdentityHashMap<Object, Boolean>();
+    m_Dirty = new IdentityHashMap<Object, Boolean>();
+    m_Valid = false;
+  }
+
+  void pinned(Object o){
+    if(m_Valid){
+      m_NewRoots.put(o, Boolean.TRUE);
+    }
+  }
+
+  void dirtied(Object o){
+    if(m_Valid){
+      m_Dirty.put(o, Boolean.TRUE);
+    }
+  }
+
+  /**
+   * Every root is written again on the next run
+   */
+  void invalidate(){
+    m_Valid = false;
+    m_Count = 0;
+    m_Refs = new IdentityRefMap();
+    m_Objects = new RefObjectMap();
+    m_Samples.clear();
+    m_NewRoots.clear();
+    m_Dirty.clear();
+    m_Uploaded = false;
+  }
+
+  /**
+   * Called when the memory of the to-space was replaced
+   */
+  public void discard(){
+    synchronized(m_Registry){
+      invalidate();
+    }
+  }
+
+  /**
+   * @return the ref of o if it is pinned in this space, otherwise -1
+   */
+  public long getRef(Object o){
+    if(m_Count == 0){
+      return -1;
+    }
+    return m_Refs.get(o);
+  }
+
+  /**
+   * @return the pinned object at ref, or null
+   */
+  public Object getObject(long ref){
+    if(m_Count == 0){
+      return null;
+    }
+    return m_Objects.get(ref);
+  }
+
+  void add(Object o, long ref){
+    m_Refs.put(o, ref);
+    m_Objects.put(ref, o);
+    if(m_Samples.containsKey(o.getClass()) == false){
+      m_Samples.put(o.getClass(), o);
+    }
+    m_Count++;
+  }
+
+  /**
+   * @return the bytes of pinned objects the last run wrote
+   */
+  public long getBytesWritten(){
+    return m_BytesWritten;
+  }
+
+  /**
+   * Writes what changed since the last run of this space and makes views
+   * allocate after the pinned objects. Called after the statics and before
+   * any kernel is written with serializer.
+   * @throws OutOfMemoryError if the pinned objects do not fit, the space
+   *   is written again on the next run
+   * @throws IllegalArgumentException if kernel can store into a field or an
+   *   element of a pinned object
+   */
+  public void write(Serializer serializer, List<Memory> views, CompiledKernel kernel){
+    synchronized(m_Registry){
+      writeChanged(serializer, views);
+      checkKernel(kernel);
+    }
+  }
+
+  private void writeChanged(Serializer serializer, List<Memory> views){
+    m_BytesWritten = 0;
+    if(m_Valid == false && m_Registry.isEmpty()){
+      return;
+    }
+    long statics_end = heapEnd(views);
+    if(m_Valid == false || statics_end > m_Start){
+      invalidate();
+      //leave room for statics that grow a little
+      long region = RegionAllocator.DEFAULT_REGION_SIZE;
+      m_Start = (statics_end + region - 1) / region * region;
+      m_End = m_Start;
+      for(Object root : m_Registry.getRoots()){
+        m_NewRoots.put(root, Boolean.TRUE);
+      }
+      m_Valid = true;
+    }
+    allocateFrom(views, m_End);
+    if(m_NewRoots.isEmpty() && m_Dirty.isEmpty()){
+      return;
+    }
+    m_Uploaded = false;
+    long bytes_before = serializer.getBytesWritten();
+    try {
+      for(Object root : new ArrayList<Object>(m_NewRoots.keySet())){
+        serializer.writePinned(root);
+      }
+      for(Object o : new ArrayList<Object>(m_Dirty.keySet())){
+        long ref = getRef(o);
+        if(ref != -1){
+          serializer.rewritePinned(o, ref);
+        }
+      }
+    } catch(OutOfMemoryError ex){
+      invalidate();
+      allocateFrom(views, (statics_end + 15) & ~15L);
+      throw ex;
+    }
+    m_NewRoots.clear();
+    m_Dirty.clear();
+    m_BytesWritten = serializer.getBytesWritten() - bytes_before;
+    m_End = (heapEnd(views) + 15) & ~15L;
+    allocateFrom(views, m_End);
+  }
+
+  /**
+   * Pinned objects of one class are all checked with the first one written
+   */
+  private void checkKernel(CompiledKernel kernel){
+    for(Object sample : m_Samples.values()){
+      if(kernel.writesFieldsOf(sample)){
+        throw new IllegalArgumentException("the kernel stores into pinned "+
+          "objects of "+sample.getClass().getName()+", unpin them before "+
+          "running it");
+      }
+    }
+  }
+
+  /**
+   * Called after a run copied the to-space to the device. The pinned region
+   * there matches the host until the next write changes it.
+   */
+  public void setUploaded(){
+    synchronized(m_Registry){
+      m_Uploaded = m_Valid;
+    }
+  }
+
+  /**
+   * @return true if the device already holds the pinned region as the last
+   *   write left it, so a run does not need to copy it
+   */
+  public boolean isUploaded(){
+    synchronized(m_Registry){
+      return m_Uploaded;
+    }
+  }
+
+  /**
+   * @return the start of the pinned region in the to-space
+   */
+  public long getStart(){
+    return m_Start;
+  }
+
+  /**
+   * @return the end of the pinned region in the to-space
+   */
+  public long getEnd(){
+    return m_End;
+  }
+
+  private long heapEnd(List<Memory> views){
+    long ret = 0;
+    for(Memory view : views){
+      ret = Math.max(ret, view.getHeapEndPtr());
+    }
+    return ret;
+  }
+
+  private void allocateFrom(List<Memory> views, long address){
+    for(Memory view : views){
+      view.allocateFrom(address);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime;
+
+import java.util.Iterator;
+
+/**
+ * One serialized batch of a StagedRuntime. Runtimes extend this to keep the
+ * buffers the batch was written to.
+ */
+public class PipelineBatch {
+
+  private Iterator<Kernel> m_RemainingJobs;
+  private int m_Count;
+  private boolean m_WritesStatics;
+
+  public PipelineBatch(Iterator<Kernel> remaining_jobs, int count){
+    this(remaining_jobs, count, true);
+  }
+
+  public PipelineBatch(Iterator<Kernel> remaining_jobs, int count, 
+    boolean writes_statics){
+    
+    m_RemainingJobs = remaining_jobs;
+    m_Count = count;
+    m_WritesStatics = writes_statics;
+  }
+
+  public Iterator<Kernel> getRemainingJobs(){
+    return m_RemainingJobs;
+  }
+
+  /**
+   * @return the number of kernels written
+   */
+  public int getCount(){
+    return m_Count;
+  }
+
+  /**
+   * @return true when running the batch can change statics, the next batch
+   * is then only serialized after this one is read back
+   */
+  public boolean writesStatics(){
+    return m_WritesStatics;
+  }
+}
@@ -0,0 +1,92 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime;
+
+/**
+ * Busy time of every stage of a pipelined run. A utilization is the busy
+ * time of a stage over the time of the whole run, so with full overlap all 
+ * three can be close to one.
+ */
+public class PipelineStats {
+
+  private long m_serializationNanos;
+  private long m_executionNanos;
+  private long m_deserializationNanos;
+  private long m_overallNanos;
+  private int m_batches;
+  private int m_depth;
+
+  public PipelineStats(long serialization_nanos, long execution_nanos,
+                       long deserialization_nanos, long overall_nanos,
+                       int batches, int depth) {
+    m_serializationNanos = serialization_nanos;
+    m_executionNanos = execution_nanos;
+    m_deserializationNanos = deserialization_nanos;
+    m_overallNanos = overall_nanos;
+    m_batches = batches;
+    m_depth = depth;
+  }
+
+  public long getSerializationNanos(){
+    return m_serializationNanos;
+  }
+
+  public long getExecutionNanos(){
+    return m_executionNanos;
+  }
+
+  public long getDeserializationNanos(){
+    return m_deserializationNanos;
+  }
+
+  public long getOverallNanos(){
+    return m_overallNanos;
+  }
+
+  public int getBatches(){
+    return m_batches;
+  }
+
+  /**
+   * @return the most batches that were allowed in flight
+   */
+  public int getDepth(){
+    return m_depth;
+  }
+
+  public double getSerializationUtilization(){
+    return utilization(m_serializationNanos);
+  }
+
+  public double getExecutionUtilization(){
+    return utilization(m_executionNanos);
+  }
+
+  public double getDeserializationUtilization(){
+    return utilization(m_deserializationNanos);
+  }
+
+  private double utilization(long nanos){
+    if(m_overallNanos <= 0){
+      return 0;
+    }
+    return (double) nanos / m_overallNanos;
+  }
+
+  @Override
+  public String toString(){
+    return "batches: "+m_batches+" depth: "+m_depth+" overall: "+(m_overallNanos / 1000000)+"ms"+
+      " serialize: "+percent(getSerializationUtilization())+
+      " execute: "+percent(getExecutionUtilization())+
+      " deserialize: "+percent(getDeserializationUtilization());
+  }
+
+  private String percent(double utilization){
+    return Math.round(utilization * 100)+"%";
+  }
+}
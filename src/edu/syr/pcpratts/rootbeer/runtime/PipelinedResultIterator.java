@@ -0,0 +1,215 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime;
+
+import edu.syr.pcpratts.rootbeer.runtime2.cuda.BlockingQueue;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Runs the stages of a StagedRuntime on three threads so batch N+1 is
+ * serialized while batch N executes and batch N-1 is deserialized. At most
+ * depth batches hold a buffer or wait for the caller at once. Batches
+ * complete in job order.
+ * <p>
+ * Only batches of kernels the compiler shows write no statics overlap. For
+ * any other batch the next one is serialized after it is read back, so
+ * statics always hold the values of the batch before. Kernels in different
+ * batches must not share objects the gpu writes: a shared object is 
+ * serialized for the next batch before the previous batch reads it back.
+ */
+public class PipelinedResultIterator extends StreamingResultIterator {
+
+  private final StagedRuntime m_runtime;
+  private final Rootbeer m_rootbeer;
+  private final ThreadConfig m_threadConfig;
+
+  private final BlockingQueue<Entry> m_toExecute;
+  private final BlockingQueue<Entry> m_toDeserialize;
+
+  private long m_serializationNanos;
+  private long m_executionNanos;
+  private long m_deserializationNanos;
+  private int m_batches;
+  private final Object m_readBackLock;
+  private int m_readBack;
+  private long m_startTime;
+  private PipelineStats m_stats;
+
+  public PipelinedResultIterator(Iterator<Kernel> jobs, StagedRuntime runtime,
+    Rootbeer rootbeer, ThreadConfig thread_config, int depth){
+
+    super(depth);
+    m_runtime = runtime;
+    m_rootbeer = rootbeer;
+    m_threadConfig = thread_config;
+    m_toExecute = new BlockingQueue<Entry>();
+    m_toDeserialize = new BlockingQueue<Entry>();
+    m_readBackLock = new Object();
+    m_readBack = 0;
+    m_startTime = System.nanoTime();
+
+    startThread(new SerializeStage(jobs), "pipeline serialize");
+    startThread(new ExecuteStage(), "pipeline execute");
+    startThread(new DeserializeStage(), "pipeline deserialize");
+  }
+
+  /**
+   * @return the stage times, or null while the pipeline is still running
+   */
+  public PipelineStats getStats(){
+    return m_stats;
+  }
+
+  @Override
+  protected void finish(){
+    long overall = System.nanoTime() - m_startTime;
+    //the stage counters are read after an entry has passed every stage
+    m_stats = new PipelineStats(m_serializationNanos, m_executionNanos,
+      m_deserializationNanos, overall, m_batches, getDepth());
+    if(m_rootbeer != null){
+      int grid_shape = 0;
+      int block_shape = 0;
+      if(m_threadConfig != null){
+        grid_shape = m_threadConfig.getGridShapeX();
+        block_shape = m_threadConfig.getBlockShapeX();
+      }
+      m_rootbeer.addStatsRow(new StatsRow(m_serializationNanos / 1000000,
+        m_executionNanos / 1000000, m_deserializationNanos / 1000000,
+        overall / 1000000, grid_shape, block_shape));
+      m_rootbeer.setPipelineStats(m_stats);
+    }
+  }
+
+  /**
+   * Blocks until count batches have left the deserialize stage or the 
+   * pipeline failed
+   */
+  private void waitForReadBack(int count){
+    synchronized(m_readBackLock){
+      while(m_readBack < count && isFailed() == false){
+        try {
+          m_readBackLock.wait();
+        } catch(InterruptedException ex){
+          //keep waiting
+        }
+      }
+    }
+  }
+
+  private void readBack(){
+    synchronized(m_readBackLock){
+      m_readBack++;
+      m_readBackLock.notifyAll();
+    }
+  }
+
+  private class Entry {
+    private PipelineBatch m_batch;
+    private Throwable m_error;
+    private boolean m_end;
+  }
+
+  private class SerializeStage implements Runnable {
+
+    private Iterator<Kernel> m_jobs;
+
+    public SerializeStage(Iterator<Kernel> jobs){
+      m_jobs = jobs;
+    }
+
+    public void run(){
+      int serialized = 0;
+      while(isFailed() == false){
+        takeSlot();
+        if(isFailed() || m_jobs.hasNext() == false){
+          break;
+        }
+        Entry entry = new Entry();
+        long start = System.nanoTime();
+        try {
+          entry.m_batch = m_runtime.serialize(m_jobs, m_threadConfig);
+          m_jobs = entry.m_batch.getRemainingJobs();
+        } catch(Throwable ex){
+          entry.m_error = ex;
+        }
+        m_serializationNanos += System.nanoTime() - start;
+        m_toExecute.put(entry);
+        serialized++;
+        if(entry.m_error != null){
+          break;
+        }
+        if(entry.m_batch.writesStatics()){
+          waitForReadBack(serialized);
+        }
+      }
+      Entry end = new Entry();
+      end.m_end = true;
+      m_toExecute.put(end);
+    }
+  }
+
+  private class ExecuteStage implements Runnable {
+
+    public void run(){
+      while(true){
+        Entry entry = m_toExecute.take();
+        if(entry.m_end == false && entry.m_error == null && isFailed() == false){
+          long start = System.nanoTime();
+          try {
+            m_runtime.execute(entry.m_batch);
+          } catch(Throwable ex){
+            entry.m_error = ex;
+          }
+          m_executionNanos += System.nanoTime() - start;
+        }
+        m_toDeserialize.put(entry);
+        if(entry.m_end){
+          return;
+        }
+      }
+    }
+  }
+
+  private class DeserializeStage implements Runnable {
+
+    public void run(){
+      while(true){
+        Entry entry = m_toDeserialize.take();
+        if(entry.m_end){
+          end();
+          return;
+        }
+        List<Kernel> kernels = null;
+        if(entry.m_batch != null){
+          long start = System.nanoTime();
+          try {
+            if(entry.m_error == null && isFailed() == false){
+              kernels = m_runtime.deserialize(entry.m_batch);
+              m_batches++;
+            }
+          } catch(Throwable ex){
+            entry.m_error = ex;
+          } finally {
+            m_runtime.release(entry.m_batch);
+            entry.m_batch = null;
+          }
+          m_deserializationNanos += System.nanoTime() - start;
+        }
+        readBack();
+        if(entry.m_error != null){
+          fail(entry.m_error);
+        } else if(kernels != null){
+          complete(kernels);
+        } else {
+          returnSlot();
+        }
+      }
+    }
+  }
+}
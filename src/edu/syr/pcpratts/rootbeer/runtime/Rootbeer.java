@@ -9,6 +9,7 @@ package edu.syr.pcpratts.rootbeer.runtime;
 
 import edu.syr.pcpratts.rootbeer.configuration.Configuration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -16,6 +17,7 @@ public class Rootbeer implements IRootbeer {
 
   private IRootbeerInternal m_Rootbeer;
   private List<StatsRow> m_stats;
+  private PipelineStats m_pipelineStats;
   private boolean m_ranGpu;
   private ThreadConfig m_threadConfig;
   
@@ -40,15 +42,7 @@ public class Rootbeer implements IRootbeer {
       m_ranGpu = false;
     } else {
       //this must happen above Rootbeer.runAll in case exceptions are thrown
-      m_ranGpu = true;
-      
-      m_stats = new ArrayList<StatsRow>();
-      if(m_threadConfig != null){
-        m_Rootbeer.setThreadConfig(m_threadConfig);
-        m_threadConfig = null;
-      } else {
-        m_Rootbeer.clearThreadConfig();
-      }
+      prepareRun();
       m_Rootbeer.runAll(jobs);
     }
   }
@@ -57,10 +51,94 @@ public class Rootbeer implements IRootbeer {
     return m_ranGpu;  
   }
   
+  /**
+   * Returns the kernels of jobs as they complete. jobs is drained only as 
+   * fast as the results are consumed, so it may be generated lazily.
+   */
   public Iterator<Kernel> run(Iterator<Kernel> jobs) {
+    prepareRun();
     return m_Rootbeer.run(jobs);
   }
   
+  /**
+   * Runs jobs on the thread of the device and returns at once. The future
+   * gives back jobs when every kernel ran. The thread config set before is
+   * used for this run only.
+   */
+  public RootbeerFuture<List<Kernel>> runAllAsync(List<Kernel> jobs) {
+    if(jobs.isEmpty()){
+      m_ranGpu = false;
+      RootbeerFuture<List<Kernel>> ret = new RootbeerFuture<List<Kernel>>();
+      ret.start();
+      ret.complete(jobs);
+      return ret;
+    }
+    prepareRun();
+    return m_Rootbeer.runAsync(jobs.iterator(), jobs.get(0), jobs);
+  }
+  
+  /**
+   * Like runAllAsync, jobs is drained on the device thread
+   */
+  public RootbeerFuture<Void> runAsync(Iterator<Kernel> jobs) {
+    prepareRun();
+    return m_Rootbeer.runAsync(jobs, null, (Void) null);
+  }
+  
+  /**
+   * Runs kernel.gpuMethod(index) on every thread of thread_config. kernel and
+   * everything it references is written to the device once and shared by 
+   * all threads, index is RootbeerGpu.getThreadId().
+   */
+  public void run(IndexedKernel kernel, ThreadConfig thread_config) {
+    if(kernel instanceof CompiledKernel == false){
+      int num_threads = thread_config.getBlockShapeX() * thread_config.getGridShapeX();
+      for(int i = 0; i < num_threads; ++i){
+        kernel.gpuMethod(i);
+      }
+      m_ranGpu = false;
+    } else {
+      prepareRun();
+      m_Rootbeer.runIndexed(kernel, thread_config);
+    }
+  }
+  
+  /**
+   * Keeps o and everything reachable from it on the devices across runs. 
+   * Kernels referencing pinned objects do not write or read them again. 
+   * Pinned objects are inputs: changes made on the host must be reported 
+   * with markDirty and kernels may only read them. Running a kernel that can
+   * store into a field or an element of a pinned object throws an 
+   * IllegalArgumentException.
+   */
+  public void pin(Object o) {
+    PinnedObjects.v().pin(o);
+  }
+  
+  public void unpin(Object o) {
+    PinnedObjects.v().unpin(o);
+  }
+  
+  /**
+   * Writes the pinned object o again before the next run. Objects o now 
+   * references are pinned as well.
+   */
+  public void markDirty(Object o) {
+    PinnedObjects.v().markDirty(o);
+  }
+  
+  private void prepareRun(){
+    m_ranGpu = true;
+    //rows may be added from the threads running the batches
+    m_stats = Collections.synchronizedList(new ArrayList<StatsRow>());
+    if(m_threadConfig != null){
+      m_Rootbeer.setThreadConfig(m_threadConfig);
+      m_threadConfig = null;
+    } else {
+      m_Rootbeer.clearThreadConfig();
+    }
+  }
+  
   public void addStatsRow(StatsRow row) {
     m_stats.add(row);
   }
@@ -68,4 +146,16 @@ public class Rootbeer implements IRootbeer {
   public List<StatsRow> getStats(){
     return m_stats;
   }
+  
+  public void setPipelineStats(PipelineStats stats) {
+    m_pipelineStats = stats;
+  }
+  
+  /**
+   * @return the stage utilization of the last pipelined run, or null if 
+   *   nothing ran pipelined. See Configuration.setPipelineDepth.
+   */
+  public PipelineStats getPipelineStats(){
+    return m_pipelineStats;
+  }
 }
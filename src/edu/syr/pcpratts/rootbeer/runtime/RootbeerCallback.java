@@ -0,0 +1,20 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime;
+
+/**
+ * Told how an asynchronous run ended. Exactly one method is called, on the
+ * device thread or on the thread that added the callback or cancelled the
+ * run.
+ */
+public interface RootbeerCallback<T> {
+
+  public void completed(T result);
+  public void failed(Throwable ex);
+  public void cancelled();
+}
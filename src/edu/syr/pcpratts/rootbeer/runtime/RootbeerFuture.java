@@ -0,0 +1,190 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The handle of an asynchronous run. Cancelling a run that has not started
+ * keeps it from starting. Cancelling a running one stops it from taking more
+ * jobs, the batch already on the device still finishes on the device thread.
+ */
+public class RootbeerFuture<T> implements Future<T> {
+
+  private static final int PENDING = 0;
+  private static final int RUNNING = 1;
+  private static final int COMPLETED = 2;
+  private static final int FAILED = 3;
+  private static final int CANCELLED = 4;
+
+  private int m_state;
+  private T m_result;
+  private Throwable m_error;
+  private List<RootbeerCallback<T>> m_callbacks;
+
+  public RootbeerFuture(){
+    m_state = PENDING;
+    m_callbacks = new ArrayList<RootbeerCallback<T>>();
+  }
+
+  /**
+   * Adds a callback. If the run already ended it is called at once.
+   */
+  public void addCallback(RootbeerCallback<T> callback){
+    synchronized(this){
+      if(isDone() == false){
+        m_callbacks.add(callback);
+        return;
+      }
+    }
+    call(callback);
+  }
+
+  public boolean cancel(boolean may_interrupt_if_running){
+    synchronized(this){
+      if(isDone()){
+        return false;
+      }
+      m_state = CANCELLED;
+      notifyAll();
+    }
+    callAll();
+    return true;
+  }
+
+  public synchronized boolean isCancelled(){
+    return m_state == CANCELLED;
+  }
+
+  public synchronized boolean isDone(){
+    return m_state != PENDING && m_state != RUNNING;
+  }
+
+  public synchronized T get() throws InterruptedException, ExecutionException {
+    while(isDone() == false){
+      wait();
+    }
+    return result();
+  }
+
+  public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException,
+    ExecutionException, TimeoutException {
+
+    long end = System.nanoTime() + unit.toNanos(timeout);
+    while(isDone() == false){
+      long left = end - System.nanoTime();
+      if(left <= 0){
+        throw new TimeoutException();
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, left);
+    }
+    return result();
+  }
+
+  private T result() throws ExecutionException {
+    if(m_state == CANCELLED){
+      throw new CancellationException();
+    }
+    if(m_state == FAILED){
+      throw new ExecutionException(m_error);
+    }
+    return m_result;
+  }
+
+  /**
+   * Called by the device thread before the run starts.
+   * @return false if the run was cancelled and must not start
+   */
+  synchronized boolean start(){
+    if(m_state != PENDING){
+      return false;
+    }
+    m_state = RUNNING;
+    return true;
+  }
+
+  void complete(T result){
+    synchronized(this){
+      if(m_state != RUNNING){
+        return;
+      }
+      m_result = result;
+      m_state = COMPLETED;
+      notifyAll();
+    }
+    callAll();
+  }
+
+  void fail(Throwable ex){
+    synchronized(this){
+      if(m_state != RUNNING){
+        return;
+      }
+      m_error = ex;
+      m_state = FAILED;
+      notifyAll();
+    }
+    callAll();
+  }
+
+  /**
+   * @return jobs that ends early once this run is cancelled
+   */
+  Iterator<Kernel> wrap(final Iterator<Kernel> jobs){
+    return new Iterator<Kernel>(){
+      public boolean hasNext(){
+        return isCancelled() == false && jobs.hasNext();
+      }
+
+      public Kernel next(){
+        return jobs.next();
+      }
+
+      public void remove(){
+        throw new UnsupportedOperationException("Not supported yet.");
+      }
+    };
+  }
+
+  private void callAll(){
+    List<RootbeerCallback<T>> callbacks;
+    synchronized(this){
+      callbacks = m_callbacks;
+      m_callbacks = new ArrayList<RootbeerCallback<T>>();
+    }
+    for(RootbeerCallback<T> callback : callbacks){
+      call(callback);
+    }
+  }
+
+  private void call(RootbeerCallback<T> callback){
+    int state;
+    synchronized(this){
+      state = m_state;
+    }
+    try {
+      if(state == COMPLETED){
+        callback.completed(m_result);
+      } else if(state == FAILED){
+        callback.failed(m_error);
+      } else {
+        callback.cancelled();
+      }
+    } catch(RuntimeException ex){
+      //a failing callback must not stop the device thread
+      ex.printStackTrace();
+    }
+  }
+}
@@ -8,9 +8,13 @@
 package edu.syr.pcpratts.rootbeer.runtime;
 
 import edu.syr.pcpratts.rootbeer.runtime.memory.Memory;
-import java.lang.reflect.Field;
+import edu.syr.pcpratts.rootbeer.runtime.util.ClassIdCache;
+import edu.syr.pcpratts.rootbeer.runtime.util.FieldAccessor;
+import edu.syr.pcpratts.rootbeer.runtime.util.IdentityRefMap;
+import edu.syr.pcpratts.rootbeer.runtime.util.RefObjectMap;
+import edu.syr.pcpratts.rootbeer.runtime.util.RefWorklist;
+import edu.syr.pcpratts.rootbeer.runtime.util.WriteLog;
 import java.util.HashMap;
-import java.util.IdentityHashMap;
 import java.util.Map;
 
 public abstract class Serializer {
@@ -18,27 +22,97 @@ public abstract class Serializer {
   public Memory mMem;
   public Memory mTextureMem;
 
-  private static final Map<Object, Long> mWriteToGpuCache;
-  private static final Map<Long, Object> mReverseWriteToGpuCache;
-  private static final Map<Long, Object> mReadFromGpuCache;
-  private static Map<Long, Integer> m_classRefToTypeNumber;
+  private IdentityRefMap m_WriteCache;
+  private RefObjectMap m_ReverseWriteCache;
+  private RefObjectMap m_ReadCache;
+  private Map<Long, Integer> m_classRefToTypeNumber;
+  private ClassIdCache m_WriteTypeIds;
+  private ClassIdCache m_ReadTypeIds;
+  private RefWorklist m_PendingWrites;
+  private RefWorklist m_PendingReads;
+  private boolean m_Writing;
+  private boolean m_Reading;
+  private long m_BytesWritten;
+  private PinnedSpace m_Pinned;
+  private boolean m_Pinning;
+  private WriteLog m_WriteLog;
+  private boolean m_Logging;
   
   private ReadOnlyAnalyzer m_Analyzer;
   
-  static {
-    mWriteToGpuCache = new IdentityHashMap<Object, Long>();
-    mReverseWriteToGpuCache = new HashMap<Long, Object>();
-    mReadFromGpuCache = new HashMap<Long, Object>();
-    m_classRefToTypeNumber = new HashMap<Long, Integer>();
-  }
-  
   public Serializer(Memory mem, Memory texture_mem){
     mMem = mem;
     mTextureMem = texture_mem;
-    mReadFromGpuCache.clear();
-    mWriteToGpuCache.clear();
-    mReverseWriteToGpuCache.clear();
-    m_classRefToTypeNumber.clear();
+    m_WriteCache = new IdentityRefMap();
+    m_ReverseWriteCache = new RefObjectMap();
+    m_ReadCache = new RefObjectMap();
+    m_classRefToTypeNumber = new HashMap<Long, Integer>();
+    m_WriteTypeIds = new ClassIdCache();
+    m_ReadTypeIds = new ClassIdCache();
+    m_PendingWrites = new RefWorklist();
+    m_PendingReads = new RefWorklist();
+    m_WriteLog = new WriteLog();
+  }
+  
+  /**
+   * Makes this serializer use the caches of session so several serializers
+   * can write one object graph to a shared to-space.
+   */
+  public void shareCaches(Serializer session){
+    m_WriteCache = session.m_WriteCache;
+    m_ReverseWriteCache = session.m_ReverseWriteCache;
+    m_ReadCache = session.m_ReadCache;
+    m_classRefToTypeNumber = session.m_classRefToTypeNumber;
+    m_Pinned = session.m_Pinned;
+  }
+  
+  /**
+   * Objects pinned in pinned are referenced by their pinned ref instead of
+   * being written, and are not read back.
+   */
+  public void setPinnedSpace(PinnedSpace pinned){
+    m_Pinned = pinned;
+  }
+  
+  /**
+   * Writes o and every object first reached from it into the pinned space
+   */
+  void writePinned(Object o){
+    m_Pinning = true;
+    try {
+      writeToHeap(o);
+    } finally {
+      m_Pinning = false;
+    }
+  }
+  
+  /**
+   * Writes the pinned o again at its ref, objects it now references are 
+   * pinned as well
+   */
+  void rewritePinned(Object o, long ref){
+    m_Pinning = true;
+    try {
+      m_BytesWritten += (doGetSize(o) + 15) & ~15L;
+      m_PendingWrites.add(o, ref, true);
+      drainWrites(false);
+    } finally {
+      m_Pinning = false;
+    }
+  }
+  
+  /**
+   * Starts logging the writes of this serializer into a cleared log, see
+   * WriteLog
+   */
+  public WriteLog startWriteLog(){
+    m_WriteLog.clear();
+    m_Logging = true;
+    return m_WriteLog;
+  }
+  
+  public void stopWriteLog(){
+    m_Logging = false;
   }
   
   public void setAnalyzer(ReadOnlyAnalyzer analyzer){
@@ -53,15 +127,6 @@ public abstract class Serializer {
     return writeToHeap(o, true);
   }
   
-  private static class WriteCacheResult {
-    public long m_Ref;
-    public boolean m_NeedToWrite;
-    public WriteCacheResult(long ref, boolean need_to_write){
-      m_Ref = ref;
-      m_NeedToWrite = need_to_write;
-    }
-  }
-  
   public void addClassRef(long ref, int class_number){
     m_classRefToTypeNumber.put(ref, class_number);
   }
@@ -81,229 +146,225 @@ public abstract class Serializer {
     return ret;
   }
   
-  private static synchronized WriteCacheResult checkWriteCache(Object o, int size, boolean read_only, Memory mem){
-    if(mWriteToGpuCache.containsKey(o)){
-      long ref = mWriteToGpuCache.get(o);
-      return new WriteCacheResult(ref, false);
-    }
-    long ref = mem.mallocWithSize(size);
-    mWriteToGpuCache.put(o, ref);
-    mReverseWriteToGpuCache.put(ref, o);
-    return new WriteCacheResult(ref, true);
+  /**
+   * Used by the generated doWriteToHeap to switch on the type of o. Returns
+   * -1 until setWriteTypeId was called for the class of o and 0 when no
+   * generated body handles the class.
+   */
+  public int getWriteTypeId(Object o){
+    return m_WriteTypeIds.get(o.getClass());
+  }
+  
+  public void setWriteTypeId(Object o, int id){
+    m_WriteTypeIds.put(o.getClass(), id);
+  }
+  
+  /**
+   * Used by the generated doReadFromHeap, see getWriteTypeId.
+   */
+  public int getReadTypeId(Object o){
+    return m_ReadTypeIds.get(o.getClass());
+  }
+  
+  public void setReadTypeId(Object o, int id){
+    m_ReadTypeIds.put(o.getClass(), id);
+  }
+  
+  /**
+   * @return the to-space bytes allocated by this serializer so far
+   */
+  public long getBytesWritten(){
+    return m_BytesWritten;
   }
   
   public Object writeCacheFetch(long ref){
-    synchronized(mWriteToGpuCache){
-      if(mReverseWriteToGpuCache.containsKey(ref)){
-        return mReverseWriteToGpuCache.get(ref);
-      }
-      return null;
-    }
+    return m_ReverseWriteCache.get(ref);
   }
   
   public long writeToHeap(Object o, boolean write_data){
     if(o == null)
       return -1;    
+    if(m_Pinned != null){
+      long pinned = m_Pinned.getRef(o);
+      if(pinned != -1)
+        return pinned;
+    }
     int size = doGetSize(o);
     boolean read_only = false;
-    WriteCacheResult result;
-    result = checkWriteCache(o, size, read_only, mMem);
-    if(result.m_NeedToWrite == false)
-      return result.m_Ref;
-    doWriteToHeap(o, write_data, result.m_Ref, read_only);
-    return result.m_Ref;
+    long result = m_WriteCache.getOrAllocate(o, size, mMem);
+    if((result & IdentityRefMap.NEW_REF) == 0){
+      if(m_Logging){
+        m_WriteLog.reached(result);
+      }
+      return result;
+    }
+    long ref = result & ~IdentityRefMap.NEW_REF;
+    m_BytesWritten += (size + 15) & ~15L;
+    if(m_Logging){
+      m_WriteLog.allocated(ref, (size + 15) & ~15L);
+    }
+    m_ReverseWriteCache.put(ref, o);
+    if(m_Pinning){
+      m_Pinned.add(o, ref);
+    }
+    m_PendingWrites.add(o, ref, write_data);
+    if(m_Writing == false){
+      drainWrites(read_only);
+    }
+    return ref;
   }
   
-  protected Object checkCache(long address, Object item){
-    synchronized(mReadFromGpuCache){
-      if(mReadFromGpuCache.containsKey(address)){
-        return mReadFromGpuCache.get(address);
-      } else {
-        mReadFromGpuCache.put(address, item);
-        return item;
+  /**
+   * Objects reached while writing only get their slot allocated. Their
+   * fields are written here in allocation order, so the java stack stays
+   * flat for long linked structures and the to-space is filled front to back.
+   */
+  private void drainWrites(boolean read_only){
+    m_Writing = true;
+    try {
+      while(m_PendingWrites.isEmpty() == false){
+        Object o = m_PendingWrites.peekObject();
+        long ref = m_PendingWrites.peekRef();
+        boolean write_data = m_PendingWrites.peekFlag();
+        m_PendingWrites.remove();
+        mMem.setAddress(ref);
+        doWriteToHeap(o, write_data, ref, read_only);
       }
+    } finally {
+      m_PendingWrites.clear();
+      m_Writing = false;
     }
   }
+  
+  protected Object checkCache(long address, Object item){
+    return m_ReadCache.putIfAbsent(address, item);
+  }
 
   public Object readFromHeap(Object o, boolean read_data, long address){
-    synchronized(mReadFromGpuCache){
-      if(mReadFromGpuCache.containsKey(address)){
-        Object ret = mReadFromGpuCache.get(address);  
-        return ret;
-      }
+    Object cached = m_ReadCache.get(address);
+    if(cached != null){
+      return cached;
+    }
+    if(m_Pinned != null){
+      Object pinned = m_Pinned.getObject(address);
+      if(pinned != null)
+        return pinned;
     }
     long null_ptr_check = address >> 4;
     if(null_ptr_check == -1){
       return null;
     }
-    Object ret = doReadFromHeap(o, read_data, address);
-    return checkCache(address, ret);
+    if(m_Reading){
+      if(canDeferRead(o, address)){
+        Object ret = checkCache(address, o);
+        if(ret == o){
+          m_PendingReads.add(o, address, read_data);
+        }
+        return ret;
+      }
+      Object ret = doReadFromHeap(o, read_data, address);
+      return checkCache(address, ret);
+    }
+    
+    m_Reading = true;
+    try {
+      Object ret = doReadFromHeap(o, read_data, address);
+      ret = checkCache(address, ret);
+      while(m_PendingReads.isEmpty() == false){
+        Object curr = m_PendingReads.peekObject();
+        long curr_address = m_PendingReads.peekRef();
+        boolean curr_read_data = m_PendingReads.peekFlag();
+        m_PendingReads.remove();
+        doReadFromHeap(curr, curr_read_data, curr_address);
+      }
+      return ret;
+    } finally {
+      m_PendingReads.clear();
+      m_Reading = false;
+    }
+  }
+  
+  /**
+   * A nested read can be deferred when it is known to fill o in place. That
+   * is the case for non-array objects of a class with a generated body that
+   * were not constructed on the gpu.
+   */
+  private boolean canDeferRead(Object o, long address){
+    if(o == null || o.getClass().isArray()){
+      return false;
+    }
+    if(m_ReadTypeIds.get(o.getClass()) <= 0){
+      return false;
+    }
+    mMem.setAddress(address);
+    mMem.incrementAddress(3);
+    byte ctor_used = mMem.readByte();
+    return ctor_used == 0;
   }
 
   public void readStaticsFromHeap(){
     doReadStaticsFromHeap();
   }
  
+  private FieldAccessor getAccessor(Class<?> cls, String name){
+    FieldAccessor ret = FieldAccessor.get(cls, name);
+    if(ret == null){
+      throw new RuntimeException("cannot find field: "+cls.getName()+"."+name);
+    }
+    return ret;
+  }
+  
   public Object readField(Object base, String name){
-    Class cls = base.getClass();
-    while(true){
-      try {
-        Field f = cls.getDeclaredField(name);
-        f.setAccessible(true);
-        Object ret = f.get(base);      
-        return ret;
-      } catch(Exception ex){
-        cls = cls.getSuperclass();
-        //java.lang.Throwable.backtrace cannot be found this way, I don't know why.
-        if(cls == null){
-          return null;
-        }
-      }
+    //java.lang.Throwable.backtrace cannot be found, it reads as null.
+    FieldAccessor accessor = FieldAccessor.get(base.getClass(), name);
+    if(accessor == null){
+      return null;
     }
+    return accessor.get(base);
   }
 
   public Object readStaticField(Class cls, String name){
-    while(true){
-      try {
-        Field f = cls.getDeclaredField(name);
-        f.setAccessible(true);
-        Object ret = f.get(null);     
-        return ret;
-      } catch(Exception ex){
-        cls = cls.getSuperclass();
-      }
-    }
+    return getAccessor(cls, name).get(null);
   }
 
   public void writeField(Object base, String name, Object value){
-    Class cls = base.getClass();
-    while(true){
-      try {
-        Field f = cls.getDeclaredField(name);
-        f.setAccessible(true);
-        f.set(base, value);  
-        return;
-      } catch(Exception ex){
-        cls = cls.getSuperclass();
-      }
-    }
+    getAccessor(base.getClass(), name).set(base, value);
   }
   
   public void writeStaticField(Class cls, String name, Object value){
-    while(true){
-      try {
-        Field f = cls.getDeclaredField(name);
-        f.setAccessible(true);
-        f.set(null, value);  
-        return;
-      } catch(Exception ex){
-        cls = cls.getSuperclass();
-      } 
-    }
+    getAccessor(cls, name).set(null, value);
   }
   
   public void writeStaticByteField(Class cls, String name, byte value){
-    while(true){
-      try {
-        Field f = cls.getDeclaredField(name);
-        f.setAccessible(true);
-        f.setByte(null, value);  
-        return;
-      } catch(Exception ex){
-        cls = cls.getSuperclass();
-      }
-    }
+    getAccessor(cls, name).setByte(null, value);
   }
   
   public void writeStaticBooleanField(Class cls, String name, boolean value){
-    while(true){
-      try {
-        Field f = cls.getDeclaredField(name);
-        f.setAccessible(true);
-        f.setBoolean(null, value);  
-        return;
-      } catch(Exception ex){
-        cls = cls.getSuperclass();
-      }
-    }
+    getAccessor(cls, name).setBoolean(null, value);
   }
   
   public void writeStaticCharField(Class cls, String name, char value){
-    while(true){
-      try {
-        Field f = cls.getDeclaredField(name);
-        f.setAccessible(true);
-        f.setChar(null, value);  
-        return;
-      } catch(Exception ex){
-        cls = cls.getSuperclass();
-      }
-    }
+    getAccessor(cls, name).setChar(null, value);
   }
   
   public void writeStaticShortField(Class cls, String name, short value){
-    while(true){
-      try {
-        Field f = cls.getDeclaredField(name);
-        f.setAccessible(true);
-        f.setShort(null, value);  
-        return;
-      } catch(Exception ex){
-        cls = cls.getSuperclass();
-      }
-    }
+    getAccessor(cls, name).setShort(null, value);
   }
   
   public void writeStaticIntField(Class cls, String name, int value){
-    while(true){
-      try {
-        Field f = cls.getDeclaredField(name);
-        f.setAccessible(true);
-        f.setInt(null, value);  
-        return;
-      } catch(Exception ex){
-        cls = cls.getSuperclass();
-      }
-    }
+    getAccessor(cls, name).setInt(null, value);
   }
   
   public void writeStaticLongField(Class cls, String name, long value){
-    while(true){
-      try {
-        Field f = cls.getDeclaredField(name);
-        f.setAccessible(true);
-        f.setLong(null, value);  
-        return;
-      } catch(Exception ex){
-        cls = cls.getSuperclass();
-      }
-    }
+    getAccessor(cls, name).setLong(null, value);
   }
   
   public void writeStaticFloatField(Class cls, String name, float value){
-    while(true){
-      try {
-        Field f = cls.getDeclaredField(name);
-        f.setAccessible(true);
-        f.setFloat(null, value);  
-        return;
-      } catch(Exception ex){
-        cls = cls.getSuperclass();
-      }
-    }
+    getAccessor(cls, name).setFloat(null, value);
   }
   
   public void writeStaticDoubleField(Class cls, String name, double value){
-    while(true){
-      try {
-        Field f = cls.getDeclaredField(name);
-        f.setAccessible(true);
-        f.setDouble(null, value);  
-        return;
-      } catch(Exception ex){
-        cls = cls.getSuperclass();
-      }
-    }
+    getAccessor(cls, name).setDouble(null, value);
   }
   
   public abstract void doWriteToHeap(Object o, boolean write_data, long ref, boolean read_only);
@@ -0,0 +1,34 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A ParallelRuntime whose run is split into serialize, execute and
+ * deserialize stages so batches can be pipelined. Every stage is called from
+ * one thread at a time, but different stages run at the same time on
+ * different batches.
+ */
+public interface StagedRuntime extends ParallelRuntime {
+
+  /**
+   * Writes a prefix of jobs into a free buffer. jobs has at least one item.
+   * The jobs that were not written are in PipelineBatch.getRemainingJobs().
+   */
+  public PipelineBatch serialize(Iterator<Kernel> jobs, ThreadConfig thread_config);
+  public void execute(PipelineBatch batch);
+  public List<Kernel> deserialize(PipelineBatch batch);
+  
+  /**
+   * Gives the buffer of batch back. Called once for every serialized batch, 
+   * also when a later stage failed.
+   */
+  public void release(PipelineBatch batch);
+}
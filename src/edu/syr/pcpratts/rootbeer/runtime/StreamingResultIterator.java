@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime;
+
+import edu.syr.pcpratts.rootbeer.runtime2.cuda.BlockingQueue;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Returns kernels batch by batch as background threads complete them. A
+ * batch needs a slot from the time it is started until the caller takes it,
+ * so at most depth batches are in memory no matter how many jobs there are.
+ */
+public abstract class StreamingResultIterator implements Iterator<Kernel> {
+
+  private final int m_depth;
+  private final BlockingQueue<Object> m_slots;
+  private final BlockingQueue<Completed> m_done;
+  private volatile boolean m_failed;
+
+  private Iterator<Kernel> m_currIter;
+  private boolean m_finished;
+
+  protected StreamingResultIterator(int depth){
+    m_depth = depth;
+    m_slots = new BlockingQueue<Object>();
+    for(int i = 0; i < depth; ++i){
+      m_slots.put(new Object());
+    }
+    m_done = new BlockingQueue<Completed>();
+    m_currIter = null;
+    m_finished = false;
+  }
+
+  protected int getDepth(){
+    return m_depth;
+  }
+
+  protected void startThread(Runnable stage, String name){
+    Thread thread = new Thread(stage, "rootbeer "+name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Blocks until a batch may be started
+   */
+  protected void takeSlot(){
+    m_slots.take();
+  }
+
+  protected void returnSlot(){
+    m_slots.put(new Object());
+  }
+
+  protected boolean isFailed(){
+    return m_failed;
+  }
+
+  /**
+   * Stops the producers. Extra slots are added so none stays blocked in
+   * takeSlot.
+   */
+  protected void setFailed(){
+    m_failed = true;
+    for(int i = 0; i < m_depth; ++i){
+      returnSlot();
+    }
+  }
+
+  /**
+   * Hands a batch to the caller. Its slot is returned when the caller takes
+   * it.
+   */
+  protected void complete(List<Kernel> kernels){
+    m_done.put(new Completed(kernels, null));
+  }
+
+  /**
+   * Hands ex to the caller in place of a batch, it is thrown from hasNext.
+   */
+  protected void fail(Throwable ex){
+    if(m_failed == false){
+      setFailed();
+    }
+    m_done.put(new Completed(null, ex));
+  }
+
+  /**
+   * Called by the last producer after the last batch
+   */
+  protected void end(){
+    m_done.put(new Completed(null, null));
+  }
+
+  /**
+   * Called once when the last batch was taken or a batch failed
+   */
+  protected abstract void finish();
+
+  public boolean hasNext() {
+    while(m_currIter == null || m_currIter.hasNext() == false){
+      if(m_finished){
+        return false;
+      }
+      Completed completed = m_done.take();
+      if(completed.m_kernels == null && completed.m_error == null){
+        m_finished = true;
+        finish();
+        return false;
+      }
+      returnSlot();
+      if(completed.m_error != null){
+        m_finished = true;
+        if(m_failed == false){
+          setFailed();
+        }
+        finish();
+        rethrow(completed.m_error);
+      }
+      m_currIter = completed.m_kernels.iterator();
+    }
+    return true;
+  }
+
+  public Kernel next() {
+    if(hasNext() == false){
+      throw new RuntimeException("out of items");
+    }
+    return m_currIter.next();
+  }
+
+  public void remove() {
+    throw new UnsupportedOperationException("Not supported yet.");
+  }
+
+  private void rethrow(Throwable ex){
+    if(ex instanceof RuntimeException){
+      throw (RuntimeException) ex;
+    }
+    if(ex instanceof Error){
+      throw (Error) ex;
+    }
+    throw new RuntimeException(ex);
+  }
+
+  private class Completed {
+    private List<Kernel> m_kernels;
+    private Throwable m_error;
+
+    public Completed(List<Kernel> kernels, Throwable error){
+      m_kernels = kernels;
+      m_error = error;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime.cpu;
+
+import edu.syr.pcpratts.rootbeer.runtime.IndexedKernel;
+import edu.syr.pcpratts.rootbeer.runtime.Kernel;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A batch of kernels shared by the cpu cores. Each core claims chunks of
+ * consecutive kernels with one atomic add until the batch is exhausted.
+ * An indexed batch runs one IndexedKernel for every index below its size.
+ */
+class CpuBatch {
+
+  private final List<Kernel> m_Items;
+  private final IndexedKernel m_Indexed;
+  private final int m_Size;
+  private final int m_ChunkSize;
+  private final AtomicInteger m_Next;
+  private final AtomicInteger m_Done;
+  private volatile Throwable m_Error;
+
+  public CpuBatch(List<Kernel> items, int chunk_size){
+    m_Items = items;
+    m_Indexed = null;
+    m_Size = items.size();
+    m_ChunkSize = chunk_size;
+    m_Next = new AtomicInteger(0);
+    m_Done = new AtomicInteger(0);
+  }
+
+  public CpuBatch(IndexedKernel kernel, int size, int chunk_size){
+    m_Items = null;
+    m_Indexed = kernel;
+    m_Size = size;
+    m_ChunkSize = chunk_size;
+    m_Next = new AtomicInteger(0);
+    m_Done = new AtomicInteger(0);
+  }
+
+  /**
+   * Runs chunks until none are left.
+   */
+  public void work(){
+    int size = m_Size;
+    while(true){
+      int start = m_Next.getAndAdd(m_ChunkSize);
+      if(start >= size){
+        return;
+      }
+      int end = Math.min(start + m_ChunkSize, size);
+      for(int i = start; i < end; ++i){
+        try {
+          if(m_Indexed == null){
+            m_Items.get(i).gpuMethod();
+          } else {
+            m_Indexed.gpuMethod(i);
+          }
+        } catch(Throwable ex){
+          m_Error = ex;
+        }
+      }
+      if(m_Done.addAndGet(end - start) == size){
+        synchronized(this){
+          notifyAll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Waits until every kernel of the batch has run.
+   */
+  public void await(){
+    int size = m_Size;
+    synchronized(this){
+      while(m_Done.get() != size){
+        try {
+          wait();
+        } catch(InterruptedException ex){
+          //continue
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the last exception thrown by a kernel, or null
+   */
+  public Throwable getError(){
+    return m_Error;
+  }
+}
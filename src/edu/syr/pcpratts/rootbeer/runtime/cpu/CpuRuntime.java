@@ -1,23 +1,36 @@
-/* 
+/*
  * Copyright 2012 Phil Pratt-Szeliga and other contributors
  * http://chirrup.org/
- * 
+ *
  * See the file LICENSE for copying permission.
  */
 
 package edu.syr.pcpratts.rootbeer.runtime.cpu;
 
 import edu.syr.pcpratts.rootbeer.runtime.*;
+import edu.syr.pcpratts.rootbeer.runtime2.cuda.BlockingQueue;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+/**
+ * Runs kernels in java on all cores. Each call to run takes at most one
+ * batch from the iterator, so lazy iterators are only drained as fast as
+ * the results are consumed. The batch size adapts so one batch takes
+ * roughly m_TargetNanos.
+ */
 public class CpuRuntime implements ParallelRuntime {
 
   private static CpuRuntime mInstance = null;
   private List<CpuCore> m_Cores;
+  private BlockingQueue<CpuBatch> m_Batches;
+  private int m_BatchSize;
+  private final int m_MinBatchSize;
+
+  private static final int m_MaxBatchSize = 64*1024;
+  private static final long m_TargetNanos = 20*1000*1000L;
 
-  public static CpuRuntime v(){
+  public static synchronized CpuRuntime v(){
     if(mInstance == null)
       mInstance = new CpuRuntime();
     return mInstance;
@@ -25,30 +38,80 @@ public class CpuRuntime implements ParallelRuntime {
 
   private CpuRuntime(){
     m_Cores = new ArrayList<CpuCore>();
+    m_Batches = new BlockingQueue<CpuBatch>();
     int num_cores = Runtime.getRuntime().availableProcessors();
-    for(int i = 0; i < num_cores; ++i){
-      m_Cores.add(new CpuCore());
+    //the calling thread is the last core
+    for(int i = 0; i < num_cores - 1; ++i){
+      m_Cores.add(new CpuCore(m_Batches));
     }
+    m_MinBatchSize = num_cores;
+    m_BatchSize = num_cores * 16;
   }
 
-  public PartiallyCompletedParallelJob run(Iterator<Kernel> jobs, Rootbeer rootbeer, ThreadConfig thread_config) throws Exception {
+  public synchronized PartiallyCompletedParallelJob run(Iterator<Kernel> jobs, Rootbeer rootbeer, ThreadConfig thread_config) throws Exception {
     PartiallyCompletedParallelJob ret = new PartiallyCompletedParallelJob(jobs);
-    int enqueued = 0;
-    for(int i = 0; i < m_Cores.size(); ++i){
-      if(jobs.hasNext()){
-        Kernel job = jobs.next();
-        m_Cores.get(i).enqueue(job);
-        enqueued++;
-      }
+    List<Kernel> items = new ArrayList<Kernel>();
+    while(items.size() < m_BatchSize && jobs.hasNext()){
+      items.add(jobs.next());
     }
-
-    for(int i = 0; i < enqueued; ++i){
-      Kernel curr = m_Cores.get(i).getResult();
-      ret.enqueueJob(curr);
+    if(items.isEmpty()){
+      return ret;
     }
+
+    long start = System.nanoTime();
+    runBatch(new CpuBatch(items, chunkSize(items.size())), items.size());
+    adaptBatchSize(items.size(), System.nanoTime() - start);
+
+    ret.enqueueJobs(items);
     return ret;
   }
 
+  /**
+   * Runs kernel.gpuMethod(index) for every index below num_threads on all
+   * cores.
+   */
+  public synchronized void runIndexed(IndexedKernel kernel, int num_threads){
+    if(num_threads <= 0){
+      return;
+    }
+    runBatch(new CpuBatch(kernel, num_threads, chunkSize(num_threads)), num_threads);
+  }
+
+  private int chunkSize(int size){
+    int num_cores = m_Cores.size() + 1;
+    return Math.max(1, size / (num_cores * 8));
+  }
+
+  private void runBatch(CpuBatch batch, int size){
+    int chunk_size = chunkSize(size);
+    int helpers = Math.min(m_Cores.size(), (size + chunk_size - 1) / chunk_size - 1);
+    for(int i = 0; i < helpers; ++i){
+      m_Batches.put(batch);
+    }
+    batch.work();
+    batch.await();
+
+    Throwable error = batch.getError();
+    if(error instanceof RuntimeException){
+      throw (RuntimeException) error;
+    } else if(error instanceof Error){
+      throw (Error) error;
+    } else if(error != null){
+      throw new RuntimeException(error);
+    }
+  }
+
+  private void adaptBatchSize(int count, long nanos){
+    if(count < m_BatchSize){
+      return;
+    }
+    if(nanos < m_TargetNanos / 2 && m_BatchSize < m_MaxBatchSize){
+      m_BatchSize *= 2;
+    } else if(nanos > m_TargetNanos * 4 && m_BatchSize > m_MinBatchSize){
+      m_BatchSize = Math.max(m_MinBatchSize, m_BatchSize / 2);
+    }
+  }
+
   public boolean isGpuPresent() {
     return true;
   }
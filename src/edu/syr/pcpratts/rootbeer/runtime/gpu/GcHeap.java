@@ -13,25 +13,36 @@ import edu.syr.pcpratts.rootbeer.runtime.Serializer;
 import edu.syr.pcpratts.rootbeer.runtime.PartiallyCompletedParallelJob;
 import edu.syr.pcpratts.rootbeer.runtime.Kernel;
 import edu.syr.pcpratts.rootbeer.runtime.CompiledKernel;
+import edu.syr.pcpratts.rootbeer.runtime.PinnedObjects;
+import edu.syr.pcpratts.rootbeer.runtime.PinnedSpace;
 import edu.syr.pcpratts.rootbeer.runtime.memory.Memory;
 import edu.syr.pcpratts.rootbeer.runtime.memory.BufferPrinter;
+import edu.syr.pcpratts.rootbeer.runtime.memory.RegionAllocator;
 import edu.syr.pcpratts.rootbeer.runtime.util.Stopwatch;
+import edu.syr.pcpratts.rootbeer.runtime2.cuda.KernelSizeEstimate;
+import edu.syr.pcpratts.rootbeer.runtime2.cuda.ToSpaceReader;
+import edu.syr.pcpratts.rootbeer.runtime2.cuda.ToSpaceWriter;
+import edu.syr.pcpratts.rootbeer.runtime2.cuda.ToSpaceWriterResult;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class GcHeap {
   private List<CompiledKernel> mBlocks;
 
   protected final int mGcInfoSpaceSize = 64;
+  //the exception summary the kernel keeps in the gc info, see BothNativeKernel.c
+  private static final int EXCEPTION_COUNT_OFFSET = 24;
+  private static final int FIRST_EXCEPTION_OFFSET = 32;
+  //the kernel collects the space it allocated before it reaches this end
+  private static final int TO_SPACE_END_OFFSET = 40;
   private GpuDevice mDevice;
 
-  private long m_PreviousRef;
-  private long m_PreviousSize;
-
   protected long mBufferSize;
+  protected long mToSpaceSize;
   protected Memory mToSpaceMemory;
   protected Memory mTextureMemory;
   protected Memory mHandlesMemory;
@@ -45,11 +56,26 @@ public abstract class GcHeap {
   private int m_CountWritten;
   private List<Long> m_HandlesList;
 
+  private List<Memory> m_ToSpaceViews;
+  private List<Memory> m_TextureViews;
+  private List<Serializer> m_Serializers;
+  private AtomicLong m_ToSpaceFreePointer;
+  private AtomicLong m_TextureFreePointer;
+
   private long mMaxToHandleMapAddress;
+  private boolean m_ToSpaceExhausted;
+  private KernelSizeEstimate m_SizeEstimate;
+  private PinnedSpace m_Pinned;
+  //per heap so heaps used at the same time never take each other's results
+  private List<ToSpaceWriter> m_Writers;
+  private List<ToSpaceReader> m_Readers;
 
   private PartiallyCompletedParallelJob mWriteRet;
 
   private static Map<GpuDevice, GcHeap> mInstances = new HashMap<GpuDevice, GcHeap>();
+  
+  //kernels handed to the serializer threads per round
+  private static final int m_JobsPerThread = 512;
 
   public static GcHeap v(GpuDevice device){
     if(mInstances.containsKey(device)){
@@ -62,10 +88,15 @@ public abstract class GcHeap {
     return ret;
   }
   
-  private void reset(){
-    mBlocks.clear();
-    m_PreviousRef = 0;
-    m_PreviousSize = 0;
+  /**
+   * Makes the heap ready for another run without touching the memory. The
+   * serializers and their caches are dropped so finished kernels can be
+   * collected.
+   */
+  public void reset(){
+    mBlocks = null;
+    m_HandlesList.clear();
+    m_Serializers.clear();
 
     mToSpaceMemory.setAddress(0);
     mToSpaceMemory.clearHeapEndPtr();
@@ -78,6 +109,7 @@ public abstract class GcHeap {
     mGcObjectVisitor = null;
     mUsingGarbageCollector = false;
     m_CountWritten = 0;
+    m_ToSpaceExhausted = false;
 
     mMaxToHandleMapAddress = 0;
 
@@ -87,11 +119,63 @@ public abstract class GcHeap {
   protected GcHeap(GpuDevice device){
     mDevice = device;
     m_HandlesList = new ArrayList<Long>();
+    m_Serializers = new ArrayList<Serializer>();
+    m_SizeEstimate = new KernelSizeEstimate();
+    m_Pinned = PinnedObjects.v().createSpace();
+    m_Writers = new ArrayList<ToSpaceWriter>();
+    m_Readers = new ArrayList<ToSpaceReader>();
+  }
+  
+  private void createViews(){
+    if(m_ToSpaceViews != null){
+      return;
+    }
+    int num_threads = Configuration.getSerializerThreads();
+    m_ToSpaceViews = new ArrayList<Memory>();
+    m_TextureViews = new ArrayList<Memory>();
+    m_ToSpaceFreePointer = new AtomicLong(0);
+    m_TextureFreePointer = new AtomicLong(0);
+    for(int i = 0; i < num_threads; ++i){
+      Memory to_space;
+      Memory texture;
+      if(i == 0){
+        to_space = mToSpaceMemory;
+        texture = mTextureMemory;
+      } else {
+        to_space = createView(mToSpaceMemory);
+        texture = createView(mTextureMemory);
+      }
+      to_space.setRegionAllocator(new RegionAllocator(m_ToSpaceFreePointer, 
+        RegionAllocator.DEFAULT_REGION_SIZE, mToSpaceSize));
+      texture.setRegionAllocator(new RegionAllocator(m_TextureFreePointer, 
+        RegionAllocator.DEFAULT_REGION_SIZE, mBufferSize));
+      m_ToSpaceViews.add(to_space);
+      m_TextureViews.add(texture);
+    }
+    while(m_Writers.size() < num_threads){
+      m_Writers.add(new ToSpaceWriter());
+      m_Readers.add(new ToSpaceReader());
+    }
+  }
+  
+  /**
+   * Called when mToSpaceMemory or mTextureMemory were replaced so the views
+   * are created again on the next write.
+   */
+  protected void discardViews(){
+    m_ToSpaceViews = null;
+    m_TextureViews = null;
+    m_Pinned.discard();
+  }
+  
+  /**
+   * @return true if the last write stopped because the to-space was full
+   */
+  public boolean toSpaceExhausted(){
+    return m_ToSpaceExhausted;
   }
   
-  private void writeOneRuntimeBasicBlock(CompiledKernel block){
-    mBlocks.add(block);
-    long ref = mGcObjectVisitor.writeToHeap(block, true);
+  private void writeOneHandle(long ref){
     mHandlesMemory.writeLong(ref);
     m_HandlesList.add(ref);
     if(mUsingGarbageCollector){
@@ -101,38 +185,182 @@ public abstract class GcHeap {
         mMaxToHandleMapAddress = to_handle_map_memory_address;
       mToHandleMapMemory.writeLong(ref);
     }
-    long prev_size = ref - m_PreviousRef;
-    if(prev_size > m_PreviousSize){
-      m_PreviousSize = prev_size;
+  }
+  
+  /**
+   * Serializes jobs on all serializer threads and appends the handles in job
+   * order. Once a thread runs out of memory every later job is treated as not
+   * written so the kernels that run are a prefix of jobs. The prefix also
+   * ends before the first kernel that may reach an object the failing thread
+   * never filled in.
+   * @return the jobs that were not written
+   */
+  private List<Kernel> writeBatch(List<Kernel> jobs){
+    int num_threads = m_Serializers.size();
+    int num_jobs = jobs.size();
+    for(int i = 0; i < num_threads; ++i){
+      List<Kernel> items = jobs.subList(i*num_jobs/num_threads, (i+1)*num_jobs/num_threads);
+      m_Writers.get(i).write(items, m_Serializers.get(i));
+    }
+    
+    //every writer is joined before an error is thrown so no result is left
+    //in a queue for the next batch
+    List<ToSpaceWriterResult> results = new ArrayList<ToSpaceWriterResult>();
+    for(int i = 0; i < num_threads; ++i){
+      results.add(m_Writers.get(i).join());
+    }
+    for(ToSpaceWriterResult result : results){
+      result.rethrowError();
+    }
+    
+    int[] complete = ToSpaceWriterResult.countComplete(results);
+    List<Kernel> not_written = new ArrayList<Kernel>();
+    for(int i = 0; i < num_threads; ++i){
+      ToSpaceWriterResult result = results.get(i);
+      List<Kernel> items = result.getItems();
+      int count = 0;
+      if(not_written.isEmpty()){
+        count = complete[i];
+        long[] handles = result.getHandles();
+        for(int j = 0; j < count; ++j){
+          Kernel item = items.get(j);
+          mBlocks.add((CompiledKernel) item);
+          mWriteRet.enqueueJob(item);
+          writeOneHandle(handles[j]);
+        }
+        m_CountWritten += count;
+      }
+      not_written.addAll(items.subList(count, items.size()));
+      not_written.addAll(result.getNotWrittenItems());
     }
-    m_PreviousRef = ref; 
+    return not_written;
   }
   
-  private CompiledKernel getBlock(Iterator<Kernel> jobs){
-    Kernel job = jobs.next();
-    mWriteRet.enqueueJob(job);
-    return (CompiledKernel) job;
+  private long bytesWritten(){
+    long ret = 0;
+    for(Serializer serializer : m_Serializers){
+      ret += serializer.getBytesWritten();
+    }
+    return ret;
+  }
+  
+  /**
+   * @return how many more kernels the size estimate lets into the to-space.
+   *   Before anything was measured one kernel per serializer thread is
+   *   written to take the first measurement.
+   */
+  private int fitInToSpace(){
+    //every thread may hold a partly used region
+    long slack = m_Serializers.size() * RegionAllocator.DEFAULT_REGION_SIZE;
+    long free = mToSpaceSize - m_ToSpaceFreePointer.get() - slack;
+    int ret = m_SizeEstimate.fit(free);
+    if(ret == -1){
+      return m_Serializers.size();
+    }
+    return ret;
+  }
+  
+  private boolean roomForMore(int count) {
+    if(((m_CountWritten + count) * 8) + 8 >= mBufferSize)
+      return false;
+    if(m_CountWritten + count + 1 > mDevice.getNumBlocks())
+      return false;
+    return true;
   }
 
   public int writeRuntimeBasicBlocks(Iterator<Kernel> jobs){
     Stopwatch watch = new Stopwatch();
     watch.start();
     
-    mBlocks = new ArrayList<CompiledKernel>();
-    m_HandlesList.clear();
-    
     mWriteRet = new PartiallyCompletedParallelJob(jobs);
 
-    CompiledKernel first_block = getBlock(jobs);
+    Kernel first_job = jobs.next();
+    startWrite((CompiledKernel) first_job);
 
+    m_SizeEstimate.startRun(first_job.getClass());
+    int batch_size = m_Serializers.size() * m_JobsPerThread;
+    List<Kernel> batch = new ArrayList<Kernel>();
+    batch.add(first_job);
+    while(true){
+      int limit = Math.min(batch_size, fitInToSpace());
+      while(jobs.hasNext() && batch.size() < limit && roomForMore(batch.size())){
+        batch.add(jobs.next());
+      }
+      if(batch.isEmpty()){
+        //the estimate says the to-space is full
+        m_ToSpaceExhausted = jobs.hasNext();
+        break;
+      }
+      long bytes_before = bytesWritten();
+      int count_before = m_CountWritten;
+      List<Kernel> not_written = writeBatch(batch);
+      m_SizeEstimate.record(m_CountWritten - count_before, bytesWritten() - bytes_before);
+      if(not_written.isEmpty() == false){
+        mWriteRet.addNotWritten(not_written);
+        m_ToSpaceExhausted = true;
+        break;
+      }
+      if(jobs.hasNext() == false || roomForMore(0) == false){
+        break;
+      }
+      batch = new ArrayList<Kernel>();
+    }
+    
+    finishWrite();
+    return m_CountWritten;
+  }
+  
+  /**
+   * Writes kernel once for num_threads threads. Every thread gets the
+   * handle of kernel and its thread id as the index.
+   * @return false if kernel did not fit in the to-space
+   */
+  public boolean writeIndexedKernel(CompiledKernel kernel, int num_threads){
+    mWriteRet = null;
+    ensureExceptionsSize((long) num_threads * 8);
+    startWrite(kernel);
+    mBlocks.add(kernel);
+    try {
+      long handle = mGcObjectVisitor.writeToHeap(kernel);
+      writeOneHandle(handle);
+      m_CountWritten = 1;
+    } catch(OutOfMemoryError ex){
+      m_ToSpaceExhausted = true;
+    }
+    finishWrite();
+    return m_CountWritten == 1;
+  }
+  
+  /**
+   * Sets up the serializers with the one of first_block and writes the 
+   * statics. Later kernels are written after them.
+   */
+  private void startWrite(CompiledKernel first_block){
+    mBlocks = new ArrayList<CompiledKernel>();
+    m_HandlesList.clear();
+    
     //mUsingGarbageCollector = first_block.isUsingGarbageCollector();
     mUsingGarbageCollector = false;
-    mGcObjectVisitor = first_block.getSerializer(mToSpaceMemory, mTextureMemory);
+    
+    createViews();
+    m_Serializers.clear();
+    for(int i = 0; i < m_ToSpaceViews.size(); ++i){
+      Memory to_space = m_ToSpaceViews.get(i);
+      Memory texture = m_TextureViews.get(i);
+      to_space.setAddress(0);
+      to_space.clearHeapEndPtr();
+      texture.clearHeapEndPtr();
+      Serializer visitor = first_block.getSerializer(to_space, texture);
+      visitor.setPinnedSpace(m_Pinned);
+      if(i > 0){
+        visitor.shareCaches(m_Serializers.get(0));
+      }
+      m_Serializers.add(visitor);
+    }
+    mGcObjectVisitor = m_Serializers.get(0);
 
     mHeapEndPtrMemory.setAddress(0);
     mHandlesMemory.setAddress(0);
-    mToSpaceMemory.setAddress(0);
-    mToSpaceMemory.clearHeapEndPtr();
     
     if(mUsingGarbageCollector){
       makeSureReadyForUsingGarbageCollector();
@@ -141,27 +369,26 @@ public abstract class GcHeap {
     //write statics
     mGcObjectVisitor.writeStaticsToHeap();
     
-    m_PreviousRef = 0;
-    m_PreviousSize = 0;
-    m_CountWritten = 1;
+    m_CountWritten = 0;
     mMaxToHandleMapAddress = -1;
-
-    writeOneRuntimeBasicBlock(first_block);
-    while(jobs.hasNext()){
-
-      if(roomForMore(m_PreviousSize, m_PreviousRef) == false){
-        break;
-      }
-      m_CountWritten++;
-
-      CompiledKernel block = getBlock(jobs);
-      writeOneRuntimeBasicBlock(block);
-      
+    m_ToSpaceExhausted = false;
+    
+    try {
+      m_Pinned.write(mGcObjectVisitor, m_ToSpaceViews, first_block);
+    } catch(OutOfMemoryError ex){
+      //the next heap from the pool is larger
+      m_ToSpaceExhausted = true;
+      throw ex;
     }
-    long heap_end_ptr = mToSpaceMemory.getHeapEndPtr();
+  }
+  
+  private void finishWrite(){
+    long heap_end_ptr = getHeapEndPtr();
     mHeapEndPtrMemory.writeLong(heap_end_ptr);
+    mGcInfoSpaceMemory.setAddress(TO_SPACE_END_OFFSET);
+    mGcInfoSpaceMemory.writeLong(mToSpaceSize);
     
-    mToSpaceMemory.finishCopy(mToSpaceMemory.getHeapEndPtr());    
+    mToSpaceMemory.finishCopy(heap_end_ptr);    
     
     mHandlesMemory.finishCopy(m_CountWritten*8); //8 is sizeof long
     if(mUsingGarbageCollector){
@@ -173,10 +400,29 @@ public abstract class GcHeap {
       BufferPrinter printer = new BufferPrinter();
       printer.print(mToSpaceMemory, 0, 1024);
     }
-    return m_CountWritten;
+  }
+  
+  private long getHeapEndPtr(){
+    long ret = 0;
+    for(Memory mem : m_ToSpaceViews){
+      if(mem.getHeapEndPtr() > ret){
+        ret = mem.getHeapEndPtr();
+      }
+    }
+    return ret;
   }
 
   protected abstract void allocateMemory();
+  
+  /**
+   * @return a Memory sharing the storage of mem with its own pointers
+   */
+  protected abstract Memory createView(Memory mem);
+  
+  /**
+   * Makes mExceptionsMemory hold at least size bytes
+   */
+  protected abstract void ensureExceptionsSize(long size);
 
   public PartiallyCompletedParallelJob readRuntimeBasicBlocks(){    
     if(Configuration.getPrintMem()){
@@ -192,28 +438,14 @@ public abstract class GcHeap {
     //read statics
     mToSpaceMemory.setAddress(0);    
         
-    CompiledKernel first_block = mBlocks.get(0);
-    mGcObjectVisitor.readStaticsFromHeap();
-    
-    mExceptionsMemory.setAddress(0);
-    for(int i = 0; i < m_CountWritten; ++i){
-      int reference = mExceptionsMemory.readInt();
-      if(reference == first_block.getNullPointerNumber()){
-        throw new NullPointerException();
-      }
-      if(reference != 0){
-        mToSpaceMemory.setAddress(reference);
-        Object o = mGcObjectVisitor.readFromHeap(null, true, reference);
-        throw new RuntimeException((Throwable) o);
-      }
+    if(m_CountWritten > 0 && mBlocks.get(0).writesStatics()){
+      mGcObjectVisitor.readStaticsFromHeap();
     }
+    readExceptions();
     
-    //read instances
-    for(int i = 0; i < m_CountWritten; ++i){
-      CompiledKernel block = mBlocks.get(i);
-      long reference = m_HandlesList.get(i);
-      mToSpaceMemory.setAddress(reference);
-      mGcObjectVisitor.readFromHeap(block, true, reference);
+    //read instances, the gpu changed nothing reachable from read only kernels
+    if(m_CountWritten > 0 && mBlocks.get(0).isReadOnly() == false){
+      readInstances();
     }
         
     mHandlesMemory.finishRead();
@@ -225,23 +457,71 @@ public abstract class GcHeap {
     return mWriteRet;
   }
 
-  protected abstract void makeSureReadyForUsingGarbageCollector();
+  private void readInstances(){
+    int num_threads = m_Serializers.size();
+    for(int i = 0; i < num_threads; ++i){
+      int start_index = i*m_CountWritten/num_threads;
+      int end_index = (i+1)*m_CountWritten/num_threads;
+      List<Kernel> items = new ArrayList<Kernel>();
+      for(int j = start_index; j < end_index; ++j){
+        items.add((Kernel) mBlocks.get(j));
+      }
+      List<Long> handles = m_HandlesList.subList(start_index, end_index);
+      m_Readers.get(i).read(items, handles, m_Serializers.get(i));
+    }
+    for(int i = 0; i < num_threads; ++i){
+      m_Readers.get(i).join();
+    }
+  }
 
-  private boolean roomForMore(long size, long ref) {
-    long next_ref = ref + size + size;
-    //System.out.printf("Next_ref: "+next_ref);
-    if(next_ref >= mBufferSize)
-      return false;
-    if((m_CountWritten * 4) + 4 >= mBufferSize)
-      return false;
-    if(m_CountWritten + 1 > mDevice.getNumBlocks())
-      return false;
-    if(mUsingGarbageCollector){
-      if(mMaxToHandleMapAddress + 4 >= mBufferSize)
-        return false;
+  /**
+   * Reads back the kernel of the last writeIndexedKernel
+   */
+  public void readIndexedKernel(){
+    mHandlesMemory.setAddress(0);
+    mToSpaceMemory.setAddress(0);
+    if(mBlocks.get(0).writesStatics()){
+      mGcObjectVisitor.readStaticsFromHeap();
     }
-    return true;
+    readExceptions();
+    
+    if(mBlocks.get(0).isReadOnly() == false){
+      mGcObjectVisitor.readFromHeap(mBlocks.get(0), true, m_HandlesList.get(0));
+    }
+    
+    mHandlesMemory.finishRead();
+    mToSpaceMemory.finishRead();
   }
+  
+  /**
+   * The kernel counts the threads that threw and keeps the lowest index of
+   * one in the gc info, only the exception of that thread is read. Slots of
+   * threads that did not throw are not written.
+   */
+  private void readExceptions(){
+    mGcInfoSpaceMemory.setAddress(EXCEPTION_COUNT_OFFSET);
+    long num_exceptions = mGcInfoSpaceMemory.readLong();
+    if(num_exceptions == 0){
+      return;
+    }
+    mGcInfoSpaceMemory.setAddress(FIRST_EXCEPTION_OFFSET);
+    long index = mGcInfoSpaceMemory.readInt();
+    mExceptionsMemory.setAddress(index * 8);
+    long handle = mExceptionsMemory.readLong();
+    CompiledKernel first_block = mBlocks.get(0);
+    if(handle == first_block.getNullPointerNumber()){
+      throw new NullPointerException();
+    }
+    if(handle == -1){
+      throw new OutOfMemoryError();
+    }
+    long reference = handle << 4;
+    mToSpaceMemory.setAddress(reference);
+    Object o = mGcObjectVisitor.readFromHeap(null, true, reference);
+    throw new RuntimeException((Throwable) o);
+  }
+
+  protected abstract void makeSureReadyForUsingGarbageCollector();
 
   int getCountWritten() {
     return m_CountWritten;
@@ -250,4 +530,11 @@ public abstract class GcHeap {
   public List<CompiledKernel> getBlocks() {
     return mBlocks;
   }
-}
\ No newline at end of file
+  
+  /**
+   * @return the jobs of the last write, including the ones not written
+   */
+  public PartiallyCompletedParallelJob getWriteResult(){
+    return mWriteRet;
+  }
+}
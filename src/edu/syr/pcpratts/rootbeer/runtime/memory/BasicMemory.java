@@ -17,6 +17,7 @@ public abstract class BasicMemory extends Memory {
   protected IntStack mAddressStack;
   protected boolean mDebug;
   protected final long mSize;
+  private byte[] mStaging;
   
   protected int loffset0;
   protected int loffset1;
@@ -39,9 +40,24 @@ public abstract class BasicMemory extends Memory {
     mData = new ExtendedByteArray(size);
     mSize = size;
     mAddressStack = new IntStack();
+    mStaging = new byte[8192];
     mDebug = false;
   }
 
+  /**
+   * Creates a view over the same bytes as shared with its own pointers, so
+   * several serializer threads can write into one to-space.
+   */
+  protected BasicMemory(BasicMemory shared){
+    mData = shared.mData;
+    mSize = shared.mSize;
+    mAddressStack = new IntStack();
+    mStaging = new byte[8192];
+    mDebug = false;
+  }
+
+  public abstract BasicMemory createView();
+
   public long size(){
     return mSize;
   }
@@ -65,10 +81,10 @@ public abstract class BasicMemory extends Memory {
   
   public int readInt(){
     long ptr = getPointer();
-    int value = (int) (((int) mData.get(ptr+ioffset3) << 24) & 0xff000000);
-    value |= (int) (((int) mData.get(ptr+ioffset2) << 16) & 0x00ff0000);
-    value |= (int) (((int) mData.get(ptr+ioffset1) << 8) & 0x0000ff00);
-    value |= (int) ((int) mData.get(ptr+ioffset0) & 0x000000ff);
+    int value = (mData.get(ptr+ioffset3) << 24) & 0xff000000;
+    value |= (mData.get(ptr+ioffset2) << 16) & 0x00ff0000;
+    value |= (mData.get(ptr+ioffset1) << 8) & 0x0000ff00;
+    value |= mData.get(ptr+ioffset0) & 0x000000ff;
 
     incPointer(4);
     return value;
@@ -136,17 +152,17 @@ public abstract class BasicMemory extends Memory {
 
   public void writeInt(int value){
     long ptr = getPointer();
-    mData.set(ptr+ioffset0, (byte) ((int) (value) & 0xff));
-    mData.set(ptr+ioffset1, (byte) ((int) (value >> 8) & 0xff));
-    mData.set(ptr+ioffset2, (byte) ((int) (value >> 16) & 0xff));
-    mData.set(ptr+ioffset3, (byte) ((int) (value >> 24) & 0xff));
+    mData.set(ptr+ioffset0, (byte) (value & 0xff));
+    mData.set(ptr+ioffset1, (byte) ((value >> 8) & 0xff));
+    mData.set(ptr+ioffset2, (byte) ((value >> 16) & 0xff));
+    mData.set(ptr+ioffset3, (byte) ((value >> 24) & 0xff));
     incPointer(4);
   }
 
   public void writeShort(short value){
     long ptr = getPointer();
-    mData.set(ptr+soffset0, (byte) ((int) (value) & 0xff));
-    mData.set(ptr+soffset1, (byte) ((int) (value >> 8) & 0xff));
+    mData.set(ptr+soffset0, (byte) (value & 0xff));
+    mData.set(ptr+soffset1, (byte) ((value >> 8) & 0xff));
     incPointer(2);
   }
 
@@ -198,8 +214,278 @@ public abstract class BasicMemory extends Memory {
   }
 
   public void readIntArray(int[] array, int size){
-    for(int i = 0; i < size; ++i){
-      array[i] = readInt();
+    readArray(array, 0, size);
+  }
+
+  public void readArray(byte[] array, int offset, int length){
+    mData.get(getPointer(), array, offset, length);
+    incPointer(length);
+  }
+
+  public void readArray(boolean[] array, int offset, int length){
+    long ptr = getPointer();
+    int done = 0;
+    while(done < length){
+      int count = Math.min(mStaging.length, length - done);
+      mData.get(ptr, mStaging, 0, count);
+      for(int i = 0; i < count; ++i){
+        array[offset+done+i] = (mStaging[i] != 0);
+      }
+      ptr += count;
+      done += count;
+    }
+    setPointer(ptr);
+  }
+
+  public void readArray(char[] array, int offset, int length){
+    long ptr = getPointer();
+    int done = 0;
+    while(done < length){
+      int count = Math.min(mStaging.length / 4, length - done);
+      mData.get(ptr, mStaging, 0, count * 4);
+      for(int i = 0; i < count; ++i){
+        array[offset+done+i] = (char) getInt(i*4);
+      }
+      ptr += count * 4;
+      done += count;
+    }
+    setPointer(ptr);
+  }
+
+  public void readArray(short[] array, int offset, int length){
+    long ptr = getPointer();
+    int done = 0;
+    while(done < length){
+      int count = Math.min(mStaging.length / 2, length - done);
+      mData.get(ptr, mStaging, 0, count * 2);
+      for(int i = 0; i < count; ++i){
+        array[offset+done+i] = getShort(i*2);
+      }
+      ptr += count * 2;
+      done += count;
+    }
+    setPointer(ptr);
+  }
+
+  public void readArray(int[] array, int offset, int length){
+    long ptr = getPointer();
+    int done = 0;
+    while(done < length){
+      int count = Math.min(mStaging.length / 4, length - done);
+      mData.get(ptr, mStaging, 0, count * 4);
+      for(int i = 0; i < count; ++i){
+        array[offset+done+i] = getInt(i*4);
+      }
+      ptr += count * 4;
+      done += count;
+    }
+    setPointer(ptr);
+  }
+
+  public void readArray(long[] array, int offset, int length){
+    long ptr = getPointer();
+    int done = 0;
+    while(done < length){
+      int count = Math.min(mStaging.length / 8, length - done);
+      mData.get(ptr, mStaging, 0, count * 8);
+      for(int i = 0; i < count; ++i){
+        array[offset+done+i] = getLong(i*8);
+      }
+      ptr += count * 8;
+      done += count;
+    }
+    setPointer(ptr);
+  }
+
+  public void readArray(float[] array, int offset, int length){
+    long ptr = getPointer();
+    int done = 0;
+    while(done < length){
+      int count = Math.min(mStaging.length / 4, length - done);
+      mData.get(ptr, mStaging, 0, count * 4);
+      for(int i = 0; i < count; ++i){
+        array[offset+done+i] = Float.intBitsToFloat(getInt(i*4));
+      }
+      ptr += count * 4;
+      done += count;
+    }
+    setPointer(ptr);
+  }
+
+  public void readArray(double[] array, int offset, int length){
+    long ptr = getPointer();
+    int done = 0;
+    while(done < length){
+      int count = Math.min(mStaging.length / 8, length - done);
+      mData.get(ptr, mStaging, 0, count * 8);
+      for(int i = 0; i < count; ++i){
+        array[offset+done+i] = Double.longBitsToDouble(getLong(i*8));
+      }
+      ptr += count * 8;
+      done += count;
+    }
+    setPointer(ptr);
+  }
+
+  public void writeArray(byte[] array, int offset, int length){
+    mData.set(getPointer(), array, offset, length);
+    incPointer(length);
+  }
+
+  public void writeArray(boolean[] array, int offset, int length){
+    long ptr = getPointer();
+    int done = 0;
+    while(done < length){
+      int count = Math.min(mStaging.length, length - done);
+      for(int i = 0; i < count; ++i){
+        if(array[offset+done+i])
+          mStaging[i] = 1;
+        else
+          mStaging[i] = 0;
+      }
+      mData.set(ptr, mStaging, 0, count);
+      ptr += count;
+      done += count;
     }
+    setPointer(ptr);
+  }
+
+  public void writeArray(char[] array, int offset, int length){
+    long ptr = getPointer();
+    int done = 0;
+    while(done < length){
+      int count = Math.min(mStaging.length / 4, length - done);
+      for(int i = 0; i < count; ++i){
+        putInt(i*4, array[offset+done+i]);
+      }
+      mData.set(ptr, mStaging, 0, count * 4);
+      ptr += count * 4;
+      done += count;
+    }
+    setPointer(ptr);
+  }
+
+  public void writeArray(short[] array, int offset, int length){
+    long ptr = getPointer();
+    int done = 0;
+    while(done < length){
+      int count = Math.min(mStaging.length / 2, length - done);
+      for(int i = 0; i < count; ++i){
+        putShort(i*2, array[offset+done+i]);
+      }
+      mData.set(ptr, mStaging, 0, count * 2);
+      ptr += count * 2;
+      done += count;
+    }
+    setPointer(ptr);
+  }
+
+  public void writeArray(int[] array, int offset, int length){
+    long ptr = getPointer();
+    int done = 0;
+    while(done < length){
+      int count = Math.min(mStaging.length / 4, length - done);
+      for(int i = 0; i < count; ++i){
+        putInt(i*4, array[offset+done+i]);
+      }
+      mData.set(ptr, mStaging, 0, count * 4);
+      ptr += count * 4;
+      done += count;
+    }
+    setPointer(ptr);
+  }
+
+  public void writeArray(long[] array, int offset, int length){
+    long ptr = getPointer();
+    int done = 0;
+    while(done < length){
+      int count = Math.min(mStaging.length / 8, length - done);
+      for(int i = 0; i < count; ++i){
+        putLong(i*8, array[offset+done+i]);
+      }
+      mData.set(ptr, mStaging, 0, count * 8);
+      ptr += count * 8;
+      done += count;
+    }
+    setPointer(ptr);
+  }
+
+  public void writeArray(float[] array, int offset, int length){
+    long ptr = getPointer();
+    int done = 0;
+    while(done < length){
+      int count = Math.min(mStaging.length / 4, length - done);
+      for(int i = 0; i < count; ++i){
+        putInt(i*4, Float.floatToIntBits(array[offset+done+i]));
+      }
+      mData.set(ptr, mStaging, 0, count * 4);
+      ptr += count * 4;
+      done += count;
+    }
+    setPointer(ptr);
+  }
+
+  public void writeArray(double[] array, int offset, int length){
+    long ptr = getPointer();
+    int done = 0;
+    while(done < length){
+      int count = Math.min(mStaging.length / 8, length - done);
+      for(int i = 0; i < count; ++i){
+        putLong(i*8, Double.doubleToLongBits(array[offset+done+i]));
+      }
+      mData.set(ptr, mStaging, 0, count * 8);
+      ptr += count * 8;
+      done += count;
+    }
+    setPointer(ptr);
+  }
+
+  private int getInt(int index){
+    int value = (mStaging[index+ioffset3] << 24) & 0xff000000;
+    value |= (mStaging[index+ioffset2] << 16) & 0x00ff0000;
+    value |= (mStaging[index+ioffset1] << 8) & 0x0000ff00;
+    value |= mStaging[index+ioffset0] & 0x000000ff;
+    return value;
+  }
+
+  private short getShort(int index){
+    short value = (short) (((short) mStaging[index+soffset1] << 8) & 0x0000ff00);
+    value |= (short) (((short) mStaging[index+soffset0]) & 0x000000ff);
+    return value;
+  }
+
+  private long getLong(int index){
+    long value = (((long) mStaging[index+loffset7] << 56) & 0xff00000000000000L);
+    value |= (((long) mStaging[index+loffset6] << 48)     & 0x00ff000000000000L);
+    value |= (((long) mStaging[index+loffset5] << 40)     & 0x0000ff0000000000L);
+    value |= (((long) mStaging[index+loffset4] << 32)     & 0x000000ff00000000L);
+    value |= (((long) mStaging[index+loffset3] << 24)     & 0x00000000ff000000L);
+    value |= (((long) mStaging[index+loffset2] << 16)     & 0x0000000000ff0000L);
+    value |= (((long) mStaging[index+loffset1] << 8)      & 0x000000000000ff00L);
+    value |= ((long) mStaging[index+loffset0]               & 0x00000000000000ffL);
+    return value;
+  }
+
+  private void putInt(int index, int value){
+    mStaging[index+ioffset0] = (byte) (value & 0xff);
+    mStaging[index+ioffset1] = (byte) ((value >> 8) & 0xff);
+    mStaging[index+ioffset2] = (byte) ((value >> 16) & 0xff);
+    mStaging[index+ioffset3] = (byte) ((value >> 24) & 0xff);
+  }
+
+  private void putShort(int index, short value){
+    mStaging[index+soffset0] = (byte) (value & 0xff);
+    mStaging[index+soffset1] = (byte) ((value >> 8) & 0xff);
+  }
+
+  private void putLong(int index, long value){
+    mStaging[index+loffset0] = (byte) (value & 0xff);
+    mStaging[index+loffset1] = (byte) ((value >> 8) & 0xff);
+    mStaging[index+loffset2] = (byte) ((value >> 16) & 0xff);
+    mStaging[index+loffset3] = (byte) ((value >> 24) & 0xff);
+    mStaging[index+loffset4] = (byte) ((value >> 32) & 0xff);
+    mStaging[index+loffset5] = (byte) ((value >> 40) & 0xff);
+    mStaging[index+loffset6] = (byte) ((value >> 48) & 0xff);
+    mStaging[index+loffset7] = (byte) ((value >> 56) & 0xff);
   }
 }
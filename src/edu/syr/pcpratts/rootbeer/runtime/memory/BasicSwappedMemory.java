@@ -11,7 +11,20 @@ public class BasicSwappedMemory extends BasicMemory {
   
   public BasicSwappedMemory(long size){
     super(size);
-    
+    setOffsets();
+  }
+
+  private BasicSwappedMemory(BasicSwappedMemory shared){
+    super(shared);
+    setOffsets();
+  }
+
+  @Override
+  public BasicMemory createView(){
+    return new BasicSwappedMemory(this);
+  }
+
+  private void setOffsets(){
     loffset0 = 0;
     loffset1 = 1;
     loffset2 = 2;
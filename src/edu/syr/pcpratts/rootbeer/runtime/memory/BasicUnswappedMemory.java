@@ -9,9 +9,22 @@ package edu.syr.pcpratts.rootbeer.runtime.memory;
 
 public class BasicUnswappedMemory extends BasicMemory {
 
-  public BasicUnswappedMemory(long i) {
+  public BasicUnswappedMemory(long i){
     super(i);
-    
+    setOffsets();
+  }
+
+  private BasicUnswappedMemory(BasicUnswappedMemory shared){
+    super(shared);
+    setOffsets();
+  }
+
+  @Override
+  public BasicMemory createView(){
+    return new BasicUnswappedMemory(this);
+  }
+
+  private void setOffsets(){
     loffset0 = 7;
     loffset1 = 6;
     loffset2 = 5;
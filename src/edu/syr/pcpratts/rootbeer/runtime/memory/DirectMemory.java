@@ -0,0 +1,291 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime.memory;
+
+import edu.syr.pcpratts.rootbeer.util.IntStack;
+import java.util.List;
+
+/**
+ * Memory backed by off-heap direct segments. Words are read and written in
+ * native byte order with single buffer accesses, and addresses past 2GB need
+ * no division. Native code gets the segment addresses with
+ * GetDirectBufferAddress instead of pinning Java arrays.
+ */
+public class DirectMemory extends Memory {
+
+  private final SegmentedBuffer m_Buffer;
+  private final IntStack m_AddressStack;
+
+  public DirectMemory(long size){
+    this(SegmentedBuffer.allocateDirect(size));
+  }
+
+  public DirectMemory(SegmentedBuffer buffer){
+    m_Buffer = buffer;
+    m_AddressStack = new IntStack();
+  }
+
+  /**
+   * @return a DirectMemory over the same segments with its own pointers
+   */
+  public DirectMemory createView(){
+    return new DirectMemory(m_Buffer);
+  }
+
+  public long size(){
+    return m_Buffer.size();
+  }
+
+  public SegmentedBuffer getSegments(){
+    return m_Buffer;
+  }
+
+  @Override
+  public byte readByte(){
+    byte ret = m_Buffer.get(getPointer());
+    incPointer(1);
+    return ret;
+  }
+
+  @Override
+  public boolean readBoolean(){
+    return readByte() != 0;
+  }
+
+  @Override
+  public short readShort(){
+    short ret = m_Buffer.getShort(getPointer());
+    incPointer(2);
+    return ret;
+  }
+
+  @Override
+  public int readInt(){
+    int ret = m_Buffer.getInt(getPointer());
+    incPointer(4);
+    return ret;
+  }
+
+  @Override
+  public float readFloat(){
+    return Float.intBitsToFloat(readInt());
+  }
+
+  @Override
+  public double readDouble(){
+    return Double.longBitsToDouble(readLong());
+  }
+
+  @Override
+  public long readLong(){
+    long ret = m_Buffer.getLong(getPointer());
+    incPointer(8);
+    return ret;
+  }
+
+  @Override
+  public long readRef(){
+    long ret = readInt();
+    ret <<= 4;
+    return ret;
+  }
+
+  @Override
+  public void writeByte(byte value){
+    m_Buffer.put(getPointer(), value);
+    incPointer(1);
+  }
+
+  @Override
+  public void writeBoolean(boolean value){
+    if(value)
+      writeByte((byte) 1);
+    else
+      writeByte((byte) 0);
+  }
+
+  @Override
+  public void writeShort(short value){
+    m_Buffer.putShort(getPointer(), value);
+    incPointer(2);
+  }
+
+  @Override
+  public void writeInt(int value){
+    m_Buffer.putInt(getPointer(), value);
+    incPointer(4);
+  }
+
+  @Override
+  public void writeFloat(float value){
+    writeInt(Float.floatToIntBits(value));
+  }
+
+  @Override
+  public void writeDouble(double value){
+    writeLong(Double.doubleToLongBits(value));
+  }
+
+  @Override
+  public void writeLong(long value){
+    m_Buffer.putLong(getPointer(), value);
+    incPointer(8);
+  }
+
+  @Override
+  public void writeRef(long value){
+    value = value >> 4;
+    writeInt((int) value);
+  }
+
+  @Override
+  public void setAddress(long address){
+    setPointer(address);
+  }
+
+  @Override
+  public void incrementAddress(int offset){
+    incPointer(offset);
+  }
+
+  @Override
+  public void pushAddress(){
+    m_AddressStack.push(getPointer());
+  }
+
+  @Override
+  public void popAddress(){
+    setPointer(m_AddressStack.pop());
+  }
+
+  @Override
+  public List<byte[]> getBuffer(){
+    throw new UnsupportedOperationException("use getSegments");
+  }
+
+  @Override
+  public void finishCopy(long size){
+  }
+
+  @Override
+  public void finishRead(){
+  }
+
+  @Override
+  public void readIntArray(int[] array, int size){
+    readArray(array, 0, size);
+  }
+
+  @Override
+  public void readArray(byte[] array, int offset, int length){
+    m_Buffer.get(getPointer(), array, offset, length);
+    incPointer(length);
+  }
+
+  @Override
+  public void readArray(boolean[] array, int offset, int length){
+    long ptr = getPointer();
+    for(int i = 0; i < length; ++i){
+      array[offset + i] = m_Buffer.get(ptr + i) != 0;
+    }
+    incPointer(length);
+  }
+
+  @Override
+  public void readArray(char[] array, int offset, int length){
+    long ptr = getPointer();
+    for(int i = 0; i < length; ++i){
+      array[offset + i] = (char) m_Buffer.getInt(ptr + i * 4L);
+    }
+    incPointer(length * 4L);
+  }
+
+  @Override
+  public void readArray(short[] array, int offset, int length){
+    m_Buffer.getShorts(getPointer(), array, offset, length);
+    incPointer(length * 2L);
+  }
+
+  @Override
+  public void readArray(int[] array, int offset, int length){
+    m_Buffer.getInts(getPointer(), array, offset, length);
+    incPointer(length * 4L);
+  }
+
+  @Override
+  public void readArray(long[] array, int offset, int length){
+    m_Buffer.getLongs(getPointer(), array, offset, length);
+    incPointer(length * 8L);
+  }
+
+  @Override
+  public void readArray(float[] array, int offset, int length){
+    m_Buffer.getFloats(getPointer(), array, offset, length);
+    incPointer(length * 4L);
+  }
+
+  @Override
+  public void readArray(double[] array, int offset, int length){
+    m_Buffer.getDoubles(getPointer(), array, offset, length);
+    incPointer(length * 8L);
+  }
+
+  @Override
+  public void writeArray(byte[] array, int offset, int length){
+    m_Buffer.put(getPointer(), array, offset, length);
+    incPointer(length);
+  }
+
+  @Override
+  public void writeArray(boolean[] array, int offset, int length){
+    long ptr = getPointer();
+    for(int i = 0; i < length; ++i){
+      m_Buffer.put(ptr + i, array[offset + i] ? (byte) 1 : (byte) 0);
+    }
+    incPointer(length);
+  }
+
+  @Override
+  public void writeArray(char[] array, int offset, int length){
+    long ptr = getPointer();
+    for(int i = 0; i < length; ++i){
+      m_Buffer.putInt(ptr + i * 4L, array[offset + i]);
+    }
+    incPointer(length * 4L);
+  }
+
+  @Override
+  public void writeArray(short[] array, int offset, int length){
+    m_Buffer.putShorts(getPointer(), array, offset, length);
+    incPointer(length * 2L);
+  }
+
+  @Override
+  public void writeArray(int[] array, int offset, int length){
+    m_Buffer.putInts(getPointer(), array, offset, length);
+    incPointer(length * 4L);
+  }
+
+  @Override
+  public void writeArray(long[] array, int offset, int length){
+    m_Buffer.putLongs(getPointer(), array, offset, length);
+    incPointer(length * 8L);
+  }
+
+  @Override
+  public void writeArray(float[] array, int offset, int length){
+    m_Buffer.putFloats(getPointer(), array, offset, length);
+    incPointer(length * 4L);
+  }
+
+  @Override
+  public void writeArray(double[] array, int offset, int length){
+    m_Buffer.putDoubles(getPointer(), array, offset, length);
+    incPointer(length * 8L);
+  }
+}
@@ -65,6 +65,32 @@ public class ExtendedByteArray {
     }
   }
   
+  public void get(long index, byte[] dest, int offset, int length){
+    while(length > 0){
+      int array = (int) (index / m_MaxSize);
+      int array_offset = (int) (index % m_MaxSize);
+      byte[] data = m_Data.get(array);
+      int count = Math.min(length, data.length - array_offset);
+      System.arraycopy(data, array_offset, dest, offset, count);
+      index += count;
+      offset += count;
+      length -= count;
+    }
+  }
+  
+  public void set(long index, byte[] src, int offset, int length){
+    while(length > 0){
+      int array = (int) (index / m_MaxSize);
+      int array_offset = (int) (index % m_MaxSize);
+      byte[] data = m_Data.get(array);
+      int count = Math.min(length, data.length - array_offset);
+      System.arraycopy(src, offset, data, array_offset, count);
+      index += count;
+      offset += count;
+      length -= count;
+    }
+  }
+  
   public static void main(String[] args){
     long size = 2*1024*1024*1024L;
     ExtendedByteArray array = new ExtendedByteArray(size);
@@ -7,7 +7,7 @@
 
 package edu.syr.pcpratts.rootbeer.runtime.memory;
 
-import java.util.ArrayList;
+import edu.syr.pcpratts.rootbeer.util.IntStack;
 import java.util.List;
 
 public abstract class Memory {
@@ -15,38 +15,76 @@ public abstract class Memory {
   private Pointer m_StaticPointer;
   private Pointer m_InstancePointer;
   private Pointer m_CurrPointer;
-  private List<List<Long>> m_IntegerList;
+  private long[] m_IntegerList;
+  private int m_IntegerListSize;
+  private IntStack m_IntegerListStarts;
+  private RegionAllocator m_Allocator;
 
   public Memory(){
     m_StaticPointer = new Pointer();
     m_InstancePointer = new Pointer();
     m_CurrPointer = m_InstancePointer;
-    m_IntegerList = new ArrayList<List<Long>>();
+    m_IntegerList = new long[64];
+    m_IntegerListSize = 0;
+    m_IntegerListStarts = new IntStack();
   }
 
+  /**
+   * Shares the to-space with other Memory objects. Allocations are taken from
+   * per-thread regions of the space instead of this object's end pointer.
+   */
+  public void setRegionAllocator(RegionAllocator allocator){
+    m_Allocator = allocator;
+  }
+
+  /**
+   * The values of nested integer lists share one primitive buffer that is
+   * kept for the life of this Memory.
+   */
   public void startIntegerList(){
-    m_IntegerList.add(new ArrayList<Long>());
+    m_IntegerListStarts.push(m_IntegerListSize);
     pushAddress();
   }
 
   public void addIntegerToList(long value){
-    List<Long> top = m_IntegerList.get(m_IntegerList.size()-1);
-    top.add(value);
+    if(m_IntegerListSize == m_IntegerList.length){
+      long[] list = new long[m_IntegerList.length * 2];
+      System.arraycopy(m_IntegerList, 0, list, 0, m_IntegerListSize);
+      m_IntegerList = list;
+    }
+    m_IntegerList[m_IntegerListSize] = value;
+    m_IntegerListSize++;
   }
 
   public void endIntegerList(){
     popAddress();
-    List<Long> top = m_IntegerList.get(m_IntegerList.size()-1);
-    for(Long curr : top){
-      writeRef(curr);
+    int start = (int) m_IntegerListStarts.pop();
+    for(int i = start; i < m_IntegerListSize; ++i){
+      writeRef(m_IntegerList[i]);
     }
-    m_IntegerList.remove(m_IntegerList.size()-1);
+    m_IntegerListSize = start;
   }
 
   public void clearHeapEndPtr() {
     m_CurrPointer.m_EndPointer = 0;
     m_CurrPointer.m_Pointer = 0;
     m_CurrPointer.m_MallocPointer = 0;
+    if(m_Allocator != null && m_CurrPointer == m_InstancePointer){
+      m_Allocator.reset();
+    }
+  }
+
+  /**
+   * Makes the next instance allocations start at address. What was written
+   * below address is kept and counted in the heap end.
+   */
+  public void allocateFrom(long address){
+    if(m_Allocator != null){
+      m_Allocator.reset(address);
+    }
+    if(m_InstancePointer.m_EndPointer < address){
+      m_InstancePointer.m_EndPointer = address;
+    }
   }
 
   public long getHeapEndPtr() {
@@ -109,8 +147,16 @@ public abstract class Memory {
       size += (16 - mod);  
     }
     
-    long ret = m_CurrPointer.m_EndPointer;
-    m_CurrPointer.m_EndPointer += size;
+    long ret;
+    if(m_Allocator != null && m_CurrPointer == m_InstancePointer){
+      ret = m_Allocator.malloc(size);
+      if(ret + size > m_CurrPointer.m_EndPointer){
+        m_CurrPointer.m_EndPointer = ret + size;
+      }
+    } else {
+      ret = m_CurrPointer.m_EndPointer;
+      m_CurrPointer.m_EndPointer += size;
+    }
     m_CurrPointer.m_Pointer = ret;
     
     return ret;
@@ -158,6 +204,24 @@ public abstract class Memory {
   public abstract void finishRead();
   public abstract void readIntArray(int[] array, int size);
   
+  public abstract void readArray(byte[] array, int offset, int length);
+  public abstract void readArray(boolean[] array, int offset, int length);
+  public abstract void readArray(char[] array, int offset, int length);
+  public abstract void readArray(short[] array, int offset, int length);
+  public abstract void readArray(int[] array, int offset, int length);
+  public abstract void readArray(long[] array, int offset, int length);
+  public abstract void readArray(float[] array, int offset, int length);
+  public abstract void readArray(double[] array, int offset, int length);
+  
+  public abstract void writeArray(byte[] array, int offset, int length);
+  public abstract void writeArray(boolean[] array, int offset, int length);
+  public abstract void writeArray(char[] array, int offset, int length);
+  public abstract void writeArray(short[] array, int offset, int length);
+  public abstract void writeArray(int[] array, int offset, int length);
+  public abstract void writeArray(long[] array, int offset, int length);
+  public abstract void writeArray(float[] array, int offset, int length);
+  public abstract void writeArray(double[] array, int offset, int length);
+  
   public void checkAlignment(int alignment){
   }
 }
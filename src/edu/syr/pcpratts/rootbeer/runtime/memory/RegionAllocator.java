@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime.memory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bump allocator for one serializer thread writing into a to-space that is
+ * shared with other threads. Regions are claimed from the shared free pointer
+ * and objects are carved out of the current region without synchronization.
+ */
+public class RegionAllocator {
+
+  public static final long DEFAULT_REGION_SIZE = 256*1024;
+
+  private final AtomicLong m_FreePointer;
+  private final long m_RegionSize;
+  private final long m_SpaceSize;
+  private long m_RegionPointer;
+  private long m_RegionEnd;
+  private long m_LastClaim;
+
+  public RegionAllocator(AtomicLong free_pointer, long region_size, long space_size){
+    m_FreePointer = free_pointer;
+    m_RegionSize = region_size;
+    m_SpaceSize = space_size;
+    m_RegionPointer = 0;
+    m_RegionEnd = 0;
+  }
+
+  /**
+   * @param size size of the allocation, already rounded to 16 bytes
+   * @return address of the allocation
+   * @throws OutOfMemoryError if the to-space is exhausted
+   */
+  public long malloc(long size){
+    if(m_RegionPointer + size <= m_RegionEnd){
+      long ret = m_RegionPointer;
+      m_RegionPointer += size;
+      return ret;
+    }
+    if(size * 4 > m_RegionSize){
+      //large objects get their own space so regions are not wasted
+      return claim(size, size);
+    }
+    long region = claim(m_RegionSize, size);
+    m_RegionPointer = region + size;
+    m_RegionEnd = region + m_LastClaim;
+    return region;
+  }
+
+  private long claim(long wanted, long needed){
+    while(true){
+      long curr = m_FreePointer.get();
+      long len = wanted;
+      if(curr + len > m_SpaceSize){
+        //near the end of the space only take what is needed
+        len = needed;
+      }
+      if(curr + len > m_SpaceSize){
+        throw new OutOfMemoryError();
+      }
+      if(m_FreePointer.compareAndSet(curr, curr + len)){
+        m_LastClaim = len;
+        return curr;
+      }
+    }
+  }
+
+  public void reset(){
+    reset(0);
+  }
+
+  /**
+   * Drops the current region and makes the next claim start at start
+   */
+  public void reset(long start){
+    m_FreePointer.set(start);
+    m_RegionPointer = 0;
+    m_RegionEnd = 0;
+  }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime.memory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A long indexed view over direct ByteBuffers in native byte order. Every
+ * segment except the last holds exactly 2^shift bytes, so an index is split
+ * into segment and offset with a shift and a mask. Values that straddle two
+ * segments are assembled a byte at a time.
+ */
+public class SegmentedBuffer {
+
+  public static final int DEFAULT_SHIFT = 30;
+
+  private final ByteBuffer[] m_Segments;
+  private final int m_Shift;
+  private final long m_Mask;
+  private final long m_SegmentSize;
+  private final long m_Size;
+  private final boolean m_LittleEndian;
+
+  public SegmentedBuffer(List<ByteBuffer> segments, int shift){
+    m_Shift = shift;
+    m_SegmentSize = 1L << shift;
+    m_Mask = m_SegmentSize - 1;
+    m_Segments = new ByteBuffer[segments.size()];
+    long size = 0;
+    for(int i = 0; i < m_Segments.length; ++i){
+      ByteBuffer segment = segments.get(i);
+      if(i < m_Segments.length - 1 && segment.capacity() != m_SegmentSize){
+        throw new IllegalArgumentException("segment "+i+" must hold "+m_SegmentSize+" bytes");
+      }
+      segment.order(ByteOrder.nativeOrder());
+      m_Segments[i] = segment;
+      size += segment.capacity();
+    }
+    m_Size = size;
+    m_LittleEndian = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+  }
+
+  /**
+   * Allocates the segments with ByteBuffer.allocateDirect. This is also the
+   * host buffer stand-in used to test device memory code without a device.
+   */
+  public static SegmentedBuffer allocateDirect(long size, int shift){
+    long segment_size = 1L << shift;
+    List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+    long remaining = size;
+    while(remaining > 0){
+      int len = (int) Math.min(segment_size, remaining);
+      segments.add(ByteBuffer.allocateDirect(len));
+      remaining -= len;
+    }
+    return new SegmentedBuffer(segments, shift);
+  }
+
+  public static SegmentedBuffer allocateDirect(long size){
+    return allocateDirect(size, DEFAULT_SHIFT);
+  }
+
+  public long size(){
+    return m_Size;
+  }
+
+  public int numSegments(){
+    return m_Segments.length;
+  }
+
+  public ByteBuffer segment(int index){
+    return m_Segments[index];
+  }
+
+  private ByteBuffer segmentFor(long index){
+    return m_Segments[(int) (index >>> m_Shift)];
+  }
+
+  private boolean fits(long index, int width){
+    return (index & m_Mask) + width <= m_SegmentSize;
+  }
+
+  public byte get(long index){
+    return segmentFor(index).get((int) (index & m_Mask));
+  }
+
+  public void put(long index, byte value){
+    segmentFor(index).put((int) (index & m_Mask), value);
+  }
+
+  public short getShort(long index){
+    if(fits(index, 2)){
+      return segmentFor(index).getShort((int) (index & m_Mask));
+    }
+    return (short) getSpanning(index, 2);
+  }
+
+  public void putShort(long index, short value){
+    if(fits(index, 2)){
+      segmentFor(index).putShort((int) (index & m_Mask), value);
+    } else {
+      putSpanning(index, 2, value);
+    }
+  }
+
+  public int getInt(long index){
+    if(fits(index, 4)){
+      return segmentFor(index).getInt((int) (index & m_Mask));
+    }
+    return (int) getSpanning(index, 4);
+  }
+
+  public void putInt(long index, int value){
+    if(fits(index, 4)){
+      segmentFor(index).putInt((int) (index & m_Mask), value);
+    } else {
+      putSpanning(index, 4, value);
+    }
+  }
+
+  public long getLong(long index){
+    if(fits(index, 8)){
+      return segmentFor(index).getLong((int) (index & m_Mask));
+    }
+    return getSpanning(index, 8);
+  }
+
+  public void putLong(long index, long value){
+    if(fits(index, 8)){
+      segmentFor(index).putLong((int) (index & m_Mask), value);
+    } else {
+      putSpanning(index, 8, value);
+    }
+  }
+
+  private long getSpanning(long index, int width){
+    long ret = 0;
+    for(int i = 0; i < width; ++i){
+      long b = get(index + i) & 0xff;
+      if(m_LittleEndian){
+        ret |= b << (8 * i);
+      } else {
+        ret |= b << (8 * (width - 1 - i));
+      }
+    }
+    return ret;
+  }
+
+  private void putSpanning(long index, int width, long value){
+    for(int i = 0; i < width; ++i){
+      int shift;
+      if(m_LittleEndian){
+        shift = 8 * i;
+      } else {
+        shift = 8 * (width - 1 - i);
+      }
+      put(index + i, (byte) (value >> shift));
+    }
+  }
+
+  public void get(long index, byte[] dest, int offset, int length){
+    while(length > 0){
+      int count = (int) Math.min(length, remainingInSegment(index));
+      slice(index).get(dest, offset, count);
+      index += count;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  public void put(long index, byte[] src, int offset, int length){
+    while(length > 0){
+      int count = (int) Math.min(length, remainingInSegment(index));
+      slice(index).put(src, offset, count);
+      index += count;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  public void getShorts(long index, short[] dest, int offset, int length){
+    while(length > 0){
+      int count = (int) Math.min(length, remainingInSegment(index) / 2);
+      if(count == 0){
+        //element straddles two segments
+        dest[offset] = getShort(index);
+        count = 1;
+      } else {
+        slice(index).asShortBuffer().get(dest, offset, count);
+      }
+      index += count * 2L;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  public void putShorts(long index, short[] src, int offset, int length){
+    while(length > 0){
+      int count = (int) Math.min(length, remainingInSegment(index) / 2);
+      if(count == 0){
+        putShort(index, src[offset]);
+        count = 1;
+      } else {
+        slice(index).asShortBuffer().put(src, offset, count);
+      }
+      index += count * 2L;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  public void getInts(long index, int[] dest, int offset, int length){
+    while(length > 0){
+      int count = (int) Math.min(length, remainingInSegment(index) / 4);
+      if(count == 0){
+        //element straddles two segments
+        dest[offset] = getInt(index);
+        count = 1;
+      } else {
+        slice(index).asIntBuffer().get(dest, offset, count);
+      }
+      index += count * 4L;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  public void putInts(long index, int[] src, int offset, int length){
+    while(length > 0){
+      int count = (int) Math.min(length, remainingInSegment(index) / 4);
+      if(count == 0){
+        putInt(index, src[offset]);
+        count = 1;
+      } else {
+        slice(index).asIntBuffer().put(src, offset, count);
+      }
+      index += count * 4L;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  public void getLongs(long index, long[] dest, int offset, int length){
+    while(length > 0){
+      int count = (int) Math.min(length, remainingInSegment(index) / 8);
+      if(count == 0){
+        //element straddles two segments
+        dest[offset] = getLong(index);
+        count = 1;
+      } else {
+        slice(index).asLongBuffer().get(dest, offset, count);
+      }
+      index += count * 8L;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  public void putLongs(long index, long[] src, int offset, int length){
+    while(length > 0){
+      int count = (int) Math.min(length, remainingInSegment(index) / 8);
+      if(count == 0){
+        putLong(index, src[offset]);
+        count = 1;
+      } else {
+        slice(index).asLongBuffer().put(src, offset, count);
+      }
+      index += count * 8L;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  public void getFloats(long index, float[] dest, int offset, int length){
+    while(length > 0){
+      int count = (int) Math.min(length, remainingInSegment(index) / 4);
+      if(count == 0){
+        //element straddles two segments
+        dest[offset] = Float.intBitsToFloat(getInt(index));
+        count = 1;
+      } else {
+        slice(index).asFloatBuffer().get(dest, offset, count);
+      }
+      index += count * 4L;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  public void putFloats(long index, float[] src, int offset, int length){
+    while(length > 0){
+      int count = (int) Math.min(length, remainingInSegment(index) / 4);
+      if(count == 0){
+        putInt(index, Float.floatToRawIntBits(src[offset]));
+        count = 1;
+      } else {
+        slice(index).asFloatBuffer().put(src, offset, count);
+      }
+      index += count * 4L;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  public void getDoubles(long index, double[] dest, int offset, int length){
+    while(length > 0){
+      int count = (int) Math.min(length, remainingInSegment(index) / 8);
+      if(count == 0){
+        //element straddles two segments
+        dest[offset] = Double.longBitsToDouble(getLong(index));
+        count = 1;
+      } else {
+        slice(index).asDoubleBuffer().get(dest, offset, count);
+      }
+      index += count * 8L;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  public void putDoubles(long index, double[] src, int offset, int length){
+    while(length > 0){
+      int count = (int) Math.min(length, remainingInSegment(index) / 8);
+      if(count == 0){
+        putLong(index, Double.doubleToRawLongBits(src[offset]));
+        count = 1;
+      } else {
+        slice(index).asDoubleBuffer().put(src, offset, count);
+      }
+      index += count * 8L;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  /**
+   * Returns an independent buffer positioned at index and limited to the
+   * end of the segment holding index. Used for bulk copies.
+   */
+  public ByteBuffer slice(long index){
+    ByteBuffer ret = segmentFor(index).duplicate();
+    ret.order(ByteOrder.nativeOrder());
+    ret.position((int) (index & m_Mask));
+    return ret;
+  }
+
+  /**
+   * @return the number of bytes from index to the end of its segment
+   */
+  public long remainingInSegment(long index){
+    return segmentFor(index).capacity() - (index & m_Mask);
+  }
+}
@@ -0,0 +1,35 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime.nativecpu;
+
+import edu.syr.pcpratts.rootbeer.runtime.PipelineBatch;
+
+/**
+ * A batch written to a pooled NativeCpuGcHeap, waiting to run on num_cores
+ * workers.
+ */
+public class NativeCpuBatch extends PipelineBatch {
+
+  private NativeCpuGcHeap m_Heap;
+  private int m_NumCores;
+
+  public NativeCpuBatch(NativeCpuGcHeap heap, int count, int num_cores){
+    super(heap.getWriteResult().getJobsToEnqueue(), count, 
+      count > 0 && heap.getBlocks().get(0).writesStatics());
+    m_Heap = heap;
+    m_NumCores = num_cores;
+  }
+
+  public NativeCpuGcHeap getHeap(){
+    return m_Heap;
+  }
+
+  public int getNumCores(){
+    return m_NumCores;
+  }
+}
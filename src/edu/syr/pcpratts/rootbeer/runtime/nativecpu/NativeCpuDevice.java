@@ -7,29 +7,40 @@
 
 package edu.syr.pcpratts.rootbeer.runtime.nativecpu;
 
+import edu.syr.pcpratts.rootbeer.configuration.Configuration;
 import edu.syr.pcpratts.rootbeer.configuration.RootbeerPaths;
 import edu.syr.pcpratts.rootbeer.util.WindowsCompile;
 import edu.syr.pcpratts.rootbeer.runtime.PartiallyCompletedParallelJob;
+import edu.syr.pcpratts.rootbeer.runtime.PipelineBatch;
 import edu.syr.pcpratts.rootbeer.runtime.Kernel;
 import edu.syr.pcpratts.rootbeer.runtime.CompiledKernel;
 import edu.syr.pcpratts.rootbeer.runtime.Serializer;
+import edu.syr.pcpratts.rootbeer.runtime.ThreadConfig;
 import edu.syr.pcpratts.rootbeer.runtime.gpu.GcHeap;
 import edu.syr.pcpratts.rootbeer.runtime.gpu.GpuDevice;
-import edu.syr.pcpratts.rootbeer.runtime.memory.BasicMemory;
+import edu.syr.pcpratts.rootbeer.runtime.memory.DirectMemory;
 import edu.syr.pcpratts.rootbeer.runtime.memory.Memory;
+import edu.syr.pcpratts.rootbeer.runtime.memory.SegmentedBuffer;
 import edu.syr.pcpratts.rootbeer.util.ResourceReader;
 import java.io.File;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 public class NativeCpuDevice implements GpuDevice {
   
-  private List<CompiledKernel> m_Blocks;
-  private boolean m_nativeCpuInitialized;
+  private NativeCpuHeapPool m_HeapPool;
+  
+  //the jni library and the kernel libraries are loaded once per process
+  private static boolean m_nativeCpuInitialized = false;
+  private static Map<String, Long> m_Entries = new HashMap<String, Long>();
   
   public NativeCpuDevice(){
-    m_nativeCpuInitialized = false;
+    m_HeapPool = new NativeCpuHeapPool(this);
   }
   
   public GcHeap CreateHeap() {
@@ -45,193 +56,331 @@ public class NativeCpuDevice implements GpuDevice {
   }
 
   public PartiallyCompletedParallelJob run(Iterator<Kernel> blocks) {
-    NativeCpuGcHeap heap = new NativeCpuGcHeap(this);
-    int size = heap.writeRuntimeBasicBlocks(blocks);
-    m_Blocks = heap.getBlocks();
-    
+    return run(blocks, null);
+  }
+  
+  /**
+   * The kernels run on Configuration.getNemuThreads() workers, or fewer if
+   * thread_config asks for fewer threads in total.
+   */
+  public PartiallyCompletedParallelJob run(Iterator<Kernel> blocks, ThreadConfig thread_config) {
+    NativeCpuBatch batch = serialize(blocks, thread_config);
+    try {
+      execute(batch);
+      return batch.getHeap().readRuntimeBasicBlocks();
+    } finally {
+      release(batch);
+    }
+  }
+  
+  private int numCores(ThreadConfig thread_config){
+    if(thread_config == null){
+      return Configuration.getNemuThreads();
+    }
+    return numCores(thread_config.getBlockShapeX() * thread_config.getGridShapeX());
+  }
+  
+  private int numCores(int total){
+    int ret = Configuration.getNemuThreads();
+    if(total > 0 && total < ret){
+      ret = total;
+    }
+    return ret;
+  }
+  
+  /**
+   * Writes kernel once and runs it on num_threads threads, each getting
+   * its thread id as the index.
+   */
+  public void runIndexed(CompiledKernel kernel, int num_threads) {
+    NativeCpuGcHeap heap = m_HeapPool.acquire();
+    try {
+      boolean written = heap.writeIndexedKernel(kernel, num_threads);
+      while(written == false && heap.canGrow()){
+        heap.reset();
+        written = heap.writeIndexedKernel(kernel, num_threads);
+      }
+      if(written == false){
+        throw new OutOfMemoryError("the kernel does not fit in the heap");
+      }
+      execute(heap, num_threads, numCores(num_threads));
+      heap.readIndexedKernel();
+    } finally {
+      m_HeapPool.release(heap);
+    }
+  }
+  
+  /**
+   * Writes a prefix of blocks into a heap from the pool. Every heap in 
+   * flight can grow up to Configuration.getNemuHeapCeiling().
+   */
+  public NativeCpuBatch serialize(Iterator<Kernel> blocks, ThreadConfig thread_config) {
+    NativeCpuGcHeap heap = m_HeapPool.acquire();
+    boolean written = false;
+    try {
+      int size = heap.writeRuntimeBasicBlocks(blocks);
+      while(size == 0 && heap.toSpaceExhausted() && heap.canGrow()){
+        //not even one kernel fit, grow now rather than on the next run
+        blocks = heap.getWriteResult().getJobsToEnqueue();
+        heap.reset();
+        size = heap.writeRuntimeBasicBlocks(blocks);
+      }
+      written = true;
+      return new NativeCpuBatch(heap, size, numCores(thread_config));
+    } finally {
+      if(written == false){
+        m_HeapPool.release(heap);
+      }
+    }
+  }
+  
+  public void execute(PipelineBatch pipeline_batch) {
+    NativeCpuBatch batch = (NativeCpuBatch) pipeline_batch;
+    execute(batch.getHeap(), batch.getCount(), batch.getNumCores());
+  }
+  
+  /**
+   * Heaps are written and read concurrently, but the workers run one batch
+   * at a time for every caller.
+   */
+  private synchronized void execute(NativeCpuGcHeap heap, int num_threads, int num_cores) {
     List<Memory> mems = heap.getMemory();    
-    String lib_name = compileNativeCpuDev();
-    BasicMemory to_space = (BasicMemory) mems.get(0);
-    BasicMemory handles = (BasicMemory) mems.get(1);
-    BasicMemory heap_end_ptr = (BasicMemory) mems.get(2);
-    BasicMemory gc_info = (BasicMemory) mems.get(3);
-    BasicMemory exceptions = (BasicMemory) mems.get(4);
+    long entry = loadKernel(heap.getBlocks());
+    DirectMemory to_space = (DirectMemory) mems.get(0);
+    DirectMemory handles = (DirectMemory) mems.get(1);
+    DirectMemory heap_end_ptr = (DirectMemory) mems.get(2);
+    DirectMemory gc_info = (DirectMemory) mems.get(3);
+    DirectMemory exceptions = (DirectMemory) mems.get(4);
     
-    Serializer serializer = heap.getSerializer();
-    runOnCpu(to_space.getBuffer(), to_space.getBuffer().size(), handles.getBuffer().get(0), heap_end_ptr.getBuffer().get(0),
-      gc_info.getBuffer().get(0), exceptions.getBuffer().get(0), serializer.getClassRefArray(), size, lib_name);
+    SegmentedBuffer to_space_buffer = to_space.getSegments();
+    ByteBuffer[] to_space_segments = new ByteBuffer[to_space_buffer.numSegments()];
+    for(int i = 0; i < to_space_segments.length; ++i){
+      to_space_segments[i] = to_space_buffer.segment(i);
+    }
     
-    PartiallyCompletedParallelJob ret = heap.readRuntimeBasicBlocks();    
-    return ret;
+    Serializer serializer = heap.getSerializer();
+    runOnCpu(to_space_segments, 1L << SegmentedBuffer.DEFAULT_SHIFT, 
+      handles.getSegments().segment(0), heap_end_ptr.getSegments().segment(0),
+      gc_info.getSegments().segment(0), exceptions.getSegments().segment(0), 
+      serializer.getClassRefArray(), num_threads, num_cores, entry);
+  }
+  
+  public List<Kernel> deserialize(PipelineBatch pipeline_batch) {
+    NativeCpuBatch batch = (NativeCpuBatch) pipeline_batch;
+    return batch.getHeap().readRuntimeBasicBlocks().getActiveJobs();
+  }
+  
+  public void release(PipelineBatch pipeline_batch) {
+    NativeCpuBatch batch = (NativeCpuBatch) pipeline_batch;
+    m_HeapPool.release(batch.getHeap());
   }
   
-  private native void runOnCpu(List<byte[]> to_space, int to_space_size, 
-    byte[] handles, byte[] heap_end_ptr, byte[] gc_info, byte[] exceptions, 
-    int[] java_lang_class_refs, int num_threads, String library_name);
+  /**
+   * All buffers are direct. space_size is the size of every to_space segment
+   * except the last and is what the kernel divides handles by. entry is the
+   * address returned by loadEntry. The kernels are spread over num_cores
+   * workers that are kept alive between calls.
+   */
+  private native void runOnCpu(ByteBuffer[] to_space, long space_size, 
+    ByteBuffer handles, ByteBuffer heap_end_ptr, ByteBuffer gc_info, 
+    ByteBuffer exceptions, int[] java_lang_class_refs, int num_threads, 
+    int num_cores, long entry);
+  
+  /**
+   * Loads library_name and returns the address of its entry function. The
+   * library is never unloaded.
+   */
+  private native long loadEntry(String library_name);
 
   public long getMaxMemoryAllocSize() {
     return 1024*1024*1024;
   }
   
-  private void extractFromNative(String filename, String nemu) throws Exception {
-    String str = ResourceReader.getResource("/edu/syr/pcpratts/rootbeer/runtime2/native/"+filename);
-    PrintWriter writer = new PrintWriter(nemu+filename);
-    writer.println(str);
-    writer.flush();
-    writer.close();
+  private boolean isMac(){
+    return "Mac OS X".equals(System.getProperty("os.name"));
   }
   
-  private String compileMac(File nemu_file) throws Exception {
-    String nemu = nemu_file.getAbsolutePath()+File.separator;
-    
-    String name = "libnemu";
-    
-    int status;
-    String cmd;
-    Process p;
-    
-    String cflags = "-fno-common -Os -arch i386 -arch x86_64 -c";
-    
-    if(m_nativeCpuInitialized == false){
-      cmd = "llvm-gcc "+cflags+" -I/System/Library/Frameworks/JavaVM.framework/Versions/A/Headers "+nemu+"NativeCpuDevice.c -o "+nemu+"NativeCpuDevice.o"; 
-      p = Runtime.getRuntime().exec(cmd, null, nemu_file);
-      status = p.waitFor();
-      if(status != 0){
-        System.out.println("Compilation failure!");
-        System.out.println(cmd);
-        System.exit(-1);
+  private boolean isUnix(){
+    return File.separator.equals("/");
+  }
+  
+  /**
+   * @return the optimization and debug flags, part of every cache key
+   */
+  private String optionFlags(){
+    boolean debug = Configuration.getNemuDebug();
+    if(isUnix()){
+      if(debug){
+        return "-ggdb -g -O0";
+      }
+      if(Configuration.getNemuNativeArch()){
+        return "-O3 -march=native";
       }
-      p.destroy();
+      return "-O3";
+    } else {
+      if(debug){
+        return "/Zi /Od";
+      }
+      return "/O2";
     }
-    
-    cmd = "llvm-gcc "+cflags+" -lpthread "+nemu+"generated.c -o "+nemu+"generated.o";
-    p = Runtime.getRuntime().exec(cmd, null, nemu_file);
-    status = p.waitFor();
-    if(status != 0){
-      System.out.println("Compilation failure!");
-      System.out.println(cmd);
-      System.exit(-1);
+  }
+  
+  /**
+   * Returns the directory a library built from code with flags is cached in.
+   * The name is a hash of both so a change to either builds a new library.
+   */
+  private File cacheFolder(String code, String flags) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("SHA-1");
+    digest.update(System.getProperty("os.name").getBytes("UTF-8"));
+    digest.update(System.getProperty("os.arch").getBytes("UTF-8"));
+    digest.update(flags.getBytes("UTF-8"));
+    digest.update(code.getBytes("UTF-8"));
+    StringBuilder hex = new StringBuilder();
+    for(byte b : digest.digest()){
+      hex.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
     }
-    p.destroy();
-    
-    String ldflags = "-arch i386 -arch x86_64 -dynamiclib";
-    
-    if(m_nativeCpuInitialized == false){
-      cmd = "llvm-gcc "+ldflags+" -o "+nemu+"nativecpudev.dylib -dylib "+nemu+"NativeCpuDevice.o -lc";
-      p = Runtime.getRuntime().exec(cmd, null, nemu_file);
-      status = p.waitFor();
-      if(status != 0){
-        System.out.println("Compilation failure!");
-        System.out.println(cmd);
-        System.exit(-1);
-      }
-      p.destroy();
+    File ret = new File(RootbeerPaths.v().getRootbeerHome()+"nemu"+File.separator+hex.toString());
+    if(ret.exists() == false){
+      ret.mkdirs();
     }
-    
-    cmd = "llvm-gcc "+ldflags+" -o "+nemu+name+".dylib -dylib "+nemu+"generated.o -lc";
-    p = Runtime.getRuntime().exec(cmd, null, nemu_file);
-    status = p.waitFor();
+    return ret;
+  }
+  
+  private void execute(String cmd, File folder) throws Exception {
+    Process p = Runtime.getRuntime().exec(cmd, null, folder);
+    int status = p.waitFor();
     if(status != 0){
       System.out.println("Compilation failure!");
       System.out.println(cmd);
       System.exit(-1);
     }
     p.destroy();
-
-    if(m_nativeCpuInitialized == false){
-      File f1 = new File(nemu+"nativecpudev.dylib");
-      System.load(f1.getAbsolutePath());  
-      m_nativeCpuInitialized = true;
+  }
+  
+  /**
+   * Libraries are linked to a temporary name and renamed so other processes
+   * sharing the cache never load a partly written file.
+   */
+  private void publish(File temp, File lib){
+    if(temp.renameTo(lib) == false && lib.exists() == false){
+      throw new RuntimeException("unable to write: "+lib.getAbsolutePath());
     }
-
-    File f2 = new File(nemu+name+".dylib");
-    return f2.getAbsolutePath();
   }
   
-  private String compileLinux(File nemu_file) throws Exception {
-    String nemu = nemu_file.getAbsolutePath()+File.separator;
-
-    String name = "libnemu";
-
-    int status;
-    String cmd;
-    Process p;
+  private String libraryName(String name){
+    if(isMac()){
+      return name+".dylib";
+    } else if(isUnix()){
+      return name+".so.1";
+    } else {
+      return name+".dll";
+    }
+  }
+  
+  private String readNative(String filename) throws Exception {
+    return ResourceReader.getResource("/edu/syr/pcpratts/rootbeer/runtime2/native/"+filename);
+  }
+  
+  private void writeFile(File file, String contents) throws Exception {
+    PrintWriter writer = new PrintWriter(file);
+    writer.println(contents);
+    writer.flush();
+    writer.close();
+  }
+  
+  /**
+   * Writes contents to a new uniquely named file in folder, so processes 
+   * building into the same cache folder never write each other's inputs.
+   */
+  private File writeTempFile(File folder, String prefix, String suffix, 
+    String contents) throws Exception {
     
-    if(m_nativeCpuInitialized == false){
-      cmd = "gcc -ggdb -Wall -fPIC -g -c -I/usr/lib/jvm/java-6-openjdk/include/ -I/usr/lib/jvm/java-6-openjdk/include/linux "+nemu+"NativeCpuDevice.c -o "+nemu+"NativeCpuDevice.o";
-      p = Runtime.getRuntime().exec(cmd, null, nemu_file);
-      status = p.waitFor();
-      if(status != 0){
-        System.out.println("Compilation failure!");
-        System.out.println(cmd);
-        System.exit(-1);
-      }
-      p.destroy();
+    File ret = File.createTempFile(prefix, suffix, folder);
+    writeFile(ret, contents);
+    return ret;
+  }
+  
+  /**
+   * Writes a file that has to keep its name, like a header that sources
+   * include, unless it is already in folder.
+   */
+  private void writeNamedFile(File folder, String filename, String contents) throws Exception {
+    File file = new File(folder, filename);
+    if(file.exists()){
+      return;
     }
-
-    cmd = "gcc -ggdb -fPIC -Wall -g -c -lpthread "+nemu+"generated.c -o "+nemu+"generated.o";
-    p = Runtime.getRuntime().exec(cmd, null, nemu_file);
-    status = p.waitFor();
-    if(status != 0){
-      System.out.println("Compilation failure!");
-      System.out.println(cmd);
-      System.exit(-1);
+    publish(writeTempFile(folder, filename, ".tmp", contents), file);
+  }
+  
+  private String jniIncludes(){
+    if(isMac()){
+      return "-I/System/Library/Frameworks/JavaVM.framework/Versions/A/Headers";
+    } else if(isUnix()){
+      return "-I/usr/lib/jvm/java-6-openjdk/include/ -I/usr/lib/jvm/java-6-openjdk/include/linux";
+    } else {
+      String jdk_path = new WindowsCompile().jdkPath();
+      return "/I\""+jdk_path+"\\include\" /I\""+jdk_path+"\\include\\win32\"";
     }
-    p.destroy();
-
-    cmd = "gcc -shared -Wl,-soname,"+name+" -o "+nemu+name+".so.1 "+nemu+"generated.o -lc";
-    p = Runtime.getRuntime().exec(cmd, null, nemu_file);
-    status = p.waitFor();
-    if(status != 0){
-      System.out.println("Compilation failure!");
-      System.out.println(cmd);
-      System.exit(-1);
+  }
+  
+  private String compileFlags(String flags){
+    if(isMac()){
+      return "-fno-common "+flags+" -arch i386 -arch x86_64";
+    } else {
+      return "-fPIC -Wall "+flags;
     }
-    p.destroy();
-
-    if(m_nativeCpuInitialized == false){
-      cmd = "gcc -shared -Wl,-soname,nativecpudev -o "+nemu+"nativecpudev.so.1 "+nemu+"NativeCpuDevice.o "+nemu+"generated.o -lc";
-      p = Runtime.getRuntime().exec(cmd, null, nemu_file);
-      status = p.waitFor();
-      if(status != 0){
-        System.out.println("Compilation failure!");
-        System.out.println(cmd);
-        System.exit(-1);
-      }
-      p.destroy();
+  }
+  
+  private String linkFlags(){
+    if(isMac()){
+      return "-arch i386 -arch x86_64 -dynamiclib";
+    } else {
+      return "-shared";
     }
-
-    if(m_nativeCpuInitialized == false){
-      File f1 = new File(nemu+"nativecpudev.so.1");
-      System.load(f1.getAbsolutePath());  
-      m_nativeCpuInitialized = true;
+  }
+  
+  private String compilerName(){
+    if(isMac()){
+      return "llvm-gcc";
+    } else {
+      return "gcc";
     }
-
-    File f2 = new File(nemu+name+".so.1");
-    return f2.getAbsolutePath();
   }
   
-  private String compileWindows(File nemu_file){
-    String nemu = nemu_file.getAbsolutePath()+File.separator;
-    String name = "libnemu";
+  /**
+   * Builds a library from one c file into folder unless it is already there.
+   * The source and the object file are deleted afterwards.
+   * @return the library
+   */
+  private File buildLibrary(File folder, File source, String name, String flags, 
+    String includes) throws Exception {
     
-    WindowsCompile compiler = new WindowsCompile();
-    String jdk_path = compiler.jdkPath();
-  
-    if(m_nativeCpuInitialized == false){
-      windowsCompile("cl /I\""+jdk_path+"\\include\" /I\""+jdk_path+"\\include\\win32\" "+nemu+"NativeCpuDevice.c /link /DLL /OUT:\""+nemu+"nativecpudevice.dll\" /MACHINE:X64");
+    File lib = new File(folder, libraryName(name));
+    if(lib.exists()){
+      source.delete();
+      return lib;
     }
-    
-    windowsCompile("cl /I\""+jdk_path+"\\include\" /I\""+jdk_path+"\\include\\win32\" "+nemu+"generated.c /link /DLL /OUT:\""+nemu+"libnemu.dll\" /MACHINE:X64");
-  
-    if(m_nativeCpuInitialized == false){
-      File f1 = new File(nemu+"nativecpudevice.dll");
-      System.load(f1.getAbsolutePath());
-      m_nativeCpuInitialized = true;
+    File temp = File.createTempFile(libraryName(name), ".tmp", folder);
+    File obj = File.createTempFile(name, ".o", folder);
+    try {
+      if(isUnix()){
+        String cc = compilerName();
+        execute(cc+" "+compileFlags(flags)+" -c "+includes+" "+source.getAbsolutePath()+" -o "+obj.getAbsolutePath(), folder);
+        String soname = "";
+        if(isMac() == false){
+          soname = " -Wl,-soname,"+name;
+        }
+        execute(cc+" "+linkFlags()+soname+" -o "+temp.getAbsolutePath()+" "+obj.getAbsolutePath()+" -lc -lpthread", folder);
+      } else {
+        windowsCompile("cl "+flags+" "+includes+" "+source.getAbsolutePath()+" /link /DLL /OUT:\""+temp.getAbsolutePath()+"\" /MACHINE:X64");
+      }
+      publish(temp, lib);
+    } finally {
+      source.delete();
+      obj.delete();
+      temp.delete();
     }
-    
-    File f2 = new File(nemu+name+".dll");
-    return f2.getAbsolutePath();
+    return lib;
   }
   
   private void windowsCompile(String cmd){
@@ -245,43 +394,64 @@ public class NativeCpuDevice implements GpuDevice {
       System.exit(-1);
     }
   }
+  
+  private void loadNativeCpuDev() throws Exception {
+    if(m_nativeCpuInitialized){
+      return;
+    }
+    String header_name = "edu_syr_pcpratts_rootbeer_runtime_nativecpu_NativeCpuDevice.h";
+    String source = readNative("NativeCpuDevice.c");
+    String header = readNative(header_name);
+    String flags = optionFlags();
+    File folder = cacheFolder(header+source, flags);
+    File lib = new File(folder, libraryName("nativecpudev"));
+    if(lib.exists() == false){
+      writeNamedFile(folder, header_name, header);
+      File source_file = writeTempFile(folder, "NativeCpuDevice", ".c", source);
+      lib = buildLibrary(folder, source_file, "nativecpudev", flags, jniIncludes());
+    }
+    System.load(lib.getAbsolutePath());
+    m_nativeCpuInitialized = true;
+  }
 
-  private String compileNativeCpuDev() {
+  /**
+   * Returns the entry function of the kernel library for blocks. Kernel
+   * libraries are cached on disk by a hash of their code and flags and
+   * loaded at most once per process.
+   */
+  private long loadKernel(List<CompiledKernel> blocks) {
     try {
-      String code = "";
-      if ("Mac OS X".equals(System.getProperty("os.name"))){
-        code = m_Blocks.get(0).getCodeUnix();
-      } else if(File.separator.equals("/")){
-        code = m_Blocks.get(0).getCodeUnix();
+      String code;
+      if(isUnix()){
+        code = blocks.get(0).getCodeUnix();
       } else { 
-        code = m_Blocks.get(0).getCodeWindows();
-      }    
-      
-      File nemu_file = new File(RootbeerPaths.v().getRootbeerHome()+"nemu");
-      if(nemu_file.exists() == false){
-        nemu_file.mkdirs();  
+        code = blocks.get(0).getCodeWindows();
+      }
+      String flags = optionFlags();
+      synchronized(m_Entries){
+        loadNativeCpuDev();
+        String key = flags+code;
+        Long entry = m_Entries.get(key);
+        if(entry != null){
+          return entry;
+        }
+        File folder = cacheFolder(code, flags);
+        File lib = new File(folder, libraryName("libnemu"));
+        if(lib.exists() == false){
+          File source = writeTempFile(folder, "generated", ".c", code);
+          lib = buildLibrary(folder, source, "libnemu", flags, "");
+        }
+        entry = loadEntry(lib.getAbsolutePath());
+        if(entry == 0){
+          throw new RuntimeException("unable to load: "+lib.getAbsolutePath());
+        }
+        m_Entries.put(key, entry);
+        return entry;
       }
-      
-      String nemu = nemu_file.getAbsolutePath()+File.separator;
-      extractFromNative("NativeCpuDevice.c", nemu);
-      extractFromNative("edu_syr_pcpratts_rootbeer_runtime_nativecpu_NativeCpuDevice.h", nemu);
-      
-      PrintWriter writer = new PrintWriter(nemu+"generated.c");
-      writer.println(code);
-      writer.flush();
-      writer.close();
-      
-      if ("Mac OS X".equals(System.getProperty("os.name"))){
-        return compileMac(nemu_file); 
-      } else if(File.separator.equals("/")){
-        return compileLinux(nemu_file);
-      } else { 
-        return compileWindows(nemu_file);
-      }      
     } catch(Exception ex){
       ex.printStackTrace();
       System.exit(0);
-      return null;
+      return 0;
     }
   }
 
@@ -7,18 +7,20 @@
 
 package edu.syr.pcpratts.rootbeer.runtime.nativecpu;
 
+import edu.syr.pcpratts.rootbeer.configuration.Configuration;
 import edu.syr.pcpratts.rootbeer.runtime.Serializer;
 import edu.syr.pcpratts.rootbeer.runtime.gpu.GcHeap;
 import edu.syr.pcpratts.rootbeer.runtime.gpu.GpuDevice;
-import edu.syr.pcpratts.rootbeer.runtime.memory.BasicMemory;
-import edu.syr.pcpratts.rootbeer.runtime.memory.BasicSwappedMemory;
-import edu.syr.pcpratts.rootbeer.runtime.memory.BasicUnswappedMemory;
+import edu.syr.pcpratts.rootbeer.runtime.memory.DirectMemory;
 import edu.syr.pcpratts.rootbeer.runtime.memory.Memory;
+import edu.syr.pcpratts.rootbeer.runtime.memory.SegmentedBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 public class NativeCpuGcHeap extends GcHeap {
 
+  public static final long INITIAL_TO_SPACE_SIZE = 64L*1024L*1024L;
+  
   public NativeCpuGcHeap(GpuDevice device){
     super(device);  
     allocateMemory();
@@ -27,12 +29,61 @@ public class NativeCpuGcHeap extends GcHeap {
   @Override
   protected void allocateMemory() {
     mBufferSize = 32*1024*1024L;
-    mToSpaceMemory = new BasicSwappedMemory(512L*1024L*1024L);
-    mTextureMemory = new BasicSwappedMemory(mBufferSize);
-    mHandlesMemory = new BasicSwappedMemory(mBufferSize);
-    mHeapEndPtrMemory = new BasicSwappedMemory(8);
-    mGcInfoSpaceMemory = new BasicSwappedMemory(mGcInfoSpaceSize);
-    mExceptionsMemory = new BasicSwappedMemory(mBufferSize);
+    mToSpaceSize = Math.min(INITIAL_TO_SPACE_SIZE, Configuration.getNemuHeapCeiling());
+    mToSpaceMemory = new DirectMemory(mToSpaceSize);
+    mTextureMemory = new DirectMemory(mBufferSize);
+    mHandlesMemory = new DirectMemory(mBufferSize);
+    mHeapEndPtrMemory = new DirectMemory(8);
+    mGcInfoSpaceMemory = new DirectMemory(mGcInfoSpaceSize);
+    mExceptionsMemory = new DirectMemory(mBufferSize);
+  }
+
+  /**
+   * Resets the heap for the next run. If the last run filled the to-space it
+   * is doubled, up to Configuration.getNemuHeapCeiling().
+   */
+  @Override
+  public void reset(){
+    if(toSpaceExhausted()){
+      grow();
+    }
+    super.reset();
+  }
+  
+  /**
+   * @return true if the to-space can still grow
+   */
+  public boolean canGrow(){
+    return mToSpaceSize < Configuration.getNemuHeapCeiling();
+  }
+  
+  private void grow(){
+    if(canGrow() == false){
+      return;
+    }
+    mToSpaceSize = Math.min(mToSpaceSize * 2, Configuration.getNemuHeapCeiling());
+    mToSpaceMemory = new DirectMemory(mToSpaceSize);
+    discardViews();
+  }
+
+  @Override
+  protected Memory createView(Memory mem) {
+    DirectMemory direct_mem = (DirectMemory) mem;
+    return direct_mem.createView();
+  }
+
+  /**
+   * The kernel only sees the first segment of the exceptions buffer
+   */
+  @Override
+  protected void ensureExceptionsSize(long size) {
+    if(size <= ((DirectMemory) mExceptionsMemory).size()){
+      return;
+    }
+    if(size > (1L << SegmentedBuffer.DEFAULT_SHIFT)){
+      throw new IllegalArgumentException("too many threads for one run: "+(size / 8));
+    }
+    mExceptionsMemory = new DirectMemory(size);
   }
 
   @Override
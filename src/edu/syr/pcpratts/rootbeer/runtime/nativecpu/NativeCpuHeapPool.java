@@ -0,0 +1,39 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime.nativecpu;
+
+import edu.syr.pcpratts.rootbeer.runtime.gpu.GpuDevice;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps native cpu heaps across runs so their off-heap buffers are allocated
+ * once. Heaps are reset when they are released.
+ */
+public class NativeCpuHeapPool {
+
+  private final GpuDevice m_Device;
+  private final List<NativeCpuGcHeap> m_Idle;
+
+  public NativeCpuHeapPool(GpuDevice device){
+    m_Device = device;
+    m_Idle = new ArrayList<NativeCpuGcHeap>();
+  }
+
+  public synchronized NativeCpuGcHeap acquire(){
+    if(m_Idle.isEmpty()){
+      return new NativeCpuGcHeap(m_Device);
+    }
+    return m_Idle.remove(m_Idle.size() - 1);
+  }
+
+  public synchronized void release(NativeCpuGcHeap heap){
+    heap.reset();
+    m_Idle.add(heap);
+  }
+}
@@ -7,18 +7,21 @@
 
 package edu.syr.pcpratts.rootbeer.runtime.nativecpu;
 
-import edu.syr.pcpratts.rootbeer.runtime.ParallelRuntime;
+import edu.syr.pcpratts.rootbeer.runtime.CompiledKernel;
 import edu.syr.pcpratts.rootbeer.runtime.PartiallyCompletedParallelJob;
+import edu.syr.pcpratts.rootbeer.runtime.PipelineBatch;
+import edu.syr.pcpratts.rootbeer.runtime.StagedRuntime;
 import edu.syr.pcpratts.rootbeer.runtime.Kernel;
 import edu.syr.pcpratts.rootbeer.runtime.Rootbeer;
 import edu.syr.pcpratts.rootbeer.runtime.ThreadConfig;
 import java.util.Iterator;
+import java.util.List;
 
-public class NativeCpuRuntime implements ParallelRuntime {
+public class NativeCpuRuntime implements StagedRuntime {
 
   private static NativeCpuRuntime m_Instance = null;
   
-  public static NativeCpuRuntime v(){
+  public static synchronized NativeCpuRuntime v(){
     if(m_Instance == null)
       m_Instance = new NativeCpuRuntime();
     return m_Instance;
@@ -31,7 +34,27 @@ public class NativeCpuRuntime implements ParallelRuntime {
   }
   
   public PartiallyCompletedParallelJob run(Iterator<Kernel> blocks, Rootbeer rootbeer, ThreadConfig thread_config) {
-    return m_Device.run(blocks);
+    return m_Device.run(blocks, thread_config);
+  }
+
+  public PipelineBatch serialize(Iterator<Kernel> jobs, ThreadConfig thread_config) {
+    return m_Device.serialize(jobs, thread_config);
+  }
+
+  public void execute(PipelineBatch batch) {
+    m_Device.execute(batch);
+  }
+
+  public List<Kernel> deserialize(PipelineBatch batch) {
+    return m_Device.deserialize(batch);
+  }
+
+  public void release(PipelineBatch batch) {
+    m_Device.release(batch);
+  }
+
+  public void runIndexed(CompiledKernel kernel, int num_threads) {
+    m_Device.runIndexed(kernel, num_threads);
   }
 
   public boolean isGpuPresent() {
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime.util;
+
+/**
+ * Maps classes to the dense type ids the generated serializers switch on.
+ * An id is learned the first time an object of a class is dispatched.
+ * Not thread safe, every serializer keeps its own cache.
+ */
+public class ClassIdCache {
+
+  private Class<?>[] m_Keys;
+  private int[] m_Values;
+  private int m_Size;
+
+  public ClassIdCache(){
+    m_Keys = new Class<?>[16];
+    m_Values = new int[16];
+    m_Size = 0;
+  }
+
+  /**
+   * @return the id of cls or -1 if it is not known yet
+   */
+  public int get(Class<?> cls){
+    int mask = m_Keys.length - 1;
+    int index = hash(cls) & mask;
+    while(true){
+      Class<?> curr = m_Keys[index];
+      if(curr == cls){
+        return m_Values[index];
+      }
+      if(curr == null){
+        return -1;
+      }
+      index = (index + 1) & mask;
+    }
+  }
+
+  public void put(Class<?> cls, int id){
+    int mask = m_Keys.length - 1;
+    int index = hash(cls) & mask;
+    while(true){
+      Class<?> curr = m_Keys[index];
+      if(curr == cls){
+        m_Values[index] = id;
+        return;
+      }
+      if(curr == null){
+        break;
+      }
+      index = (index + 1) & mask;
+    }
+    m_Keys[index] = cls;
+    m_Values[index] = id;
+    m_Size++;
+    if(m_Size * 2 > m_Keys.length){
+      grow();
+    }
+  }
+
+  private void grow(){
+    Class<?>[] old_keys = m_Keys;
+    int[] old_values = m_Values;
+    m_Keys = new Class<?>[old_keys.length * 2];
+    m_Values = new int[old_keys.length * 2];
+    int mask = m_Keys.length - 1;
+    for(int i = 0; i < old_keys.length; ++i){
+      Class<?> key = old_keys[i];
+      if(key == null){
+        continue;
+      }
+      int index = hash(key) & mask;
+      while(m_Keys[index] != null){
+        index = (index + 1) & mask;
+      }
+      m_Keys[index] = key;
+      m_Values[index] = old_values[i];
+    }
+  }
+
+  private static int hash(Class<?> cls){
+    int h = System.identityHashCode(cls);
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    h ^= (h >>> 13);
+    return h;
+  }
+}
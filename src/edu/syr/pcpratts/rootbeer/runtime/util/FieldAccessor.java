@@ -0,0 +1,307 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import sun.misc.Unsafe;
+
+/**
+ * Reads and writes a field found by (class, name). Accessors are looked up
+ * once per class and field name and then cached. Fields are accessed through
+ * Unsafe offsets when Unsafe is available and through reflection otherwise.
+ */
+public class FieldAccessor {
+
+  private static final Unsafe m_Unsafe = findUnsafe();
+  private static final ConcurrentMap<Class<?>, ConcurrentMap<String, FieldAccessor>> m_Cache =
+    new ConcurrentHashMap<Class<?>, ConcurrentMap<String, FieldAccessor>>();
+  private static final FieldAccessor m_Missing = new FieldAccessor(null);
+
+  private static final int KIND_OBJECT = 0;
+  private static final int KIND_BOOLEAN = 1;
+  private static final int KIND_BYTE = 2;
+  private static final int KIND_CHAR = 3;
+  private static final int KIND_SHORT = 4;
+  private static final int KIND_INT = 5;
+  private static final int KIND_LONG = 6;
+  private static final int KIND_FLOAT = 7;
+  private static final int KIND_DOUBLE = 8;
+
+  private final Field m_Field;
+  private final int m_Kind;
+  private final boolean m_Static;
+  private final Object m_StaticBase;
+  private final long m_Offset;
+
+  /**
+   * @return the accessor of the field called name declared in cls or one of
+   *   its super classes, or null if there is no such field
+   */
+  public static FieldAccessor get(Class<?> cls, String name){
+    ConcurrentMap<String, FieldAccessor> fields = m_Cache.get(cls);
+    if(fields == null){
+      fields = new ConcurrentHashMap<String, FieldAccessor>();
+      ConcurrentMap<String, FieldAccessor> prev = m_Cache.putIfAbsent(cls, fields);
+      if(prev != null){
+        fields = prev;
+      }
+    }
+    FieldAccessor ret = fields.get(name);
+    if(ret == null){
+      ret = find(cls, name);
+      fields.put(name, ret);
+    }
+    if(ret == m_Missing){
+      return null;
+    }
+    return ret;
+  }
+
+  private static FieldAccessor find(Class<?> cls, String name){
+    while(cls != null){
+      Field[] fields = cls.getDeclaredFields();
+      for(Field field : fields){
+        if(field.getName().equals(name)){
+          try {
+            field.setAccessible(true);
+          } catch(RuntimeException ex){
+            //still reachable through Unsafe
+          }
+          return new FieldAccessor(field);
+        }
+      }
+      cls = cls.getSuperclass();
+    }
+    //java.lang.Throwable.backtrace cannot be found this way
+    return m_Missing;
+  }
+
+  private FieldAccessor(Field field){
+    m_Field = field;
+    if(field == null){
+      m_Kind = KIND_OBJECT;
+      m_Static = false;
+      m_StaticBase = null;
+      m_Offset = -1;
+      return;
+    }
+    m_Kind = kindOf(field.getType());
+    m_Static = Modifier.isStatic(field.getModifiers());
+    Object static_base = null;
+    long offset = -1;
+    if(m_Unsafe != null){
+      try {
+        if(m_Static){
+          //reflection would run <clinit> first, unsafe does not
+          Class<?> cls = field.getDeclaringClass();
+          Class.forName(cls.getName(), true, cls.getClassLoader());
+          static_base = m_Unsafe.staticFieldBase(field);
+          offset = m_Unsafe.staticFieldOffset(field);
+        } else {
+          offset = m_Unsafe.objectFieldOffset(field);
+        }
+      } catch(Throwable ex){
+        static_base = null;
+        offset = -1;
+      }
+    }
+    m_StaticBase = static_base;
+    m_Offset = offset;
+  }
+
+  private static int kindOf(Class<?> type){
+    if(type == boolean.class){
+      return KIND_BOOLEAN;
+    } else if(type == byte.class){
+      return KIND_BYTE;
+    } else if(type == char.class){
+      return KIND_CHAR;
+    } else if(type == short.class){
+      return KIND_SHORT;
+    } else if(type == int.class){
+      return KIND_INT;
+    } else if(type == long.class){
+      return KIND_LONG;
+    } else if(type == float.class){
+      return KIND_FLOAT;
+    } else if(type == double.class){
+      return KIND_DOUBLE;
+    } else {
+      return KIND_OBJECT;
+    }
+  }
+
+  private static Unsafe findUnsafe(){
+    try {
+      Field field = Unsafe.class.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      return (Unsafe) field.get(null);
+    } catch(Throwable ex){
+      return null;
+    }
+  }
+
+  private Object base(Object obj){
+    if(m_Static){
+      return m_StaticBase;
+    }
+    return obj;
+  }
+
+  /**
+   * Returns the value of the field, primitives are boxed. obj is ignored for
+   * static fields.
+   */
+  public Object get(Object obj){
+    if(m_Offset == -1){
+      try {
+        return m_Field.get(obj);
+      } catch(IllegalAccessException ex){
+        throw new RuntimeException(ex);
+      }
+    }
+    Object base = base(obj);
+    switch(m_Kind){
+      case KIND_BOOLEAN:
+        return Boolean.valueOf(m_Unsafe.getBoolean(base, m_Offset));
+      case KIND_BYTE:
+        return Byte.valueOf(m_Unsafe.getByte(base, m_Offset));
+      case KIND_CHAR:
+        return Character.valueOf(m_Unsafe.getChar(base, m_Offset));
+      case KIND_SHORT:
+        return Short.valueOf(m_Unsafe.getShort(base, m_Offset));
+      case KIND_INT:
+        return Integer.valueOf(m_Unsafe.getInt(base, m_Offset));
+      case KIND_LONG:
+        return Long.valueOf(m_Unsafe.getLong(base, m_Offset));
+      case KIND_FLOAT:
+        return Float.valueOf(m_Unsafe.getFloat(base, m_Offset));
+      case KIND_DOUBLE:
+        return Double.valueOf(m_Unsafe.getDouble(base, m_Offset));
+      default:
+        return m_Unsafe.getObject(base, m_Offset);
+    }
+  }
+
+  /**
+   * Sets the field, primitives are unboxed. obj is ignored for static fields.
+   */
+  public void set(Object obj, Object value){
+    if(m_Offset == -1 || m_Kind != KIND_OBJECT){
+      try {
+        m_Field.set(obj, value);
+      } catch(IllegalAccessException ex){
+        throw new RuntimeException(ex);
+      }
+      return;
+    }
+    if(value != null && m_Field.getType().isInstance(value) == false){
+      throw new IllegalArgumentException("cannot set "+m_Field+" to "+value.getClass().getName());
+    }
+    m_Unsafe.putObject(base(obj), m_Offset, value);
+  }
+
+  public void setBoolean(Object obj, boolean value){
+    if(m_Offset == -1 || m_Kind != KIND_BOOLEAN){
+      try {
+        m_Field.setBoolean(obj, value);
+      } catch(IllegalAccessException ex){
+        throw new RuntimeException(ex);
+      }
+      return;
+    }
+    m_Unsafe.putBoolean(base(obj), m_Offset, value);
+  }
+
+  public void setByte(Object obj, byte value){
+    if(m_Offset == -1 || m_Kind != KIND_BYTE){
+      try {
+        m_Field.setByte(obj, value);
+      } catch(IllegalAccessException ex){
+        throw new RuntimeException(ex);
+      }
+      return;
+    }
+    m_Unsafe.putByte(base(obj), m_Offset, value);
+  }
+
+  public void setChar(Object obj, char value){
+    if(m_Offset == -1 || m_Kind != KIND_CHAR){
+      try {
+        m_Field.setChar(obj, value);
+      } catch(IllegalAccessException ex){
+        throw new RuntimeException(ex);
+      }
+      return;
+    }
+    m_Unsafe.putChar(base(obj), m_Offset, value);
+  }
+
+  public void setShort(Object obj, short value){
+    if(m_Offset == -1 || m_Kind != KIND_SHORT){
+      try {
+        m_Field.setShort(obj, value);
+      } catch(IllegalAccessException ex){
+        throw new RuntimeException(ex);
+      }
+      return;
+    }
+    m_Unsafe.putShort(base(obj), m_Offset, value);
+  }
+
+  public void setInt(Object obj, int value){
+    if(m_Offset == -1 || m_Kind != KIND_INT){
+      try {
+        m_Field.setInt(obj, value);
+      } catch(IllegalAccessException ex){
+        throw new RuntimeException(ex);
+      }
+      return;
+    }
+    m_Unsafe.putInt(base(obj), m_Offset, value);
+  }
+
+  public void setLong(Object obj, long value){
+    if(m_Offset == -1 || m_Kind != KIND_LONG){
+      try {
+        m_Field.setLong(obj, value);
+      } catch(IllegalAccessException ex){
+        throw new RuntimeException(ex);
+      }
+      return;
+    }
+    m_Unsafe.putLong(base(obj), m_Offset, value);
+  }
+
+  public void setFloat(Object obj, float value){
+    if(m_Offset == -1 || m_Kind != KIND_FLOAT){
+      try {
+        m_Field.setFloat(obj, value);
+      } catch(IllegalAccessException ex){
+        throw new RuntimeException(ex);
+      }
+      return;
+    }
+    m_Unsafe.putFloat(base(obj), m_Offset, value);
+  }
+
+  public void setDouble(Object obj, double value){
+    if(m_Offset == -1 || m_Kind != KIND_DOUBLE){
+      try {
+        m_Field.setDouble(obj, value);
+      } catch(IllegalAccessException ex){
+        throw new RuntimeException(ex);
+      }
+      return;
+    }
+    m_Unsafe.putDouble(base(obj), m_Offset, value);
+  }
+}
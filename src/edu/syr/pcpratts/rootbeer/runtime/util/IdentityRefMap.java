@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime.util;
+
+import edu.syr.pcpratts.rootbeer.runtime.memory.Memory;
+
+/**
+ * Maps objects by identity to their to-space refs. The table is split into
+ * independently locked open addressing segments so serializer threads
+ * visiting different objects rarely contend. Refs are stored as primitive
+ * longs.
+ */
+public class IdentityRefMap {
+
+  /**
+   * Set in the result of getOrAllocate when the ref was just allocated. Refs
+   * are 16 byte aligned so the low bit is never part of a ref.
+   */
+  public static final long NEW_REF = 1;
+
+  private static final int m_NumSegments = 64;
+  private final Segment[] m_Segments;
+
+  public IdentityRefMap(){
+    m_Segments = new Segment[m_NumSegments];
+    for(int i = 0; i < m_NumSegments; ++i){
+      m_Segments[i] = new Segment();
+    }
+  }
+
+  /**
+   * Returns the ref of key. If key has no ref yet, size bytes are allocated
+   * from mem and the returned ref has NEW_REF set.
+   */
+  public long getOrAllocate(Object key, int size, Memory mem){
+    int hash = hash(key);
+    Segment segment = m_Segments[hash & (m_NumSegments - 1)];
+    return segment.getOrAllocate(key, hash >>> 6, size, mem);
+  }
+
+  public long get(Object key){
+    int hash = hash(key);
+    Segment segment = m_Segments[hash & (m_NumSegments - 1)];
+    return segment.get(key, hash >>> 6);
+  }
+
+  /**
+   * Maps key to a ref that was allocated elsewhere
+   */
+  public void put(Object key, long ref){
+    int hash = hash(key);
+    Segment segment = m_Segments[hash & (m_NumSegments - 1)];
+    segment.put(key, hash >>> 6, ref);
+  }
+
+  private static int hash(Object key){
+    int h = System.identityHashCode(key);
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    h ^= (h >>> 13);
+    return h;
+  }
+
+  private static class Segment {
+
+    private Object[] m_Keys;
+    private long[] m_Values;
+    private int m_Size;
+
+    public Segment(){
+      m_Keys = new Object[16];
+      m_Values = new long[16];
+      m_Size = 0;
+    }
+
+    public synchronized long get(Object key, int hash){
+      int mask = m_Keys.length - 1;
+      int index = hash & mask;
+      while(true){
+        Object curr = m_Keys[index];
+        if(curr == key){
+          return m_Values[index];
+        }
+        if(curr == null){
+          return -1;
+        }
+        index = (index + 1) & mask;
+      }
+    }
+
+    public synchronized long getOrAllocate(Object key, int hash, int size, Memory mem){
+      int mask = m_Keys.length - 1;
+      int index = hash & mask;
+      while(true){
+        Object curr = m_Keys[index];
+        if(curr == key){
+          return m_Values[index];
+        }
+        if(curr == null){
+          break;
+        }
+        index = (index + 1) & mask;
+      }
+      long ref = mem.mallocWithSize(size);
+      m_Keys[index] = key;
+      m_Values[index] = ref;
+      m_Size++;
+      if(m_Size * 2 > m_Keys.length){
+        grow();
+      }
+      return ref | NEW_REF;
+    }
+
+    public synchronized void put(Object key, int hash, long ref){
+      int mask = m_Keys.length - 1;
+      int index = hash & mask;
+      while(true){
+        Object curr = m_Keys[index];
+        if(curr == key){
+          m_Values[index] = ref;
+          return;
+        }
+        if(curr == null){
+          break;
+        }
+        index = (index + 1) & mask;
+      }
+      m_Keys[index] = key;
+      m_Values[index] = ref;
+      m_Size++;
+      if(m_Size * 2 > m_Keys.length){
+        grow();
+      }
+    }
+
+    private void grow(){
+      Object[] old_keys = m_Keys;
+      long[] old_values = m_Values;
+      m_Keys = new Object[old_keys.length * 2];
+      m_Values = new long[old_keys.length * 2];
+      int mask = m_Keys.length - 1;
+      for(int i = 0; i < old_keys.length; ++i){
+        Object key = old_keys[i];
+        if(key == null){
+          continue;
+        }
+        int index = (hash(key) >>> 6) & mask;
+        while(m_Keys[index] != null){
+          index = (index + 1) & mask;
+        }
+        m_Keys[index] = key;
+        m_Values[index] = old_values[i];
+      }
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime.util;
+
+/**
+ * Maps to-space refs to objects without boxing the refs. Like IdentityRefMap
+ * the table is split into independently locked open addressing segments.
+ * Null values are not stored.
+ */
+public class RefObjectMap {
+
+  private static final int m_NumSegments = 64;
+  private final Segment[] m_Segments;
+
+  public RefObjectMap(){
+    m_Segments = new Segment[m_NumSegments];
+    for(int i = 0; i < m_NumSegments; ++i){
+      m_Segments[i] = new Segment();
+    }
+  }
+
+  public Object get(long ref){
+    int hash = hash(ref);
+    return m_Segments[hash & (m_NumSegments - 1)].get(ref, hash >>> 6);
+  }
+
+  public void put(long ref, Object value){
+    int hash = hash(ref);
+    m_Segments[hash & (m_NumSegments - 1)].put(ref, value, hash >>> 6, true);
+  }
+
+  /**
+   * @return the object already mapped to ref, or value if there was none
+   */
+  public Object putIfAbsent(long ref, Object value){
+    int hash = hash(ref);
+    return m_Segments[hash & (m_NumSegments - 1)].put(ref, value, hash >>> 6, false);
+  }
+
+  private static int hash(long ref){
+    //refs are 16 byte aligned
+    long key = ref >> 4;
+    int h = (int) (key ^ (key >>> 32));
+    h *= 0x9e3779b9;
+    h ^= (h >>> 16);
+    return h;
+  }
+
+  private static class Segment {
+
+    private long[] m_Keys;
+    private Object[] m_Values;
+    private int m_Size;
+
+    public Segment(){
+      m_Keys = new long[16];
+      m_Values = new Object[16];
+      m_Size = 0;
+    }
+
+    public synchronized Object get(long key, int hash){
+      int mask = m_Keys.length - 1;
+      int index = hash & mask;
+      while(true){
+        Object value = m_Values[index];
+        if(value == null){
+          return null;
+        }
+        if(m_Keys[index] == key){
+          return value;
+        }
+        index = (index + 1) & mask;
+      }
+    }
+
+    public synchronized Object put(long key, Object value, int hash, boolean replace){
+      int mask = m_Keys.length - 1;
+      int index = hash & mask;
+      while(true){
+        Object curr = m_Values[index];
+        if(curr == null){
+          break;
+        }
+        if(m_Keys[index] == key){
+          if(replace){
+            m_Values[index] = value;
+            return value;
+          }
+          return curr;
+        }
+        index = (index + 1) & mask;
+      }
+      if(value == null){
+        return null;
+      }
+      m_Keys[index] = key;
+      m_Values[index] = value;
+      m_Size++;
+      if(m_Size * 2 > m_Keys.length){
+        grow();
+      }
+      return value;
+    }
+
+    private void grow(){
+      long[] old_keys = m_Keys;
+      Object[] old_values = m_Values;
+      m_Keys = new long[old_keys.length * 2];
+      m_Values = new Object[old_keys.length * 2];
+      int mask = m_Keys.length - 1;
+      for(int i = 0; i < old_keys.length; ++i){
+        if(old_values[i] == null){
+          continue;
+        }
+        int index = (hash(old_keys[i]) >>> 6) & mask;
+        while(m_Values[index] != null){
+          index = (index + 1) & mask;
+        }
+        m_Keys[index] = old_keys[i];
+        m_Values[index] = old_values[i];
+      }
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime.util;
+
+/**
+ * FIFO of (object, ref, flag) entries kept in parallel primitive arrays. The
+ * arrays are kept between uses so a serializer does not allocate per object.
+ */
+public class RefWorklist {
+
+  private Object[] m_Objects;
+  private long[] m_Refs;
+  private boolean[] m_Flags;
+  private int m_Head;
+  private int m_Tail;
+
+  public RefWorklist(){
+    m_Objects = new Object[64];
+    m_Refs = new long[64];
+    m_Flags = new boolean[64];
+    m_Head = 0;
+    m_Tail = 0;
+  }
+
+  public void add(Object o, long ref, boolean flag){
+    if(m_Tail == m_Objects.length){
+      grow();
+    }
+    m_Objects[m_Tail] = o;
+    m_Refs[m_Tail] = ref;
+    m_Flags[m_Tail] = flag;
+    m_Tail++;
+  }
+
+  public boolean isEmpty(){
+    return m_Head == m_Tail;
+  }
+
+  public Object peekObject(){
+    return m_Objects[m_Head];
+  }
+
+  public long peekRef(){
+    return m_Refs[m_Head];
+  }
+
+  public boolean peekFlag(){
+    return m_Flags[m_Head];
+  }
+
+  /**
+   * Removes the head entry. The arrays are rewound once they are drained.
+   */
+  public void remove(){
+    m_Objects[m_Head] = null;
+    m_Head++;
+    if(m_Head == m_Tail){
+      m_Head = 0;
+      m_Tail = 0;
+    }
+  }
+
+  public void clear(){
+    for(int i = m_Head; i < m_Tail; ++i){
+      m_Objects[i] = null;
+    }
+    m_Head = 0;
+    m_Tail = 0;
+  }
+
+  private void grow(){
+    int count = m_Tail - m_Head;
+    int length = m_Objects.length;
+    if(count * 2 > length){
+      length *= 2;
+    }
+    Object[] objects = new Object[length];
+    long[] refs = new long[length];
+    boolean[] flags = new boolean[length];
+    System.arraycopy(m_Objects, m_Head, objects, 0, count);
+    System.arraycopy(m_Refs, m_Head, refs, 0, count);
+    System.arraycopy(m_Flags, m_Head, flags, 0, count);
+    m_Objects = objects;
+    m_Refs = refs;
+    m_Flags = flags;
+    m_Head = 0;
+    m_Tail = count;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime.util;
+
+import java.util.List;
+
+/**
+ * What one serializer thread did during a batch of writes to a shared
+ * to-space: the address ranges it allocated and, per kernel, the refs of
+ * objects it found already allocated. Such an object may belong to another
+ * thread that had not filled it in yet, so once a thread runs out of
+ * to-space the logs decide which written kernels are complete.
+ */
+public class WriteLog {
+
+  private long[] m_Ranges;
+  private int m_RangeCount;
+  private long[] m_Reached;
+  private int m_ReachedCount;
+  private int[] m_KernelEnds;
+  private int m_KernelCount;
+
+  public WriteLog(){
+    m_Ranges = new long[16];
+    m_Reached = new long[64];
+    m_KernelEnds = new int[64];
+  }
+
+  public void clear(){
+    m_RangeCount = 0;
+    m_ReachedCount = 0;
+    m_KernelCount = 0;
+  }
+
+  public void allocated(long ref, long size){
+    if(m_RangeCount != 0 && m_Ranges[m_RangeCount - 1] == ref){
+      m_Ranges[m_RangeCount - 1] = ref + size;
+      return;
+    }
+    if(m_RangeCount == m_Ranges.length){
+      m_Ranges = grow(m_Ranges);
+    }
+    m_Ranges[m_RangeCount] = ref;
+    m_Ranges[m_RangeCount + 1] = ref + size;
+    m_RangeCount += 2;
+  }
+
+  public void reached(long ref){
+    if(m_ReachedCount == m_Reached.length){
+      m_Reached = grow(m_Reached);
+    }
+    m_Reached[m_ReachedCount] = ref;
+    m_ReachedCount++;
+  }
+
+  /**
+   * Marks the end of the refs reached by the current kernel
+   */
+  public void endKernel(){
+    if(m_KernelCount == m_KernelEnds.length){
+      int[] ends = new int[m_KernelEnds.length * 2];
+      System.arraycopy(m_KernelEnds, 0, ends, 0, m_KernelCount);
+      m_KernelEnds = ends;
+    }
+    m_KernelEnds[m_KernelCount] = m_ReachedCount;
+    m_KernelCount++;
+  }
+
+  public boolean owns(long ref){
+    for(int i = 0; i < m_RangeCount; i += 2){
+      if(ref >= m_Ranges[i] && ref < m_Ranges[i + 1]){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A thread that ran out of to-space left objects allocated but not filled
+   * in, and a thread that reached an object of such a thread may have filled
+   * its own objects with refs to them. A kernel is complete when it reached
+   * no object of such a tainted thread other than its own. Objects owned by
+   * no log were written by an earlier batch and are complete.
+   * @param logs the logs of every thread of the batch
+   * @param failed which threads ran out of to-space
+   * @return per thread how many of its logged kernels are complete
+   */
+  public static int[] countComplete(List<WriteLog> logs, boolean[] failed){
+    int num_threads = logs.size();
+    boolean[] tainted = failed.clone();
+    boolean changed = true;
+    while(changed){
+      changed = false;
+      for(int i = 0; i < num_threads; ++i){
+        if(tainted[i] == false && logs.get(i).firstTainted(i, logs, tainted) != -1){
+          tainted[i] = true;
+          changed = true;
+        }
+      }
+    }
+    int[] ret = new int[num_threads];
+    for(int i = 0; i < num_threads; ++i){
+      WriteLog log = logs.get(i);
+      int first = log.firstTainted(i, logs, tainted);
+      ret[i] = first == -1 ? log.m_KernelCount : first;
+    }
+    return ret;
+  }
+
+  /**
+   * @return the first kernel that reached an object of another tainted
+   *   thread or -1
+   */
+  private int firstTainted(int self, List<WriteLog> logs, boolean[] tainted){
+    int kernel = 0;
+    for(int i = 0; i < m_ReachedCount; ++i){
+      while(kernel < m_KernelCount && m_KernelEnds[kernel] <= i){
+        kernel++;
+      }
+      long ref = m_Reached[i];
+      for(int j = 0; j < logs.size(); ++j){
+        if(j != self && tainted[j] && logs.get(j).owns(ref)){
+          return kernel;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private static long[] grow(long[] array){
+    long[] ret = new long[array.length * 2];
+    System.arraycopy(array, 0, ret, 0, array.length);
+    return ret;
+  }
+}
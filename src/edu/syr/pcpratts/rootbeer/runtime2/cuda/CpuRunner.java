@@ -11,10 +11,17 @@ import edu.syr.pcpratts.rootbeer.runtime.Kernel;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Runs kernels in java on every core next to a device. join reports how
+ * long the cores took so the work can be balanced against the device.
+ */
 public class CpuRunner {
 
   private int m_NumCores;
   private List<CpuRunnerCore> m_Cores;
+  private int m_Started;
+  private long m_StartTime;
+  private long m_ElapsedNanos;
   
   public CpuRunner(){   
     m_NumCores = Runtime.getRuntime().availableProcessors(); 
@@ -25,22 +32,55 @@ public class CpuRunner {
   }
 
   public void run(List<Kernel> cpu_jobs) {
-    int items_per = cpu_jobs.size() / m_NumCores;
+    m_StartTime = System.nanoTime();
+    m_Started = 0;
+    int num_jobs = cpu_jobs.size();
     for(int i = 0; i < m_NumCores; ++i){
-      int end_index;
-      if(i == m_NumCores - 1){
-        end_index = cpu_jobs.size();
-      } else {
-        end_index = (i+1)*items_per;
+      int start_index = i*num_jobs/m_NumCores;
+      int end_index = (i+1)*num_jobs/m_NumCores;
+      if(start_index == end_index){
+        continue;
       }
-      List<Kernel> jobs = cpu_jobs.subList(i*items_per, end_index);
-      m_Cores.get(i).put(jobs);
+      List<Kernel> jobs = cpu_jobs.subList(start_index, end_index);
+      m_Cores.get(m_Started).put(jobs);
+      m_Started++;
     }
   }
 
+  /**
+   * Waits for the jobs given to run and throws the first error a kernel
+   * threw.
+   */
   public void join() {
-    for(int i = 0; i < m_NumCores; ++i){
-      m_Cores.get(i).take();
+    long end_time = m_StartTime;
+    Throwable error = null;
+    for(int i = 0; i < m_Started; ++i){
+      CpuRunnerCore core = m_Cores.get(i);
+      core.take();
+      end_time = Math.max(end_time, core.getEndTime());
+      if(error == null){
+        error = core.getError();
+      }
+    }
+    m_ElapsedNanos = end_time - m_StartTime;
+    m_Started = 0;
+    if(error instanceof RuntimeException){
+      throw (RuntimeException) error;
+    } else if(error instanceof Error){
+      throw (Error) error;
+    } else if(error != null){
+      throw new RuntimeException(error);
     }
   }
+  
+  /**
+   * @return the time from run until the last core finished
+   */
+  public long getElapsedNanos(){
+    return m_ElapsedNanos;
+  }
+  
+  public int getNumCores(){
+    return m_NumCores;
+  }
 }
@@ -15,6 +15,8 @@ public class CpuRunnerCore implements Runnable {
   private BlockingQueue<List<Kernel>> m_InputQueue;
   private BlockingQueue<List<Kernel>> m_OutputQueue;
   private Thread m_Thread;
+  private volatile long m_EndTime;
+  private volatile Throwable m_Error;
   
   public CpuRunnerCore(){
     m_InputQueue = new BlockingQueue<List<Kernel>>();
@@ -31,11 +33,28 @@ public class CpuRunnerCore implements Runnable {
   public void take() {
     m_OutputQueue.take();
   }
+  
+  public long getEndTime(){
+    return m_EndTime;
+  }
+  
+  /**
+   * @return what the last jobs threw, or null
+   */
+  public Throwable getError(){
+    return m_Error;
+  }
 
   public void run() {
     while(true){
       List<Kernel> jobs = m_InputQueue.take();
-      runJobs(jobs);
+      m_Error = null;
+      try {
+        runJobs(jobs);
+      } catch(Throwable ex){
+        m_Error = ex;
+      }
+      m_EndTime = System.nanoTime();
       m_OutputQueue.put(jobs);
     }
   }
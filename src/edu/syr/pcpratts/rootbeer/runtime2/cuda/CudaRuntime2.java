@@ -12,6 +12,7 @@ import edu.syr.pcpratts.rootbeer.configuration.RootbeerPaths;
 import edu.syr.pcpratts.rootbeer.runtime.*;
 import edu.syr.pcpratts.rootbeer.runtime.memory.BufferPrinter;
 import edu.syr.pcpratts.rootbeer.runtime.memory.Memory;
+import edu.syr.pcpratts.rootbeer.runtime.memory.RegionAllocator;
 import edu.syr.pcpratts.rootbeer.runtime.util.Stopwatch;
 import edu.syr.pcpratts.rootbeer.util.ResourceReader;
 import java.io.*;
@@ -25,7 +26,7 @@ public class CudaRuntime2 implements ParallelRuntime {
 
   private static CudaRuntime2 m_Instance;
   
-  public static CudaRuntime2 v(){
+  public static synchronized CudaRuntime2 v(){
     if(m_Instance == null){
       m_Instance = new CudaRuntime2();
     }
@@ -53,6 +54,10 @@ public class CudaRuntime2 implements ParallelRuntime {
   private long m_NumMultiProcessors;
   private long m_reserveMem;
   private long m_NumBlocks;
+  private long m_SkipStart;
+  private long m_SkipEnd;
+  private long m_ExceptionCount;
+  private long m_FirstException;
   
   private long m_serializationTime;
   private long m_executionTime;
@@ -69,10 +74,11 @@ public class CudaRuntime2 implements ParallelRuntime {
   
   private List<ToSpaceReader> m_Readers;
   private List<ToSpaceWriter> m_Writers;
+  private KernelSizeEstimate m_SizeEstimate;
+  private PinnedSpace m_Pinned;
   
   private List<Serializer> m_serializers;
   
-  private CpuRunner m_CpuRunner;
   private BlockShaper m_BlockShaper;
   
   private Stopwatch m_ctorStopwatch;
@@ -97,16 +103,15 @@ public class CudaRuntime2 implements ParallelRuntime {
     m_Texture = new ArrayList<Memory>();
     m_Readers = new ArrayList<ToSpaceReader>();
     m_Writers = new ArrayList<ToSpaceWriter>();
+    m_SizeEstimate = new KernelSizeEstimate();
+    m_Pinned = PinnedObjects.v().createSpace();
     
     m_writeBlocksStopwatch = new Stopwatch();
     m_runStopwatch = new Stopwatch();
     m_runOnGpuStopwatch = new Stopwatch();
     m_readBlocksStopwatch = new Stopwatch();
    
-    //there is a bug in the concurrent serializer. setting num_cores to 1 right now.
-    //next version of rootbeer should have a faster concurrent serializer anyway
-    m_NumCores = 1;
-    //m_NumCores = Runtime.getRuntime().availableProcessors();
+    m_NumCores = Configuration.getSerializerThreads();
     
     m_serializers = new ArrayList<Serializer>();
     AtomicLong to_space_inst_ptr = new AtomicLong(0);
@@ -121,7 +126,6 @@ public class CudaRuntime2 implements ParallelRuntime {
     }
     m_Handles = new Handles(m_HandlesAddr, m_GpuHandlesAddr);
     m_ExceptionHandles = new Handles(m_ExceptionsHandlesAddr, m_GpuExceptionsHandlesAddr);
-    m_CpuRunner = new CpuRunner();
     
     //this will be overwitten in edu.syr.pcpratts.rootbeer.runtime.Rootbeer.<init>(boolean)
     Configuration.setPrintMem(false);
@@ -166,7 +170,11 @@ public class CudaRuntime2 implements ParallelRuntime {
     test.run(m_ToSpace.get(0));
   }
   
-  public PartiallyCompletedParallelJob run(Iterator<Kernel> jobs, Rootbeer rootbeer, ThreadConfig thread_config){
+  /**
+   * Runs are made one at a time, every caller shares the buffers of the 
+   * device
+   */
+  public synchronized PartiallyCompletedParallelJob run(Iterator<Kernel> jobs, Rootbeer rootbeer, ThreadConfig thread_config){
     
     m_runStopwatch.start();
     RootbeerGpu.setIsOnGpu(true);
@@ -186,17 +194,64 @@ public class CudaRuntime2 implements ParallelRuntime {
       m_BlockShape = thread_config.getBlockShapeX();
       m_GridShape = thread_config.getGridShapeX(); 
     }
-    compileCode();
+    compileCode(m_JobsWritten.size());
     
     Object gpu_thrown = null;
     try {
-      runOnGpu();
+      runOnGpu(m_JobsWritten.size());
       readBlocks();
       unload();
     } catch(Throwable ex){
       gpu_thrown = ex;
     } 
     
+    finishRun(rootbeer, gpu_thrown);
+    return m_Partial;
+  }
+  
+  /**
+   * Runs kernel on every thread of thread_config, each getting its thread id
+   * as the index. The handles and exceptions buffers limit the threads of
+   * one launch like the kernels of one batch, so larger configs are run as
+   * several launches of whole blocks. Each launch writes the kernel again
+   * with its first index and reads it back.
+   */
+  public synchronized void runIndexed(CompiledKernel kernel, Rootbeer rootbeer, ThreadConfig thread_config){
+    String filename = kernel.getCubin();
+    if(filename.endsWith(".error")){
+      throw new RuntimeException("the kernel failed to compile: "+filename);
+    }
+    int block_shape = thread_config.getBlockShapeX();
+    int num_threads = block_shape * thread_config.getGridShapeX();
+    long max_threads = Math.min(m_BlockShaper.getMaxThreads(m_NumMultiProcessors), m_NumBlocks);
+    int max_launch = (int) (max_threads / block_shape * block_shape);
+    if(max_launch == 0){
+      throw new IllegalArgumentException("too many threads in one block: "+block_shape);
+    }
+    m_runStopwatch.start();
+    RootbeerGpu.setIsOnGpu(true);
+    
+    Object gpu_thrown = null;
+    for(int offset = 0; offset < num_threads; offset += max_launch){
+      int count = Math.min(max_launch, num_threads - offset);
+      writeIndexed(kernel, offset);
+      m_BlockShape = block_shape;
+      m_GridShape = (count + block_shape - 1) / block_shape; 
+      compileCode(count);
+      try {
+        runOnGpu(count);
+        readIndexed(count);
+        unload();
+      } catch(Throwable ex){
+        gpu_thrown = ex;
+        break;
+      } 
+    }
+    
+    finishRun(rootbeer, gpu_thrown);
+  }
+  
+  private void finishRun(Rootbeer rootbeer, Object gpu_thrown){
     RootbeerGpu.setIsOnGpu(false);
     
     m_runStopwatch.stop();
@@ -207,9 +262,7 @@ public class CudaRuntime2 implements ParallelRuntime {
                                       m_GridShape, m_BlockShape);
     
     rootbeer.addStatsRow(stats_row);
-    if(gpu_thrown == null){
-      return m_Partial;
-    } else {
+    if(gpu_thrown != null){
       if(gpu_thrown instanceof NullPointerException){
         NullPointerException null_ex = (NullPointerException) gpu_thrown;
         throw null_ex;
@@ -228,7 +281,7 @@ public class CudaRuntime2 implements ParallelRuntime {
     }
   }
 
-  public boolean writeBlocks(Iterator<Kernel> iter) {
+  private void startWrite(){
     m_writeBlocksStopwatch.start();
     for(Memory mem : m_ToSpace){
       mem.setAddress(0);
@@ -240,19 +293,88 @@ public class CudaRuntime2 implements ParallelRuntime {
     m_HandlesCache.clear();
     m_NotWritten.clear();
     m_serializers.clear();
-    
+  }
+  
+  private void createSerializers(){
     ReadOnlyAnalyzer analyzer = null;
+    for(int i = 0; i < m_NumCores; ++i){
+      Memory mem = m_ToSpace.get(i);
+      Memory texture_mem = m_Texture.get(i);
+      mem.clearHeapEndPtr();
+      texture_mem.clearHeapEndPtr();
+      Serializer visitor = m_FirstJob.getSerializer(mem, texture_mem);
+      visitor.setAnalyzer(analyzer);
+      visitor.setPinnedSpace(m_Pinned);
+      if(i > 0){
+        visitor.shareCaches(m_serializers.get(0));
+      }
+      m_serializers.add(visitor);
+    }
+  }
+  
+  private void finishWrite(){
+    writeClassTypeRef(m_serializers.get(0).getClassRefArray());
+    
+    m_writeBlocksStopwatch.stop();
+    m_serializationTime = m_writeBlocksStopwatch.elapsedTimeMillis();
+    
+    if(Configuration.getPrintMem()){
+      BufferPrinter printer = new BufferPrinter();
+      printer.print(m_ToSpace.get(0), 0, 896);
+    }
+  }
+  
+  /**
+   * Writes the statics and kernel with one serializer. The handles are the
+   * kernel and the index of the first thread.
+   */
+  private void writeIndexed(CompiledKernel kernel, int first_index){
+    startWrite();
+    m_FirstJob = kernel;
+    createSerializers();
+    writeStatics();
+    Serializer visitor = m_serializers.get(0);
+    long handle = visitor.writeToHeap(kernel);
+    m_HandlesCache.add(handle);
+    m_Handles.writeLong(handle);
+    //handles are stored as refs shifted right by four
+    m_Handles.writeLong((long) first_index << 4);
+    finishWrite();
+  }
+
+  /**
+   * Writes the statics and the pinned objects that changed since the last
+   * run. Kernels are allocated after both.
+   * @return the bytes written
+   */
+  private long writeStatics(){
+    Serializer visitor = m_serializers.get(0);
+    visitor.writeStaticsToHeap();
+    m_Pinned.write(visitor, m_ToSpace, m_FirstJob);
+    return visitor.getBytesWritten();
+  }
+
+  public boolean writeBlocks(Iterator<Kernel> iter) {
+    startWrite();
     
     boolean first_block = true;    
     int count = 0;
+    int fit = -1;
+    long statics_bytes = 0;
     while(iter.hasNext()){
       Kernel job = iter.next();      
       if(first_block){
         m_FirstJob = (CompiledKernel) job;
         first_block = false;    
+        createSerializers();
+        statics_bytes = writeStatics();
+        m_SizeEstimate.startRun(job.getClass());
+        fit = m_SizeEstimate.fit(m_ToSpaceSize - getHeapEndPtr() - m_NumCores * RegionAllocator.DEFAULT_REGION_SIZE);
       }  
       
       m_JobsToWrite.add(job);
+      if(m_JobsToWrite.size() == fit)
+        break;
       if(count + 1 == m_BlockShaper.getMaxThreads(m_NumMultiProcessors))
         break;
       if(count + 1 == m_NumBlocks){
@@ -260,65 +382,68 @@ public class CudaRuntime2 implements ParallelRuntime {
       }
       count++;
     }
-    if(count == 0){
+    if(m_JobsToWrite.isEmpty()){
       return false;
     }
     
+    int num_jobs = m_JobsToWrite.size();
     for(int i = 0; i < m_NumCores; ++i){
-      Memory mem = m_ToSpace.get(i);
-      Memory texture_mem = m_Texture.get(i);
-      mem.clearHeapEndPtr();
-      texture_mem.clearHeapEndPtr();
-      Serializer visitor = m_FirstJob.getSerializer(mem, texture_mem);
-      visitor.setAnalyzer(analyzer);
-      m_serializers.add(visitor);
+      Serializer visitor = m_serializers.get(i);
+      List<Kernel> items = m_JobsToWrite.subList(i*num_jobs/m_NumCores, (i+1)*num_jobs/m_NumCores);
+      m_Writers.get(i).write(items, visitor);
     }
     
-    //write the statics to the heap
-    m_serializers.get(0).writeStaticsToHeap();
-    
-    int items_per = m_JobsToWrite.size() / m_NumCores;
+    //the handles are merged in core order. once a core runs out of memory 
+    //every later job is treated as not written so the jobs that run keep 
+    //the order they came from the iterator. jobs that may reach objects the
+    //failing core never filled in are not written either.
+    List<ToSpaceWriterResult> results = new ArrayList<ToSpaceWriterResult>();
     for(int i = 0; i < m_NumCores; ++i){
-      Serializer visitor = m_serializers.get(i);
-      int end_index;
-      if(i == m_NumCores - 1){
-        end_index = m_JobsToWrite.size();
-      } else {
-        end_index = (i+1)*items_per;
-      }
-      List<Kernel> items = m_JobsToWrite.subList(i*items_per, end_index);
-      m_Writers.get(i).write(items, visitor);
+      results.add(m_Writers.get(i).join());
+    }
+    for(ToSpaceWriterResult result : results){
+      result.rethrowError();
     }
     
+    boolean all_written = true;
+    int count_written = 0;
+    long bytes_written = -statics_bytes;
+    int[] complete = ToSpaceWriterResult.countComplete(results);
     for(int i = 0; i < m_NumCores; ++i){
-      ToSpaceWriterResult result = m_Writers.get(i).join(); 
-      List<Long> handles = result.getHandles();
+      ToSpaceWriterResult result = results.get(i);
+      long[] handles = result.getHandles();
       List<Kernel> items = result.getItems();      
-      m_JobsWritten.addAll(items);
-      m_Partial.enqueueJobs(items);
-      m_HandlesCache.addAll(handles);
-      m_NotWritten.addAll(result.getNotWrittenItems());
-      for(Long handle : handles){
-        m_Handles.writeLong(handle);
+      count_written += items.size();
+      bytes_written += m_serializers.get(i).getBytesWritten();
+      int num_complete = 0;
+      if(all_written){
+        num_complete = complete[i];
+        List<Kernel> done = items.subList(0, num_complete);
+        m_JobsWritten.addAll(done);
+        m_Partial.enqueueJobs(done);
+        for(int j = 0; j < num_complete; ++j){
+          m_HandlesCache.add(handles[j]);
+          m_Handles.writeLong(handles[j]);
+        }
+        if(num_complete < items.size()){
+          all_written = false;
+        }
+      }
+      m_NotWritten.addAll(items.subList(num_complete, items.size()));
+      List<Kernel> not_written = result.getNotWrittenItems();
+      if(not_written.isEmpty() == false){
+        all_written = false;
+        m_NotWritten.addAll(not_written);
       }
     }
     
     m_Partial.addNotWritten(m_NotWritten);
-
-    writeClassTypeRef(m_serializers.get(0).getClassRefArray());
-    
-    m_writeBlocksStopwatch.stop();
-    m_serializationTime = m_writeBlocksStopwatch.elapsedTimeMillis();
-    
-    if(Configuration.getPrintMem()){
-      BufferPrinter printer = new BufferPrinter();
-      printer.print(m_ToSpace.get(0), 0, 896);
-    }
-
+    m_SizeEstimate.record(count_written, bytes_written);
+    finishWrite();
     return true;
   }
 
-  private void compileCode() {
+  private void compileCode(int num_blocks) {
     String filename = m_FirstJob.getCubin();
     try {
       List<byte[]> buffer = ResourceReader.getResourceArray(filename);
@@ -326,20 +451,35 @@ public class CudaRuntime2 implements ParallelRuntime {
       for(byte[] sub_buffer : buffer){
         total_len += sub_buffer.length;
       }
-      loadFunction(getHeapEndPtr(), buffer, buffer.size(), total_len, m_JobsWritten.size());
+      loadFunction(getHeapEndPtr(), buffer, buffer.size(), total_len, num_blocks);
     } catch(Exception ex){
       ex.printStackTrace();
     }
   }
   
-  private void runOnGpu(){    
+  private void runOnGpu(int size){    
     try {
       m_runOnGpuStopwatch.start();
-      runBlocks(m_JobsWritten.size(), m_BlockShape, m_GridShape); 
+      //runBlocks does not copy [m_SkipStart, m_SkipEnd) in either direction.
+      //kernels cannot store into pinned objects, so once the device holds
+      //the pinned region it only has to be copied again after a write.
+      if(m_Pinned.isUploaded()){
+        m_SkipStart = m_Pinned.getStart();
+        m_SkipEnd = m_Pinned.getEnd();
+      } else {
+        m_SkipStart = 0;
+        m_SkipEnd = 0;
+      }
+      //runBlocks sets the exception summary, a library built before the
+      //kernels kept one leaves -1 and copies every exception slot back
+      m_ExceptionCount = -1;
+      runBlocks(size, m_BlockShape, m_GridShape); 
+      m_Pinned.setUploaded();
       m_runOnGpuStopwatch.stop();
       m_executionTime = m_runOnGpuStopwatch.elapsedTimeMillis();
     } catch(CudaErrorException ex){
       reinit(m_BlockShaper.getMaxBlocksPerProc(), m_BlockShaper.getMaxThreadsPerBlock(), m_reserveMem);
+      m_Pinned.discard();
       m_Handles = new Handles(m_HandlesAddr, m_GpuHandlesAddr);
       m_ExceptionHandles = new Handles(m_ExceptionsHandlesAddr, m_GpuExceptionsHandlesAddr);
       throw ex;
@@ -353,6 +493,52 @@ public class CudaRuntime2 implements ParallelRuntime {
   }
   
   public void readBlocks() {    
+    startRead();
+    readExceptions(m_JobsWritten.size());
+    
+    //read the statics from the heap
+    m_serializers.get(0).readStaticsFromHeap();
+    
+    //the gpu changed nothing reachable from read only kernels
+    if(m_FirstJob.isReadOnly() == false){
+      readInstances();
+    }
+    
+    m_readBlocksStopwatch.stop();
+    m_deserializationTime = m_readBlocksStopwatch.elapsedTimeMillis();
+  }
+  
+  private void readInstances(){
+    int num_jobs = m_JobsWritten.size();
+    for(int i = 0; i < m_NumCores; ++i){
+      Serializer visitor = m_serializers.get(i);
+      int start_index = i*num_jobs/m_NumCores;
+      int end_index = (i+1)*num_jobs/m_NumCores;
+      List<Long> handles = m_HandlesCache.subList(start_index, end_index);
+      List<Kernel> jobs = m_JobsWritten.subList(start_index, end_index);
+      m_Readers.get(i).read(jobs, handles, visitor);
+    }
+    
+    for(int i = 0; i < m_NumCores; ++i){
+      m_Readers.get(i).join();  
+    }
+  }
+  
+  private void readIndexed(int num_threads){
+    startRead();
+    readExceptions(num_threads);
+    
+    Serializer visitor = m_serializers.get(0);
+    visitor.readStaticsFromHeap();
+    if(m_FirstJob.isReadOnly() == false){
+      visitor.readFromHeap(m_FirstJob, true, m_HandlesCache.get(0));
+    }
+    
+    m_readBlocksStopwatch.stop();
+    m_deserializationTime = m_readBlocksStopwatch.elapsedTimeMillis();
+  }
+  
+  private void startRead(){
     m_readBlocksStopwatch.start();
     for(int i = 0; i < m_NumCores; ++i)
       m_ToSpace.get(i).setAddress(0);    
@@ -363,8 +549,21 @@ public class CudaRuntime2 implements ParallelRuntime {
       BufferPrinter printer = new BufferPrinter();
       printer.print(m_ToSpace.get(0), 0, 2048);
     }
-    
-    for(int i = 0; i < m_JobsWritten.size(); ++i){
+  }
+  
+  private void readExceptions(int count){
+    int start = 0;
+    if(m_ExceptionCount == 0){
+      return;
+    } else if(m_ExceptionCount > 0){
+      //only the slot of the lowest faulting thread was copied back
+      for(int i = 0; i < m_FirstException; ++i){
+        m_ExceptionHandles.readLong();
+      }
+      start = (int) m_FirstException;
+      count = start + 1;
+    }
+    for(int i = start; i < count; ++i){
       long ref = m_ExceptionHandles.readLong();
       if(ref != 0){
         long ref_num = ref >> 4;
@@ -386,30 +585,6 @@ public class CudaRuntime2 implements ParallelRuntime {
         }
       }
     }    
-    
-    //read the statics from the heap
-    m_serializers.get(0).readStaticsFromHeap();
-    
-    int items_per = m_JobsWritten.size() / m_NumCores;
-    for(int i = 0; i < m_NumCores; ++i){
-      Serializer visitor = m_serializers.get(i);
-      int end_index;
-      if(i == m_NumCores - 1){
-        end_index = m_JobsWritten.size();
-      } else {
-        end_index = (i+1)*items_per;
-      }
-      List<Long> handles = m_HandlesCache.subList(i*items_per, end_index);
-      List<Kernel> jobs = m_JobsWritten.subList(i*items_per, end_index);
-      m_Readers.get(i).read(jobs, handles, visitor);
-    }
-    
-    for(int i = 0; i < m_NumCores; ++i){
-      m_Readers.get(i).join();  
-    }
-    
-    m_readBlocksStopwatch.stop();
-    m_deserializationTime = m_readBlocksStopwatch.elapsedTimeMillis();
   }
   
   private long getHeapEndPtr() {
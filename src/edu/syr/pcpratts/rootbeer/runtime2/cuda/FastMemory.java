@@ -8,11 +8,16 @@
 package edu.syr.pcpratts.rootbeer.runtime2.cuda;
 
 import edu.syr.pcpratts.rootbeer.runtime.memory.Memory;
+import edu.syr.pcpratts.rootbeer.runtime.memory.RegionAllocator;
+import edu.syr.pcpratts.rootbeer.runtime.memory.SegmentedBuffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class FastMemory extends Memory {
 
+  private SegmentedBuffer m_Buffer;
   private long m_CpuBase;
   private long m_SpaceSize;
   private long m_Reserve;
@@ -23,63 +28,131 @@ public class FastMemory extends Memory {
   public FastMemory(long cpu_base_address, AtomicLong instance_pointer, 
     AtomicLong static_pointer, long space_size){
     
-    m_CpuBase = cpu_base_address;    
+    this(wrap(cpu_base_address, space_size), instance_pointer, static_pointer, 
+      space_size);
+    m_CpuBase = cpu_base_address;
+  }
+  
+  /**
+   * @param buffer the host memory. tests pass a SegmentedBuffer from 
+   *   allocateDirect in place of the pinned cuda buffer.
+   */
+  public FastMemory(SegmentedBuffer buffer, AtomicLong instance_pointer, 
+    AtomicLong static_pointer, long space_size){
+    
+    m_Buffer = buffer;
     m_SpaceSize = space_size;
-    m_InstanceMemPointer = new MemPointer(instance_pointer);
-    m_StaticMemPointer = new MemPointer(static_pointer);
-    m_CurrMemPointer = m_InstanceMemPointer;
     m_Reserve = 1024;
+    m_InstanceMemPointer = new MemPointer(instance_pointer, new RegionAllocator(
+      instance_pointer, RegionAllocator.DEFAULT_REGION_SIZE, space_size - m_Reserve));
+    m_StaticMemPointer = new MemPointer(static_pointer, null);
+    m_CurrMemPointer = m_InstanceMemPointer;
   }    
   
+  private static SegmentedBuffer wrap(long cpu_base_address, long space_size){
+    if(cpu_base_address == 0){
+      //the texture space is not allocated by the native runtime
+      return null;
+    }
+    long segment_size = 1L << SegmentedBuffer.DEFAULT_SHIFT;
+    List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+    try {
+      for(long offset = 0; offset < space_size; offset += segment_size){
+        long len = Math.min(segment_size, space_size - offset);
+        segments.add(doWrap(cpu_base_address + offset, len));
+      }
+    } catch(UnsatisfiedLinkError ex){
+      //a cudaruntime library built before doWrap, every access goes through
+      //the per primitive entry points
+      return null;
+    }
+    return new SegmentedBuffer(segments, SegmentedBuffer.DEFAULT_SHIFT);
+  }
+  
   private long currPointer(){
     return m_CurrMemPointer.m_Pointer;
   }  
   
   @Override
   public byte readByte() {
-    byte ret = doReadByte(currPointer(), m_CpuBase);
+    byte ret;
+    if(m_Buffer == null){
+      ret = doReadByte(currPointer(), m_CpuBase);
+    } else {
+      ret = m_Buffer.get(currPointer());
+    }
     incrementAddress(1);
     return ret;
   }
 
   @Override
   public boolean readBoolean() {
-    boolean ret = doReadBoolean(currPointer(), m_CpuBase);
+    boolean ret;
+    if(m_Buffer == null){
+      ret = doReadBoolean(currPointer(), m_CpuBase);
+    } else {
+      ret = m_Buffer.get(currPointer()) != 0;
+    }
     incrementAddress(1);
     return ret;
   }
 
   @Override
   public short readShort() {
-    short ret = doReadShort(currPointer(), m_CpuBase);
+    short ret;
+    if(m_Buffer == null){
+      ret = doReadShort(currPointer(), m_CpuBase);
+    } else {
+      ret = m_Buffer.getShort(currPointer());
+    }
     incrementAddress(2);
     return ret;
   }
 
   @Override
   public int readInt() {
-    int ret = doReadInt(currPointer(), m_CpuBase);
+    int ret;
+    if(m_Buffer == null){
+      ret = doReadInt(currPointer(), m_CpuBase);
+    } else {
+      ret = m_Buffer.getInt(currPointer());
+    }
     incrementAddress(4);
     return ret;
   }
 
   @Override
   public float readFloat() {
-    float ret = doReadFloat(currPointer(), m_CpuBase);
+    float ret;
+    if(m_Buffer == null){
+      ret = doReadFloat(currPointer(), m_CpuBase);
+    } else {
+      ret = Float.intBitsToFloat(m_Buffer.getInt(currPointer()));
+    }
     incrementAddress(4);
     return ret;
   }
 
   @Override
   public double readDouble() {
-    double ret = doReadDouble(currPointer(), m_CpuBase);
+    double ret;
+    if(m_Buffer == null){
+      ret = doReadDouble(currPointer(), m_CpuBase);
+    } else {
+      ret = Double.longBitsToDouble(m_Buffer.getLong(currPointer()));
+    }
     incrementAddress(8);
     return ret;
   }
 
   @Override
   public long readLong() {
-    long ret = doReadLong(currPointer(), m_CpuBase);
+    long ret;
+    if(m_Buffer == null){
+      ret = doReadLong(currPointer(), m_CpuBase);
+    } else {
+      ret = m_Buffer.getLong(currPointer());
+    }
     incrementAddress(8);
     return ret;
   }
@@ -94,25 +167,41 @@ public class FastMemory extends Memory {
 
   @Override
   public void writeByte(byte value) {
-    doWriteByte(currPointer(), value, m_CpuBase);
+    if(m_Buffer == null){
+      doWriteByte(currPointer(), value, m_CpuBase);
+    } else {
+      m_Buffer.put(currPointer(), value);
+    }
     incrementAddress(1);
   }
 
   @Override
   public void writeBoolean(boolean value) {
-    doWriteBoolean(currPointer(), value, m_CpuBase);
+    if(m_Buffer == null){
+      doWriteBoolean(currPointer(), value, m_CpuBase);
+    } else {
+      m_Buffer.put(currPointer(), value ? (byte) 1 : (byte) 0);
+    }
     incrementAddress(1);
   }
 
   @Override
   public void writeShort(short value) {
-    doWriteShort(currPointer(), value, m_CpuBase);
+    if(m_Buffer == null){
+      doWriteShort(currPointer(), value, m_CpuBase);
+    } else {
+      m_Buffer.putShort(currPointer(), value);
+    }
     incrementAddress(2);
   }
 
   @Override
   public void writeInt(int value) {
-    doWriteInt(currPointer(), value, m_CpuBase);
+    if(m_Buffer == null){
+      doWriteInt(currPointer(), value, m_CpuBase);
+    } else {
+      m_Buffer.putInt(currPointer(), value);
+    }
     incrementAddress(4);
   }
 
@@ -124,22 +213,37 @@ public class FastMemory extends Memory {
   
   @Override
   public void writeFloat(float value) {
-    doWriteFloat(currPointer(), value, m_CpuBase);
+    if(m_Buffer == null){
+      doWriteFloat(currPointer(), value, m_CpuBase);
+    } else {
+      m_Buffer.putInt(currPointer(), Float.floatToRawIntBits(value));
+    }
     incrementAddress(4);
   }
 
   @Override
   public void writeDouble(double value) {
-    doWriteDouble(currPointer(), value, m_CpuBase);
+    if(m_Buffer == null){
+      doWriteDouble(currPointer(), value, m_CpuBase);
+    } else {
+      m_Buffer.putLong(currPointer(), Double.doubleToRawLongBits(value));
+    }
     incrementAddress(8);
   }
 
   @Override
   public void writeLong(long value) {
-    doWriteLong(currPointer(), value, m_CpuBase);
+    if(m_Buffer == null){
+      doWriteLong(currPointer(), value, m_CpuBase);
+    } else {
+      m_Buffer.putLong(currPointer(), value);
+    }
     incrementAddress(8);
   }
   
+
+  private static native ByteBuffer doWrap(long address, long length);
+  
   public native byte doReadByte(long ptr, long cpu_base);
   public native boolean doReadBoolean(long ptr, long cpu_base);
   public native short doReadShort(long ptr, long cpu_base);
@@ -160,6 +264,11 @@ public class FastMemory extends Memory {
     m_CurrMemPointer.clearHeapEndPtr();
   }
 
+  @Override
+  public void allocateFrom(long address) {
+    m_InstanceMemPointer.allocateFrom(address);
+  }
+
   @Override
   public long getHeapEndPtr() {
     return m_CurrMemPointer.m_HeapEnd;
@@ -222,9 +331,211 @@ public class FastMemory extends Memory {
 
   @Override
   public void readIntArray(int[] array, int size) {
-    for(int i = 0; i < size; ++i){
-      array[i] = readInt();
+    readArray(array, 0, size);
+  }
+
+  @Override
+  public void readArray(byte[] array, int offset, int length) {
+    if(m_Buffer == null){
+      for(int i = 0; i < length; ++i){
+        array[offset + i] = readByte();
+      }
+      return;
+    }
+    m_Buffer.get(currPointer(), array, offset, length);
+    m_CurrMemPointer.incrementAddress((long) length * 1);
+  }
+
+  @Override
+  public void readArray(boolean[] array, int offset, int length) {
+    if(m_Buffer == null){
+      for(int i = 0; i < length; ++i){
+        array[offset + i] = readBoolean();
+      }
+      return;
+    }
+    long ptr = currPointer();
+    for(int i = 0; i < length; ++i){
+      array[offset + i] = m_Buffer.get(ptr + i) != 0;
+    }
+    m_CurrMemPointer.incrementAddress((long) length * 1);
+  }
+
+  @Override
+  public void readArray(char[] array, int offset, int length) {
+    if(m_Buffer == null){
+      for(int i = 0; i < length; ++i){
+        array[offset + i] = (char) readInt();
+      }
+      return;
+    }
+    long ptr = currPointer();
+    for(int i = 0; i < length; ++i){
+      array[offset + i] = (char) m_Buffer.getInt(ptr + i * 4L);
+    }
+    m_CurrMemPointer.incrementAddress((long) length * 4);
+  }
+
+  @Override
+  public void readArray(short[] array, int offset, int length) {
+    if(m_Buffer == null){
+      for(int i = 0; i < length; ++i){
+        array[offset + i] = readShort();
+      }
+      return;
+    }
+    m_Buffer.getShorts(currPointer(), array, offset, length);
+    m_CurrMemPointer.incrementAddress((long) length * 2);
+  }
+
+  @Override
+  public void readArray(int[] array, int offset, int length) {
+    if(m_Buffer == null){
+      for(int i = 0; i < length; ++i){
+        array[offset + i] = readInt();
+      }
+      return;
+    }
+    m_Buffer.getInts(currPointer(), array, offset, length);
+    m_CurrMemPointer.incrementAddress((long) length * 4);
+  }
+
+  @Override
+  public void readArray(long[] array, int offset, int length) {
+    if(m_Buffer == null){
+      for(int i = 0; i < length; ++i){
+        array[offset + i] = readLong();
+      }
+      return;
     }
+    m_Buffer.getLongs(currPointer(), array, offset, length);
+    m_CurrMemPointer.incrementAddress((long) length * 8);
+  }
+
+  @Override
+  public void readArray(float[] array, int offset, int length) {
+    if(m_Buffer == null){
+      for(int i = 0; i < length; ++i){
+        array[offset + i] = readFloat();
+      }
+      return;
+    }
+    m_Buffer.getFloats(currPointer(), array, offset, length);
+    m_CurrMemPointer.incrementAddress((long) length * 4);
+  }
+
+  @Override
+  public void readArray(double[] array, int offset, int length) {
+    if(m_Buffer == null){
+      for(int i = 0; i < length; ++i){
+        array[offset + i] = readDouble();
+      }
+      return;
+    }
+    m_Buffer.getDoubles(currPointer(), array, offset, length);
+    m_CurrMemPointer.incrementAddress((long) length * 8);
+  }
+
+  @Override
+  public void writeArray(byte[] array, int offset, int length) {
+    if(m_Buffer == null){
+      for(int i = 0; i < length; ++i){
+        writeByte(array[offset + i]);
+      }
+      return;
+    }
+    m_Buffer.put(currPointer(), array, offset, length);
+    m_CurrMemPointer.incrementAddress((long) length * 1);
+  }
+
+  @Override
+  public void writeArray(boolean[] array, int offset, int length) {
+    if(m_Buffer == null){
+      for(int i = 0; i < length; ++i){
+        writeBoolean(array[offset + i]);
+      }
+      return;
+    }
+    long ptr = currPointer();
+    for(int i = 0; i < length; ++i){
+      m_Buffer.put(ptr + i, array[offset + i] ? (byte) 1 : (byte) 0);
+    }
+    m_CurrMemPointer.incrementAddress((long) length * 1);
+  }
+
+  @Override
+  public void writeArray(char[] array, int offset, int length) {
+    if(m_Buffer == null){
+      for(int i = 0; i < length; ++i){
+        writeInt(array[offset + i]);
+      }
+      return;
+    }
+    long ptr = currPointer();
+    for(int i = 0; i < length; ++i){
+      m_Buffer.putInt(ptr + i * 4L, array[offset + i]);
+    }
+    m_CurrMemPointer.incrementAddress((long) length * 4);
+  }
+
+  @Override
+  public void writeArray(short[] array, int offset, int length) {
+    if(m_Buffer == null){
+      for(int i = 0; i < length; ++i){
+        writeShort(array[offset + i]);
+      }
+      return;
+    }
+    m_Buffer.putShorts(currPointer(), array, offset, length);
+    m_CurrMemPointer.incrementAddress((long) length * 2);
+  }
+
+  @Override
+  public void writeArray(int[] array, int offset, int length) {
+    if(m_Buffer == null){
+      for(int i = 0; i < length; ++i){
+        writeInt(array[offset + i]);
+      }
+      return;
+    }
+    m_Buffer.putInts(currPointer(), array, offset, length);
+    m_CurrMemPointer.incrementAddress((long) length * 4);
+  }
+
+  @Override
+  public void writeArray(long[] array, int offset, int length) {
+    if(m_Buffer == null){
+      for(int i = 0; i < length; ++i){
+        writeLong(array[offset + i]);
+      }
+      return;
+    }
+    m_Buffer.putLongs(currPointer(), array, offset, length);
+    m_CurrMemPointer.incrementAddress((long) length * 8);
+  }
+
+  @Override
+  public void writeArray(float[] array, int offset, int length) {
+    if(m_Buffer == null){
+      for(int i = 0; i < length; ++i){
+        writeFloat(array[offset + i]);
+      }
+      return;
+    }
+    m_Buffer.putFloats(currPointer(), array, offset, length);
+    m_CurrMemPointer.incrementAddress((long) length * 4);
+  }
+
+  @Override
+  public void writeArray(double[] array, int offset, int length) {
+    if(m_Buffer == null){
+      for(int i = 0; i < length; ++i){
+        writeDouble(array[offset + i]);
+      }
+      return;
+    }
+    m_Buffer.putDoubles(currPointer(), array, offset, length);
+    m_CurrMemPointer.incrementAddress((long) length * 8);
   }
 
   @Override
@@ -246,12 +557,14 @@ public class FastMemory extends Memory {
    
     private PointerStack m_Stack; 
     private AtomicLong m_EndPointer;
+    private RegionAllocator m_Allocator;
     private long m_Pointer;
     private long m_HeapEnd;
     
-    public MemPointer(AtomicLong end_ptr){
+    public MemPointer(AtomicLong end_ptr, RegionAllocator allocator){
       m_Stack = new PointerStack();
       m_EndPointer = end_ptr;
+      m_Allocator = allocator;
     }
     
     public void popAddress() {
@@ -268,13 +581,18 @@ public class FastMemory extends Memory {
       if(mod != 0)
         size += (16 - mod);
 
-      long ret = m_EndPointer.getAndAdd(size);              
-      if(ret + size + m_Reserve > m_SpaceSize){
-        throw new OutOfMemoryError();
-      }        
+      long ret;
+      if(m_Allocator != null){
+        ret = m_Allocator.malloc(size);
+      } else {
+        ret = m_EndPointer.getAndAdd(size);              
+        if(ret + size + m_Reserve > m_SpaceSize){
+          throw new OutOfMemoryError();
+        }        
+      }
       m_Pointer = ret;
-      if(ret > m_HeapEnd)
-        m_HeapEnd = ret;
+      if(ret + size > m_HeapEnd)
+        m_HeapEnd = ret + size;
       
       return ret;
     }
@@ -288,10 +606,24 @@ public class FastMemory extends Memory {
       return m_HeapEnd;
     }
 
+    private void allocateFrom(long address) {
+      if(m_Allocator != null){
+        m_Allocator.reset(address);
+      } else {
+        m_EndPointer.set(address);
+      }
+      if(m_HeapEnd < address){
+        m_HeapEnd = address;
+      }
+    }
+
     private void clearHeapEndPtr() {      
       m_HeapEnd = 0;
       m_Pointer = 0;
       m_EndPointer.set(0);
+      if(m_Allocator != null){
+        m_Allocator.reset();
+      }
     }
 
     private void setAddress(long address) {
@@ -300,7 +632,7 @@ public class FastMemory extends Memory {
         m_HeapEnd = address;
     }
 
-    private void incrementAddress(int offset) { 
+    private void incrementAddress(long offset) { 
       m_Pointer += offset;
       if(m_Pointer > m_HeapEnd){
         m_HeapEnd = m_Pointer;
@@ -315,9 +647,6 @@ public class FastMemory extends Memory {
       if(m_Pointer > m_HeapEnd){
         m_HeapEnd = m_Pointer;
       }
-      if(m_Pointer > m_EndPointer.get()){
-        m_EndPointer.set(m_Pointer);
-      }
     }
   }
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.runtime2.cuda;
+
+/**
+ * Estimates the to-space bytes one kernel needs from the batches written so
+ * far, so a batch can be sized to fit the free to-space instead of finding
+ * out by running out of memory. The estimate is kept across runs as long as
+ * the kernel class stays the same.
+ */
+public class KernelSizeEstimate {
+
+  private Class<?> m_KernelClass;
+  private long m_BytesPerKernel;
+
+  public KernelSizeEstimate(){
+    m_BytesPerKernel = -1;
+  }
+
+  public void startRun(Class<?> kernel_class){
+    if(kernel_class != m_KernelClass){
+      m_KernelClass = kernel_class;
+      m_BytesPerKernel = -1;
+    }
+  }
+
+  public boolean isKnown(){
+    return m_BytesPerKernel > 0;
+  }
+
+  /**
+   * Adds a written batch. Larger kernels are followed at once, smaller ones
+   * lower the estimate slowly.
+   */
+  public void record(int count, long bytes){
+    if(count <= 0){
+      return;
+    }
+    long average = (bytes + count - 1) / count;
+    if(average < 1){
+      average = 1;
+    }
+    if(m_BytesPerKernel <= 0 || average > m_BytesPerKernel){
+      m_BytesPerKernel = average;
+    } else {
+      m_BytesPerKernel = (m_BytesPerKernel * 3 + average) / 4;
+    }
+  }
+
+  /**
+   * @return how many kernels fit in free_bytes keeping 1/8 as headroom, or
+   *   -1 if nothing was recorded yet
+   */
+  public int fit(long free_bytes){
+    if(isKnown() == false){
+      return -1;
+    }
+    if(free_bytes <= 0){
+      return 0;
+    }
+    long ret = (free_bytes - free_bytes / 8) / m_BytesPerKernel;
+    if(ret > Integer.MAX_VALUE){
+      return Integer.MAX_VALUE;
+    }
+    return (int) ret;
+  }
+}
@@ -9,11 +9,16 @@ package edu.syr.pcpratts.rootbeer.runtime2.cuda;
 
 import edu.syr.pcpratts.rootbeer.runtime.memory.BufferPrinter;
 import edu.syr.pcpratts.rootbeer.runtime.memory.Memory;
+import edu.syr.pcpratts.rootbeer.runtime.memory.SegmentedBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MemoryTest {
 
   public void run(Memory mem) {
     validate(testBytes(mem));
+    validate(testWords(mem));
+    validate(testArrays(mem));
     System.out.println("TEST PASSED");
   }
 
@@ -34,6 +39,66 @@ public class MemoryTest {
     return true;
   }
 
+  private boolean testWords(Memory mem) {
+    //start at an odd address so values also straddle segment boundaries
+    mem.setAddress(4093);
+    for(int i = 0; i < 1000; ++i){
+      mem.writeShort((short) i);
+      mem.writeInt(i * 31);
+      mem.writeLong(i * 1000000007L);
+      mem.writeDouble(i / 3.0);
+      mem.writeFloat(i / 7.0f);
+    }
+    mem.setAddress(4093);
+    for(int i = 0; i < 1000; ++i){
+      if(mem.readShort() != (short) i || mem.readInt() != i * 31 ||
+         mem.readLong() != i * 1000000007L || mem.readDouble() != i / 3.0 ||
+         mem.readFloat() != i / 7.0f){
+        System.out.println("Word fail at: "+i);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean testArrays(Memory mem) {
+    int[] ints = new int[5000];
+    double[] doubles = new double[3000];
+    char[] chars = new char[100];
+    for(int i = 0; i < ints.length; ++i){
+      ints[i] = i * 17;
+    }
+    for(int i = 0; i < doubles.length; ++i){
+      doubles[i] = i * 0.5;
+    }
+    for(int i = 0; i < chars.length; ++i){
+      chars[i] = (char) ('a' + (i % 26));
+    }
+    mem.setAddress(8);
+    mem.writeArray(ints, 0, ints.length);
+    mem.writeArray(doubles, 0, doubles.length);
+    mem.writeArray(chars, 0, chars.length);
+    
+    int[] ints2 = new int[ints.length];
+    double[] doubles2 = new double[doubles.length];
+    char[] chars2 = new char[chars.length];
+    mem.setAddress(8);
+    mem.readArray(ints2, 0, ints2.length);
+    mem.readArray(doubles2, 0, doubles2.length);
+    mem.readArray(chars2, 0, chars2.length);
+    if(Arrays.equals(ints, ints2) == false || Arrays.equals(doubles, doubles2) == false ||
+       Arrays.equals(chars, chars2) == false){
+      System.out.println("Array fail");
+      return false;
+    }
+    mem.setAddress(8 + 4 * 10);
+    if(mem.readInt() != 10 * 17){
+      System.out.println("Array element fail");
+      return false;
+    }
+    return true;
+  }
+
   private void validate(boolean value) {
     if(value == false){
       System.out.println("TEST FAILED");
@@ -42,6 +107,15 @@ public class MemoryTest {
   }
   
   public static void main(String[] args){
-    CudaRuntime2.v().memoryTest();
+    if(args.length > 0 && args[0].equals("-gpu")){
+      CudaRuntime2.v().memoryTest();
+    } else {
+      //host buffer stand-in with 4KB segments to cover the segment edges
+      long size = 1024*1024;
+      SegmentedBuffer buffer = SegmentedBuffer.allocateDirect(size, 12);
+      FastMemory mem = new FastMemory(buffer, new AtomicLong(0), new AtomicLong(0), size);
+      MemoryTest test = new MemoryTest();
+      test.run(mem);
+    }
   }
 }
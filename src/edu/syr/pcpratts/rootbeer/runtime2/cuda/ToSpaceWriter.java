@@ -10,7 +10,7 @@ package edu.syr.pcpratts.rootbeer.runtime2.cuda;
 import edu.syr.pcpratts.rootbeer.runtime.Serializer;
 import edu.syr.pcpratts.rootbeer.runtime.Kernel;
 import edu.syr.pcpratts.rootbeer.runtime.CompiledKernel;
-import java.util.ArrayList;
+import edu.syr.pcpratts.rootbeer.runtime.util.WriteLog;
 import java.util.List;
 
 public class ToSpaceWriter {
@@ -59,22 +59,30 @@ public class ToSpaceWriter {
     
     public void run() {
       while(true){  
-        List<Long> handles = new ArrayList<Long>();   
-        List<Kernel> items = new ArrayList<Kernel>();
-        List<Kernel> not_written = new ArrayList<Kernel>();
+        InputItem input_item = m_InputQueue.take();
+        List<Kernel> items = input_item.m_Items;
+        long[] handles = new long[items.size()];
+        int count = 0;
+        Throwable error = null;
+        Serializer visitor = input_item.m_Visitor;
+        WriteLog log = visitor.startWriteLog();
         try {
-          InputItem input_item = m_InputQueue.take();
-          not_written.addAll(input_item.m_Items);
-          for(Kernel item : input_item.m_Items){
-            long handle = input_item.m_Visitor.writeToHeap(item);
-            handles.add(handle);
-            items.add(item);
-            not_written.remove(0);
+          for(Kernel item : items){
+            handles[count] = visitor.writeToHeap(item);
+            log.endKernel();
+            count++;
           }     
         } catch(OutOfMemoryError ex){
-          //
+          //the items from count on are not written
+        } catch(Throwable ex){
+          //handed to the joining thread so this thread keeps serving writes
+          error = ex;
         } finally {
-          m_OutputQueue.put(new ToSpaceWriterResult(handles, items, not_written));     
+          visitor.stopWriteLog();
+          ToSpaceWriterResult result = new ToSpaceWriterResult(handles, items, count);
+          result.setError(error);
+          result.setWriteLog(log);
+          m_OutputQueue.put(result);     
         }
       }
     }
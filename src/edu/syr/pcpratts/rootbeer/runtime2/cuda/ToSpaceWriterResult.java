@@ -8,31 +8,91 @@
 package edu.syr.pcpratts.rootbeer.runtime2.cuda;
 
 import edu.syr.pcpratts.rootbeer.runtime.Kernel;
+import edu.syr.pcpratts.rootbeer.runtime.util.WriteLog;
+import java.util.ArrayList;
 import java.util.List;
 
 public class ToSpaceWriterResult {
   
-  private List<Long> m_Handles;
+  private long[] m_Handles;
   private List<Kernel> m_Items;
-  private List<Kernel> m_NotWrittenItems;
+  private int m_Count;
+  private Throwable m_Error;
+  private WriteLog m_WriteLog;
   
-  public ToSpaceWriterResult(List<Long> handles, List<Kernel> items,
-    List<Kernel> not_written){
-    
+  /**
+   * @param handles the handles of the first count items
+   * @param items every item given to the writer
+   * @param count how many items were written
+   */
+  public ToSpaceWriterResult(long[] handles, List<Kernel> items, int count){
     m_Handles = handles;
     m_Items = items;
-    m_NotWrittenItems = not_written;
+    m_Count = count;
   }
   
-  public List<Long> getHandles(){
+  public void setError(Throwable error){
+    m_Error = error;
+  }
+  
+  /**
+   * Throws the error that stopped the writer, if there was one other than
+   * running out of to-space
+   */
+  public void rethrowError(){
+    if(m_Error == null){
+      return;
+    }
+    if(m_Error instanceof RuntimeException){
+      throw (RuntimeException) m_Error;
+    }
+    if(m_Error instanceof Error){
+      throw (Error) m_Error;
+    }
+    throw new RuntimeException(m_Error);
+  }
+  
+  public void setWriteLog(WriteLog log){
+    m_WriteLog = log;
+  }
+  
+  /**
+   * The writers of a batch share their caches, so when one ran out of
+   * to-space the others may have written kernels that reference objects it
+   * never filled in.
+   * @return per result how many of its written items are complete
+   */
+  public static int[] countComplete(List<ToSpaceWriterResult> results){
+    int[] ret = new int[results.size()];
+    boolean any_failed = false;
+    boolean[] failed = new boolean[results.size()];
+    List<WriteLog> logs = new ArrayList<WriteLog>();
+    for(int i = 0; i < results.size(); ++i){
+      ToSpaceWriterResult result = results.get(i);
+      ret[i] = result.m_Count;
+      failed[i] = result.m_Count < result.m_Items.size();
+      any_failed |= failed[i];
+      logs.add(result.m_WriteLog);
+    }
+    if(any_failed){
+      ret = WriteLog.countComplete(logs, failed);
+    }
+    return ret;
+  }
+  
+  public long[] getHandles(){
     return m_Handles;
   }
   
+  public int getCount(){
+    return m_Count;
+  }
+  
   public List<Kernel> getItems(){
-    return m_Items;
+    return m_Items.subList(0, m_Count);
   }
   
   public List<Kernel> getNotWrittenItems(){
-    return m_NotWrittenItems; 
+    return m_Items.subList(m_Count, m_Items.size()); 
   }
 }
@@ -9,35 +9,20 @@
 #include <stdlib.h>
 #include <stdio.h>
 
-jbyteArray array_get(JNIEnv * env, jobject array, int index){
-   jmethodID mid;
-   jclass list_interface = (*env)->FindClass(env, "java/util/List");
-   mid = (*env)->GetMethodID(env, list_interface, "get", "(I)Ljava/lang/Object;");
-   return (*env)->CallObjectMethod(env, array, mid, index);
-}
+typedef void (*entry_t)(char * gc_info_space, jlong * to_space, jlong * handles, 
+  jlong * to_space_free_ptr, jlong * exceptions, jint * class_refs, jlong space_size, int num_threads,
+  int num_cores);
 
 /*
  * Class:     edu_syr_pcpratts_rootbeer_runtime_nativecpu_NativeCpuDevice
- * Method:    runOnCpu
- * Signature: (Ledu/syr/pcpratts/rootbeer/runtime/memory/Memory;Ledu/syr/pcpratts/rootbeer/runtime/memory/Memory;Ledu/syr/pcpratts/rootbeer/runtime/memory/Memory;Ledu/syr/pcpratts/rootbeer/runtime/memory/Memory;)V
+ * Method:    loadEntry
+ * Signature: (Ljava/lang/String;)J
  */
-JNIEXPORT void JNICALL Java_edu_syr_pcpratts_rootbeer_runtime_nativecpu_NativeCpuDevice_runOnCpu
-  (JNIEnv * env, jobject this_ptr, jobject to_space_array, jint to_space_count, 
-   jbyteArray handles, jbyteArray heap_end_ptr, jbyteArray gc_info, jbyteArray exceptions, jintArray java_lang_class_refs, 
-   jint num_threads, jstring lib_name){
+JNIEXPORT jlong JNICALL Java_edu_syr_pcpratts_rootbeer_runtime_nativecpu_NativeCpuDevice_loadEntry
+  (JNIEnv * env, jobject this_ptr, jstring lib_name){
 
-  int i;
-  jbyte * nhandles;
-  jbyte * nheap_end_ptr;
-  jbyte * ngc_info;
-  jbyte * nexceptions;
-  jbyte * nclass_refs;
   char * str;
-  jlong * to_space;
-  jbyteArray curr_to_space;
-
-  void (*entry)(char * gc_info_space, jlong * to_space, jlong * handles, 
-    jlong * to_space_free_ptr, jlong * exceptions, jint * class_refs, jlong space_size, int num_threads);
+  entry_t entry;
   
 #if (defined linux || defined __APPLE_CC__)  
   void * lib_handle;
@@ -45,52 +30,71 @@ JNIEXPORT void JNICALL Java_edu_syr_pcpratts_rootbeer_runtime_nativecpu_NativeCp
   HMODULE lib_handle;
 #endif
 
-  nhandles = (*env)->GetByteArrayElements(env, handles, JNI_FALSE);
-  nheap_end_ptr = (*env)->GetByteArrayElements(env, heap_end_ptr, JNI_FALSE);
-  ngc_info = (*env)->GetByteArrayElements(env, gc_info, JNI_FALSE);
-  nexceptions = (*env)->GetByteArrayElements(env, exceptions, JNI_FALSE);
-  nclass_refs = (jbyte *) (*env)->GetIntArrayElements(env, java_lang_class_refs, JNI_FALSE);
-
   str = (char *) (*env)->GetStringUTFChars(env, lib_name, NULL);
 
 #if (defined linux || defined __APPLE_CC__)  
-  lib_handle = dlopen(str, RTLD_LAZY);
+  lib_handle = dlopen(str, RTLD_NOW);
 #else
   lib_handle = LoadLibrary(str);
 #endif
 
   (*env)->ReleaseStringUTFChars(env, lib_name, str);
 
-  to_space = (jlong *) malloc(sizeof(jlong *) * to_space_count);
-  for(i = 0; i < to_space_count; ++i){
-    curr_to_space = array_get(env, to_space_array, i);
-    to_space[i] = (jlong) (*env)->GetByteArrayElements(env, curr_to_space, JNI_FALSE);
+  if(lib_handle == NULL){
+    return 0;
   }
-  
-#if (defined linux || defined __APPLE_CC__)  
-  entry = dlsym(lib_handle, "entry");
-#else
-  entry = GetProcAddress(lib_handle, "entry");
-#endif
-  
-  (*entry)((char *) ngc_info, to_space, (jlong *) nhandles, (jlong *) nheap_end_ptr, (jlong *) nexceptions, (jint *) nclass_refs, 100*1024*1024, num_threads);  
 
+  //the library stays loaded for the life of the process
 #if (defined linux || defined __APPLE_CC__)  
-  dlclose(lib_handle);
+  entry = (entry_t) dlsym(lib_handle, "entry");
 #else
-  FreeLibrary(lib_handle);
+  entry = (entry_t) GetProcAddress(lib_handle, "entry");
 #endif
 
+  return (jlong) entry;
+}
+
+/*
+ * Class:     edu_syr_pcpratts_rootbeer_runtime_nativecpu_NativeCpuDevice
+ * Method:    runOnCpu
+ * Signature: ([Ljava/nio/ByteBuffer;JLjava/nio/ByteBuffer;Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;[IIIJ)V
+ */
+JNIEXPORT void JNICALL Java_edu_syr_pcpratts_rootbeer_runtime_nativecpu_NativeCpuDevice_runOnCpu
+  (JNIEnv * env, jobject this_ptr, jobjectArray to_space_array, jlong space_size, 
+   jobject handles, jobject heap_end_ptr, jobject gc_info, jobject exceptions, jintArray java_lang_class_refs, 
+   jint num_threads, jint num_cores, jlong entry_ptr){
+
+  int i;
+  int to_space_count;
+  jbyte * nhandles;
+  jbyte * nheap_end_ptr;
+  jbyte * ngc_info;
+  jbyte * nexceptions;
+  jbyte * nclass_refs;
+  jlong * to_space;
+  jobject curr_to_space;
+  entry_t entry;
+
+  entry = (entry_t) entry_ptr;
+
+  //direct buffers are used in place, nothing is copied in or out
+  nhandles = (jbyte *) (*env)->GetDirectBufferAddress(env, handles);
+  nheap_end_ptr = (jbyte *) (*env)->GetDirectBufferAddress(env, heap_end_ptr);
+  ngc_info = (jbyte *) (*env)->GetDirectBufferAddress(env, gc_info);
+  nexceptions = (jbyte *) (*env)->GetDirectBufferAddress(env, exceptions);
+  nclass_refs = (jbyte *) (*env)->GetIntArrayElements(env, java_lang_class_refs, JNI_FALSE);
+
+  to_space_count = (*env)->GetArrayLength(env, to_space_array);
+  to_space = (jlong *) malloc(sizeof(jlong) * to_space_count);
   for(i = 0; i < to_space_count; ++i){
-    curr_to_space = array_get(env, to_space_array, i);
-    (*env)->ReleaseByteArrayElements(env, curr_to_space, (jbyte *) to_space[i], 0);
+    curr_to_space = (*env)->GetObjectArrayElement(env, to_space_array, i);
+    to_space[i] = (jlong) (*env)->GetDirectBufferAddress(env, curr_to_space);
+    (*env)->DeleteLocalRef(env, curr_to_space);
   }
   
-  (*env)->ReleaseByteArrayElements(env, handles, nhandles, 0);
-  (*env)->ReleaseByteArrayElements(env, heap_end_ptr, nheap_end_ptr, 0);
-  (*env)->ReleaseByteArrayElements(env, gc_info, ngc_info, 0);
-  (*env)->ReleaseByteArrayElements(env, exceptions, nexceptions, 0);
-  (*env)->ReleaseIntArrayElements(env, java_lang_class_refs, nclass_refs, 0);
+  (*entry)((char *) ngc_info, to_space, (jlong *) nhandles, (jlong *) nheap_end_ptr, (jlong *) nexceptions, (jint *) nclass_refs, space_size, num_threads, num_cores);  
+
+  (*env)->ReleaseIntArrayElements(env, java_lang_class_refs, (jint *) nclass_refs, 0);
 
   free(to_space);
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.test;
+
+import edu.syr.pcpratts.rootbeer.configuration.Configuration;
+import edu.syr.pcpratts.rootbeer.runtime.Kernel;
+import edu.syr.pcpratts.rootbeer.runtime.Rootbeer;
+import edu.syr.pcpratts.rootbeer.runtime.RootbeerCallback;
+import edu.syr.pcpratts.rootbeer.runtime.RootbeerFuture;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Checks Rootbeer.runAllAsync and runAsync in jemu: results, callbacks,
+ * cancellation before and while running and failures. Needs no gpu.
+ */
+public class AsyncRunCheck {
+
+  public static void main(String[] args) throws Exception {
+    Configuration.runtimeInstance().setMode(Configuration.MODE_JEMU);
+    Rootbeer rootbeer = new Rootbeer();
+
+    //results and callbacks
+    List<Kernel> jobs = createJobs(10000);
+    RootbeerFuture<List<Kernel>> future = rootbeer.runAllAsync(jobs);
+    CountCallback<List<Kernel>> callback = new CountCallback<List<Kernel>>();
+    future.addCallback(callback);
+    check(future.get() == jobs, "result is the job list");
+    for(Kernel job : jobs){
+      check(((CountKernel) job).m_Runs == 1, "every kernel ran once");
+    }
+    callback.await();
+    check(callback.m_Completed == 1 && callback.m_Calls == 1, "completed called once");
+
+    //a run queued behind a slow one is cancelled before it starts
+    SlowJobs slow = new SlowJobs(200);
+    RootbeerFuture<Void> running = rootbeer.runAsync(slow);
+    List<Kernel> queued_jobs = createJobs(100);
+    RootbeerFuture<List<Kernel>> queued = rootbeer.runAllAsync(queued_jobs);
+    CountCallback<List<Kernel>> queued_callback = new CountCallback<List<Kernel>>();
+    queued.addCallback(queued_callback);
+    check(queued.cancel(false), "cancel a queued run");
+    check(queued.isCancelled() && queued.isDone(), "queued run is cancelled");
+    check(queued_callback.m_Cancelled == 1, "cancelled called");
+
+    //the slow run is cancelled while running and stops taking jobs
+    Thread.sleep(50);
+    check(running.cancel(false), "cancel a running run");
+    try {
+      running.get();
+      check(false, "get of a cancelled run throws");
+    } catch(CancellationException ex){
+      //expected
+    }
+    //wait for the device thread by queueing behind it
+    rootbeer.runAllAsync(createJobs(1)).get();
+    check(slow.m_Taken < 200, "cancelled run stopped early: "+slow.m_Taken);
+    for(Kernel job : queued_jobs){
+      check(((CountKernel) job).m_Runs == 0, "cancelled run never started");
+    }
+
+    //failures
+    List<Kernel> failing = new ArrayList<Kernel>();
+    failing.add(new FailingKernel());
+    RootbeerFuture<List<Kernel>> failed = rootbeer.runAllAsync(failing);
+    try {
+      failed.get();
+      check(false, "get of a failed run throws");
+    } catch(ExecutionException ex){
+      //expected
+    }
+    CountCallback<List<Kernel>> failed_callback = new CountCallback<List<Kernel>>();
+    failed.addCallback(failed_callback);
+    check(failed_callback.m_Failed == 1, "failed called at once when done");
+    System.out.println("PASSED");
+  }
+
+  private static List<Kernel> createJobs(int count){
+    List<Kernel> ret = new ArrayList<Kernel>();
+    for(int i = 0; i < count; ++i){
+      ret.add(new CountKernel());
+    }
+    return ret;
+  }
+
+  private static void check(boolean condition, String what){
+    if(condition == false){
+      throw new RuntimeException("FAILED: "+what);
+    }
+  }
+
+  private static class CountKernel implements Kernel {
+
+    private volatile int m_Runs;
+
+    public void gpuMethod(){
+      m_Runs++;
+    }
+  }
+
+  private static class FailingKernel implements Kernel {
+
+    public void gpuMethod(){
+      throw new IllegalStateException("kernel failed");
+    }
+  }
+
+  /**
+   * Hands out kernels slowly so a run lasts long enough to be cancelled
+   */
+  private static class SlowJobs implements Iterator<Kernel> {
+
+    private final int m_Count;
+    private volatile int m_Taken;
+
+    public SlowJobs(int count){
+      m_Count = count;
+    }
+
+    public boolean hasNext(){
+      return m_Taken < m_Count;
+    }
+
+    public Kernel next(){
+      try {
+        Thread.sleep(5);
+      } catch(InterruptedException ex){
+        //ignore
+      }
+      m_Taken++;
+      return new CountKernel();
+    }
+
+    public void remove(){
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static class CountCallback<T> implements RootbeerCallback<T> {
+
+    private int m_Calls;
+    private int m_Completed;
+    private int m_Failed;
+    private int m_Cancelled;
+
+    public synchronized void completed(T result){
+      m_Completed++;
+      called();
+    }
+
+    public synchronized void failed(Throwable ex){
+      m_Failed++;
+      called();
+    }
+
+    public synchronized void cancelled(){
+      m_Cancelled++;
+      called();
+    }
+
+    private void called(){
+      m_Calls++;
+      notifyAll();
+    }
+
+    public synchronized void await() throws InterruptedException {
+      while(m_Calls == 0){
+        wait();
+      }
+    }
+  }
+}
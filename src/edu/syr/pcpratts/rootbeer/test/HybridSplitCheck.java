@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.test;
+
+import edu.syr.pcpratts.rootbeer.runtime.HybridRuntime;
+import edu.syr.pcpratts.rootbeer.runtime.Kernel;
+import edu.syr.pcpratts.rootbeer.runtime.ParallelRuntime;
+import edu.syr.pcpratts.rootbeer.runtime.PartiallyCompletedParallelJob;
+import edu.syr.pcpratts.rootbeer.runtime.Rootbeer;
+import edu.syr.pcpratts.rootbeer.runtime.ThreadConfig;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Runs HybridRuntime over a stand in device that needs m_DeviceNanos per
+ * kernel while a kernel takes m_CpuNanos on one host core. Prints how the
+ * cpu share settles next to the share that makes both sides finish
+ * together, and checks every kernel ran exactly once. Needs no gpu.
+ */
+public class HybridSplitCheck {
+
+  private static final long m_DeviceNanos = 2000;
+  private static final long m_CpuNanos = 20000;
+  private static final int m_DeviceBatch = 20000;
+
+  public static void main(String[] args) throws Exception {
+    HybridRuntime hybrid = HybridRuntime.v(new StandInDevice());
+    int cores = Runtime.getRuntime().availableProcessors();
+    double cpu_rate = (double) cores / m_CpuNanos;
+    double device_rate = 1.0 / m_DeviceNanos;
+    System.out.println("balanced cpu share: "+(cpu_rate / (cpu_rate + device_rate)));
+
+    for(int run = 0; run < 8; ++run){
+      List<Kernel> jobs = new ArrayList<Kernel>();
+      for(int i = 0; i < 50000; ++i){
+        jobs.add(new SpinKernel());
+      }
+      long start = System.nanoTime();
+      Iterator<Kernel> iter = jobs.iterator();
+      int returned = 0;
+      while(iter.hasNext()){
+        PartiallyCompletedParallelJob partial = hybrid.run(iter, null, null);
+        returned += partial.getActiveJobs().size();
+        iter = partial.getJobsToEnqueue();
+      }
+      long millis = (System.nanoTime() - start) / 1000000;
+      for(Kernel job : jobs){
+        if(((SpinKernel) job).m_Runs != 1){
+          throw new RuntimeException("FAILED: a kernel ran "+((SpinKernel) job).m_Runs+" times");
+        }
+      }
+      if(returned != jobs.size()){
+        throw new RuntimeException("FAILED: returned "+returned+" of "+jobs.size());
+      }
+      System.out.println("run: "+run+" time: "+millis+"ms cpu share now: "+hybrid.getCpuFraction());
+    }
+  }
+
+  private static class SpinKernel implements Kernel {
+
+    private int m_Runs;
+
+    public void gpuMethod(){
+      long end = System.nanoTime() + m_CpuNanos;
+      while(System.nanoTime() < end){
+        //spin
+      }
+      m_Runs++;
+    }
+  }
+
+  private static class StandInDevice implements ParallelRuntime {
+
+    public PartiallyCompletedParallelJob run(Iterator<Kernel> jobs, Rootbeer rootbeer,
+      ThreadConfig thread_config){
+
+      PartiallyCompletedParallelJob ret = new PartiallyCompletedParallelJob(jobs);
+      int count = 0;
+      while(count < m_DeviceBatch && jobs.hasNext()){
+        SpinKernel kernel = (SpinKernel) jobs.next();
+        kernel.m_Runs++;
+        ret.enqueueJob(kernel);
+        count++;
+      }
+      long nanos = count * m_DeviceNanos;
+      try {
+        Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+      } catch(InterruptedException ex){
+        //ignore
+      }
+      return ret;
+    }
+
+    public boolean isGpuPresent(){
+      return true;
+    }
+  }
+}
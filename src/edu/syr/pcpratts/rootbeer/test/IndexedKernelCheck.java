@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.test;
+
+import edu.syr.pcpratts.rootbeer.configuration.Configuration;
+import edu.syr.pcpratts.rootbeer.runtime.IndexedKernel;
+import edu.syr.pcpratts.rootbeer.runtime.Rootbeer;
+import edu.syr.pcpratts.rootbeer.runtime.ThreadConfig;
+import edu.syr.pcpratts.rootbeer.runtime.cpu.CpuRuntime;
+
+/**
+ * Checks that an IndexedKernel runs once for every thread of a ThreadConfig
+ * on the java cores and in the fallback for uncompiled kernels, and that
+ * an exception of one index reaches the caller. Needs no gpu.
+ */
+public class IndexedKernelCheck {
+
+  public static void main(String[] args){
+    Configuration.runtimeInstance().setMode(Configuration.MODE_JEMU);
+    int block_shape = 256;
+    int grid_shape = 4096;
+    int num_threads = block_shape * grid_shape;
+
+    SquareKernel kernel = new SquareKernel(num_threads);
+    long start = System.nanoTime();
+    CpuRuntime.v().runIndexed(kernel, num_threads);
+    long nanos = System.nanoTime() - start;
+    kernel.verify();
+    System.out.println("threads: "+num_threads+" cpu cores: "+(nanos / 1000000)+"ms");
+
+    SquareKernel fallback = new SquareKernel(num_threads);
+    Rootbeer rootbeer = new Rootbeer();
+    rootbeer.run(fallback, new ThreadConfig(block_shape, grid_shape));
+    fallback.verify();
+
+    try {
+      CpuRuntime.v().runIndexed(new FailingKernel(), 1000);
+      throw new RuntimeException("FAILED: exception of one index was lost");
+    } catch(IllegalStateException ex){
+      //expected
+    }
+    System.out.println("PASSED");
+  }
+
+  private static class SquareKernel implements IndexedKernel {
+
+    private long[] m_Squares;
+
+    public SquareKernel(int size){
+      m_Squares = new long[size];
+    }
+
+    public void gpuMethod(int index){
+      m_Squares[index] += (long) index * index;
+    }
+
+    public void verify(){
+      for(int i = 0; i < m_Squares.length; ++i){
+        if(m_Squares[i] != (long) i * i){
+          throw new RuntimeException("FAILED: index "+i+" ran wrong");
+        }
+      }
+    }
+  }
+
+  private static class FailingKernel implements IndexedKernel {
+
+    public void gpuMethod(int index){
+      if(index == 500){
+        throw new IllegalStateException("index failed");
+      }
+    }
+  }
+}
@@ -62,6 +62,7 @@ public class Main implements TestSerializationFactory {
     ret.add(new StringTest());
     ret.add(new StepFilterTest());
     ret.add(new GpuListTest());
+    ret.add(new LinkedListTest());
     ret.add(new WhileTrueTest());
     ret.add(new ArraySumTest());
     ret.add(new RemapTest());
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.test;
+
+import edu.syr.pcpratts.rootbeer.runtime.CompiledKernel;
+import edu.syr.pcpratts.rootbeer.runtime.Kernel;
+import edu.syr.pcpratts.rootbeer.runtime.PinnedObjects;
+import edu.syr.pcpratts.rootbeer.runtime.PinnedSpace;
+import edu.syr.pcpratts.rootbeer.runtime.Serializer;
+import edu.syr.pcpratts.rootbeer.runtime.memory.DirectMemory;
+import edu.syr.pcpratts.rootbeer.runtime.memory.Memory;
+import edu.syr.pcpratts.rootbeer.runtime.memory.RegionAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs an iterative row sum over a pinned matrix on a to-space set up like
+ * GcHeap does and prints the bytes written per iteration. Only the first
+ * iteration and the one after markDirty should write the matrix, its ref
+ * must not change and it must never be read back. After unpin it is
+ * written every iteration again. Kernels storing references or values into
+ * a pinned array are rejected. Needs no gpu and no native code.
+ */
+public class PinnedObjectsCheck {
+
+  private static final int m_Size = 1024;
+  private static final long m_SpaceSize = 64L*1024L*1024L;
+
+  private static int m_MatrixReads;
+
+  public static void main(String[] args){
+    DirectMemory to_space = new DirectMemory(m_SpaceSize);
+    List<Memory> views = new ArrayList<Memory>();
+    AtomicLong free_pointer = new AtomicLong(0);
+    for(int i = 0; i < 2; ++i){
+      Memory view = i == 0 ? to_space : to_space.createView();
+      view.setRegionAllocator(new RegionAllocator(free_pointer, 
+        RegionAllocator.DEFAULT_REGION_SIZE, m_SpaceSize));
+      views.add(view);
+    }
+    PinnedSpace space = PinnedObjects.v().createSpace();
+
+    double[] matrix = new double[m_Size * m_Size];
+    for(int i = 0; i < matrix.length; ++i){
+      matrix[i] = i % 7;
+    }
+    PinnedObjects.v().pin(matrix);
+
+    long matrix_ref = -1;
+    for(int iter = 0; iter < 8; ++iter){
+      if(iter == 3){
+        for(int i = 0; i < matrix.length; ++i){
+          matrix[i] = i % 5;
+        }
+        PinnedObjects.v().markDirty(matrix);
+      }
+      if(iter == 6){
+        PinnedObjects.v().unpin(matrix);
+      }
+      List<RowKernel> kernels = new ArrayList<RowKernel>();
+      for(int row = 0; row < m_Size; ++row){
+        kernels.add(new RowKernel(matrix, row));
+      }
+      m_MatrixReads = 0;
+      long bytes = run(views, space, kernels, new RowCompiledKernel(null));
+      for(RowKernel kernel : kernels){
+        kernel.verify();
+      }
+      long ref = space.getRef(matrix);
+      System.out.println("iteration: "+iter+" bytes written: "+bytes+" pinned bytes: "+
+        space.getBytesWritten()+" matrix reads: "+m_MatrixReads);
+      if(iter == 0){
+        matrix_ref = ref;
+      }
+      if(iter < 6){
+        check(ref == matrix_ref, "the matrix keeps its ref");
+        check(m_MatrixReads == 0, "a pinned matrix is not read back");
+        boolean written = iter == 0 || iter == 3;
+        check((bytes > matrix.length * 8L) == written, "the matrix is only written when needed");
+      } else {
+        check(ref == -1, "an unpinned matrix has no ref");
+        check(bytes > matrix.length * 8L, "an unpinned matrix is written every run");
+      }
+    }
+
+    Object[] rows = new Object[]{ matrix };
+    PinnedObjects.v().pin(rows);
+    List<RowKernel> kernels = new ArrayList<RowKernel>();
+    kernels.add(new RowKernel(matrix, 0));
+    run(views, space, kernels, new RowCompiledKernel(null));
+    check(rejects(views, space, kernels, Object[].class), 
+      "a kernel storing references into a pinned array is rejected");
+    check(rejects(views, space, kernels, double[].class), 
+      "a kernel storing values into a pinned array is rejected");
+    PinnedObjects.v().unpin(rows);
+    System.out.println("PASSED");
+  }
+
+  private static boolean rejects(List<Memory> views, PinnedSpace space, 
+    List<RowKernel> kernels, Class<?> written){
+    
+    try {
+      run(views, space, kernels, new RowCompiledKernel(written));
+    } catch(IllegalArgumentException ex){
+      return true;
+    }
+    return false;
+  }
+  
+  /**
+   * Writes statics, pinned objects and kernels like GcHeap, sums the rows 
+   * in the to-space in place of a device and reads the kernels back.
+   * @return the bytes written
+   */
+  private static long run(List<Memory> views, PinnedSpace space, List<RowKernel> kernels,
+    CompiledKernel compiled){
+
+    List<Serializer> serializers = new ArrayList<Serializer>();
+    for(Memory view : views){
+      view.setAddress(0);
+      view.clearHeapEndPtr();
+      Serializer serializer = new RowSerializer(view);
+      serializer.setPinnedSpace(space);
+      if(serializers.isEmpty() == false){
+        serializer.shareCaches(serializers.get(0));
+      }
+      serializers.add(serializer);
+    }
+    serializers.get(0).writeStaticsToHeap();
+    space.write(serializers.get(0), views, compiled);
+
+    long[] handles = new long[kernels.size()];
+    for(int i = 0; i < kernels.size(); ++i){
+      handles[i] = serializers.get(i % serializers.size()).writeToHeap(kernels.get(i));
+    }
+    long ret = 0;
+    for(Serializer serializer : serializers){
+      ret += serializer.getBytesWritten();
+    }
+
+    Memory mem = views.get(0);
+    for(long handle : handles){
+      mem.setAddress(handle + 8);
+      int row = mem.readInt();
+      mem.incrementAddress(4);
+      long matrix = mem.readLong();
+      mem.setAddress(matrix + 8);
+      double sum = 0;
+      mem.incrementAddress(row * m_Size * 8);
+      for(int i = 0; i < m_Size; ++i){
+        sum += mem.readDouble();
+      }
+      mem.setAddress(handle + 24);
+      mem.writeDouble(sum);
+    }
+
+    for(int i = 0; i < kernels.size(); ++i){
+      serializers.get(0).readFromHeap(kernels.get(i), true, handles[i]);
+    }
+    return ret;
+  }
+
+  private static void check(boolean condition, String what){
+    if(condition == false){
+      throw new RuntimeException("FAILED: "+what);
+    }
+  }
+
+  private static class RowKernel implements Kernel {
+
+    private double[] m_Matrix;
+    private int m_Row;
+    private double m_Sum;
+
+    public RowKernel(double[] matrix, int row){
+      m_Matrix = matrix;
+      m_Row = row;
+    }
+
+    public void gpuMethod(){
+      m_Sum = 0;
+      for(int i = 0; i < m_Size; ++i){
+        m_Sum += m_Matrix[m_Row * m_Size + i];
+      }
+    }
+
+    public void verify(){
+      double sum = m_Sum;
+      gpuMethod();
+      check(sum == m_Sum, "row "+m_Row+" summed on the to-space");
+    }
+  }
+
+  /**
+   * Stands in for the generated class of RowKernel. The kernel claims to
+   * store into objects of the written type, if it is given one.
+   */
+  private static class RowCompiledKernel implements CompiledKernel {
+
+    private Class<?> m_Written;
+
+    public RowCompiledKernel(Class<?> written){
+      m_Written = written;
+    }
+
+    public String getCodeUnix(){
+      return null;
+    }
+
+    public String getCodeWindows(){
+      return null;
+    }
+
+    public int getNullPointerNumber(){
+      return 0;
+    }
+
+    public int getOutOfMemoryNumber(){
+      return 0;
+    }
+
+    public String getCubin(){
+      return null;
+    }
+
+    public Serializer getSerializer(Memory mem, Memory texture_mem){
+      return new RowSerializer(mem);
+    }
+
+    public boolean isUsingGarbageCollector(){
+      return false;
+    }
+
+    public boolean isReadOnly(){
+      return false;
+    }
+
+    public boolean writesStatics(){
+      return false;
+    }
+
+    public boolean writesFieldsOf(Object o){
+      return m_Written != null && m_Written.isInstance(o);
+    }
+  }
+
+  /**
+   * A RowKernel is [size, row, pad, matrix ref, sum], a double[] is 
+   * [size, length, values] and an Object[] is [size, length, refs]
+   */
+  private static class RowSerializer extends Serializer {
+
+    public RowSerializer(Memory mem){
+      super(mem, mem);
+    }
+
+    @Override
+    public void doWriteToHeap(Object o, boolean write_data, long ref, boolean read_only){
+      if(o instanceof RowKernel){
+        RowKernel kernel = (RowKernel) o;
+        long matrix = writeToHeap(kernel.m_Matrix);
+        mMem.setAddress(ref);
+        mMem.writeLong(32);
+        mMem.writeInt(kernel.m_Row);
+        mMem.writeInt(0);
+        mMem.writeLong(matrix);
+        mMem.writeDouble(kernel.m_Sum);
+      } else if(o instanceof Object[]){
+        Object[] array = (Object[]) o;
+        long[] refs = new long[array.length];
+        for(int i = 0; i < array.length; ++i){
+          refs[i] = writeToHeap(array[i]);
+        }
+        mMem.setAddress(ref);
+        mMem.writeInt(doGetSize(o));
+        mMem.writeInt(array.length);
+        for(long element : refs){
+          mMem.writeLong(element);
+        }
+      } else {
+        double[] array = (double[]) o;
+        mMem.writeInt(doGetSize(o));
+        mMem.writeInt(array.length);
+        mMem.writeArray(array, 0, array.length);
+      }
+    }
+
+    @Override
+    public void doWriteStaticsToHeap(){
+      mMem.mallocWithSize(64);
+    }
+
+    @Override
+    public Object doReadFromHeap(Object o, boolean read_data, long ref){
+      if(o instanceof RowKernel){
+        RowKernel kernel = (RowKernel) o;
+        mMem.setAddress(ref + 16);
+        long matrix = mMem.readLong();
+        kernel.m_Sum = mMem.readDouble();
+        readFromHeap(kernel.m_Matrix, true, matrix);
+        return kernel;
+      }
+      m_MatrixReads++;
+      double[] array = (double[]) o;
+      mMem.setAddress(ref + 8);
+      mMem.readArray(array, 0, array.length);
+      return array;
+    }
+
+    @Override
+    public void doReadStaticsFromHeap(){
+    }
+
+    @Override
+    public int doGetSize(Object o){
+      if(o instanceof RowKernel){
+        return 32;
+      }
+      if(o instanceof Object[]){
+        return 8 + ((Object[]) o).length * 8;
+      }
+      return 8 + ((double[]) o).length * 8;
+    }
+  }
+}
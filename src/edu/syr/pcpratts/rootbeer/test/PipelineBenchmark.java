@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.test;
+
+import edu.syr.pcpratts.rootbeer.runtime.Kernel;
+import edu.syr.pcpratts.rootbeer.runtime.PartiallyCompletedParallelJob;
+import edu.syr.pcpratts.rootbeer.runtime.PipelineBatch;
+import edu.syr.pcpratts.rootbeer.runtime.PipelinedResultIterator;
+import edu.syr.pcpratts.rootbeer.runtime.Rootbeer;
+import edu.syr.pcpratts.rootbeer.runtime.StagedRuntime;
+import edu.syr.pcpratts.rootbeer.runtime.ThreadConfig;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Runs PipelinedResultIterator over a StagedRuntime whose stages only sleep
+ * and prints the stage utilization for depth one (no overlap) and depth
+ * three. With equal stage times depth three should take about a third of
+ * the time. Needs no gpu and no native code.
+ */
+public class PipelineBenchmark {
+
+  private static final int m_BatchSize = 100;
+  private static final int m_StageMillis = 20;
+
+  public static void main(String[] args){
+    int num_kernels = 50 * m_BatchSize;
+    for(int depth = 1; depth <= 3; ++depth){
+      List<Kernel> jobs = new ArrayList<Kernel>();
+      for(int i = 0; i < num_kernels; ++i){
+        jobs.add(new CountKernel());
+      }
+      PipelinedResultIterator iter = new PipelinedResultIterator(jobs.iterator(),
+        new SleepRuntime(), null, null, depth);
+      int count = 0;
+      while(iter.hasNext()){
+        CountKernel kernel = (CountKernel) iter.next();
+        if(kernel.m_Runs != 1){
+          throw new RuntimeException("kernel ran "+kernel.m_Runs+" times");
+        }
+        ++count;
+      }
+      if(count != num_kernels){
+        throw new RuntimeException("only got "+count+" of "+num_kernels);
+      }
+      System.out.println(iter.getStats());
+    }
+  }
+
+  private static class CountKernel implements Kernel {
+
+    private int m_Runs;
+
+    public void gpuMethod(){
+      m_Runs++;
+    }
+  }
+
+  private static class SleepBatch extends PipelineBatch {
+
+    private List<Kernel> m_Kernels;
+
+    public SleepBatch(List<Kernel> kernels, Iterator<Kernel> remaining){
+      super(remaining, kernels.size(), false);
+      m_Kernels = kernels;
+    }
+  }
+
+  private static class SleepRuntime implements StagedRuntime {
+
+    public PipelineBatch serialize(Iterator<Kernel> jobs, ThreadConfig thread_config){
+      List<Kernel> kernels = new ArrayList<Kernel>();
+      while(jobs.hasNext() && kernels.size() < m_BatchSize){
+        kernels.add(jobs.next());
+      }
+      sleep();
+      return new SleepBatch(kernels, jobs);
+    }
+
+    public void execute(PipelineBatch batch){
+      for(Kernel kernel : ((SleepBatch) batch).m_Kernels){
+        kernel.gpuMethod();
+      }
+      sleep();
+    }
+
+    public List<Kernel> deserialize(PipelineBatch batch){
+      sleep();
+      return ((SleepBatch) batch).m_Kernels;
+    }
+
+    public void release(PipelineBatch batch){
+    }
+
+    public PartiallyCompletedParallelJob run(Iterator<Kernel> blocks, Rootbeer rootbeer, ThreadConfig thread_config){
+      throw new UnsupportedOperationException();
+    }
+
+    public boolean isGpuPresent(){
+      return false;
+    }
+
+    private void sleep(){
+      try {
+        Thread.sleep(m_StageMillis);
+      } catch(InterruptedException ex){
+        //ignore
+      }
+    }
+  }
+}
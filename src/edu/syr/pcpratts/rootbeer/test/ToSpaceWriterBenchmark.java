@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ *
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.test;
+
+import edu.syr.pcpratts.rootbeer.runtime.Kernel;
+import edu.syr.pcpratts.rootbeer.runtime.Serializer;
+import edu.syr.pcpratts.rootbeer.runtime.memory.DirectMemory;
+import edu.syr.pcpratts.rootbeer.runtime.memory.Memory;
+import edu.syr.pcpratts.rootbeer.runtime2.cuda.ToSpaceWriter;
+import edu.syr.pcpratts.rootbeer.runtime2.cuda.ToSpaceWriterResult;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times filling a to-space with 100K to 10M small kernels through
+ * ToSpaceWriter. The time per kernel should stay flat as the count grows.
+ * Needs no gpu, run with a large heap (-Xmx2g) for the 10M case.
+ */
+public class ToSpaceWriterBenchmark {
+
+  private static final int m_KernelSize = 32;
+
+  public static void main(String[] args){
+    int[] counts = new int[] { 100000, 1000000, 10000000 };
+    ToSpaceWriter writer = new ToSpaceWriter();
+    //warm up
+    run(writer, 100000);
+    for(int count : counts){
+      long nanos = run(writer, count);
+      System.out.println("kernels: "+count+" time: "+(nanos / 1000000)+"ms per kernel: "+(nanos / count)+"ns");
+    }
+  }
+
+  private static long run(ToSpaceWriter writer, int count){
+    List<Kernel> kernels = new ArrayList<Kernel>(count);
+    for(int i = 0; i < count; ++i){
+      kernels.add(new SmallKernel(i));
+    }
+    Memory mem = new DirectMemory((long) count * m_KernelSize + 1024);
+    Serializer serializer = new SmallKernelSerializer(mem);
+
+    long start = System.nanoTime();
+    writer.write(kernels, serializer);
+    ToSpaceWriterResult result = writer.join();
+    long ret = System.nanoTime() - start;
+
+    if(result.getCount() != count){
+      throw new RuntimeException("only wrote "+result.getCount()+" of "+count);
+    }
+    return ret;
+  }
+
+  private static class SmallKernel implements Kernel {
+
+    private int m_Value;
+
+    public SmallKernel(int value){
+      m_Value = value;
+    }
+
+    public void gpuMethod(){
+      m_Value++;
+    }
+  }
+
+  private static class SmallKernelSerializer extends Serializer {
+
+    public SmallKernelSerializer(Memory mem){
+      super(mem, mem);
+    }
+
+    @Override
+    public void doWriteToHeap(Object o, boolean write_data, long ref, boolean read_only){
+      SmallKernel kernel = (SmallKernel) o;
+      mMem.writeInt(m_KernelSize);
+      mMem.writeInt(kernel.m_Value);
+    }
+
+    @Override
+    public void doWriteStaticsToHeap(){
+    }
+
+    @Override
+    public Object doReadFromHeap(Object o, boolean read_data, long ref){
+      return o;
+    }
+
+    @Override
+    public void doReadStaticsFromHeap(){
+    }
+
+    @Override
+    public int doGetSize(Object o){
+      return m_KernelSize;
+    }
+  }
+}
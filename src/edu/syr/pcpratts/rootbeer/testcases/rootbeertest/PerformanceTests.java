@@ -15,6 +15,7 @@ import edu.syr.pcpratts.rootbeer.testcases.rootbeertest.baseconversion.BaseConve
 import edu.syr.pcpratts.rootbeer.testcases.rootbeertest.gpurequired.BruteForceFFTTest;
 import edu.syr.pcpratts.rootbeer.testcases.rootbeertest.ofcoarse.OfCoarse;
 import edu.syr.pcpratts.rootbeer.testcases.rootbeertest.serialization.MMult;
+import edu.syr.pcpratts.rootbeer.testcases.rootbeertest.serialization.SparseWriteTest;
 
 public class PerformanceTests implements TestSerializationFactory {
   
@@ -24,6 +25,7 @@ public class PerformanceTests implements TestSerializationFactory {
     ret.add(new OfCoarse());
     ret.add(new BaseConversionTest());
     ret.add(new BruteForceFFTTest());
+    ret.add(new SparseWriteTest());
     return ret;
   }
 
@@ -0,0 +1,36 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.testcases.rootbeertest.serialization;
+
+public class GarbageCollectNode {
+
+  private int[] m_Values;
+  private GarbageCollectNode m_Next;
+
+  public GarbageCollectNode(int[] values, GarbageCollectNode next){
+    m_Values = values;
+    m_Next = next;
+  }
+
+  public boolean compare(GarbageCollectNode rhs){
+    GarbageCollectNode lhs = this;
+    while(lhs != null && rhs != null){
+      if(lhs.m_Values.length != rhs.m_Values.length){
+        return false;
+      }
+      for(int i = 0; i < lhs.m_Values.length; ++i){
+        if(lhs.m_Values[i] != rhs.m_Values[i]){
+          return false;
+        }
+      }
+      lhs = lhs.m_Next;
+      rhs = rhs.m_Next;
+    }
+    return lhs == null && rhs == null;
+  }
+}
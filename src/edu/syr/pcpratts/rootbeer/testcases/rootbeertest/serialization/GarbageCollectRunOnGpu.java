@@ -0,0 +1,44 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.testcases.rootbeertest.serialization;
+
+import edu.syr.pcpratts.rootbeer.runtime.Kernel;
+
+public class GarbageCollectRunOnGpu implements Kernel {
+
+  private int m_Seed;
+  private int m_Iterations;
+  private int m_KeepEvery;
+  private GarbageCollectNode m_Kept;
+
+  public GarbageCollectRunOnGpu(int seed, int iterations, int keep_every){
+    m_Seed = seed;
+    m_Iterations = iterations;
+    m_KeepEvery = keep_every;
+  }
+
+  public void gpuMethod() {
+    for(int i = 0; i < m_Iterations; ++i){
+      int[] values = new int[256];
+      for(int j = 0; j < values.length; ++j){
+        values[j] = m_Seed + i + j;
+      }
+      if(i % m_KeepEvery == 0){
+        m_Kept = new GarbageCollectNode(values, m_Kept);
+      }
+    }
+  }
+
+  boolean compare(GarbageCollectRunOnGpu rhs) {
+    if(m_Kept == null || rhs.m_Kept == null){
+      System.out.println("m_Kept null");
+      return false;
+    }
+    return m_Kept.compare(rhs.m_Kept);
+  }
+}
@@ -0,0 +1,35 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.testcases.rootbeertest.serialization;
+
+import edu.syr.pcpratts.rootbeer.runtime.Kernel;
+import edu.syr.pcpratts.rootbeer.test.TestSerialization;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kernels allocating about 50MB they drop and keep a short list in a field.
+ * Under nemu the heap fills during the run and the kept lists have to 
+ * survive the collection.
+ */
+public class GarbageCollectTest implements TestSerialization {
+
+  public List<Kernel> create() {
+    List<Kernel> ret = new ArrayList<Kernel>();
+    for(int i = 0; i < 512; ++i){
+      ret.add(new GarbageCollectRunOnGpu(i * 1000, 100, 25));
+    }
+    return ret;
+  }
+
+  public boolean compare(Kernel original, Kernel from_heap) {
+    GarbageCollectRunOnGpu lhs = (GarbageCollectRunOnGpu) original;
+    GarbageCollectRunOnGpu rhs = (GarbageCollectRunOnGpu) from_heap;
+    return lhs.compare(rhs);
+  }
+}
@@ -0,0 +1,31 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.testcases.rootbeertest.serialization;
+
+public class LinkedListNode {
+
+  private int m_Value;
+  private LinkedListNode m_Next;
+  
+  public LinkedListNode(int value, LinkedListNode next){
+    m_Value = value;
+    m_Next = next;
+  }
+  
+  public int getValue(){
+    return m_Value;
+  }
+  
+  public void setValue(int value){
+    m_Value = value;
+  }
+  
+  public LinkedListNode getNext(){
+    return m_Next;
+  }
+}
@@ -0,0 +1,50 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.testcases.rootbeertest.serialization;
+
+import edu.syr.pcpratts.rootbeer.runtime.Kernel;
+
+public class LinkedListRunOnGpu implements Kernel {
+
+  private LinkedListNode m_Head;
+  
+  public LinkedListRunOnGpu(int length){
+    LinkedListNode head = null;
+    for(int i = length - 1; i >= 0; --i){
+      head = new LinkedListNode(i, head);
+    }
+    m_Head = head;
+  }
+  
+  @Override
+  public void gpuMethod() {
+    LinkedListNode curr = m_Head;
+    while(curr != null){
+      curr.setValue(curr.getValue() + 1);
+      curr = curr.getNext();
+    }
+  }
+  
+  public boolean compare(LinkedListRunOnGpu rhs){
+    LinkedListNode lhs_curr = m_Head;
+    LinkedListNode rhs_curr = rhs.m_Head;
+    while(lhs_curr != null && rhs_curr != null){
+      if(lhs_curr.getValue() != rhs_curr.getValue()){
+        System.out.println("value: "+lhs_curr.getValue()+" != "+rhs_curr.getValue());
+        return false;
+      }
+      lhs_curr = lhs_curr.getNext();
+      rhs_curr = rhs_curr.getNext();
+    }
+    if(lhs_curr != null || rhs_curr != null){
+      System.out.println("lengths differ");
+      return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,34 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.testcases.rootbeertest.serialization;
+
+import edu.syr.pcpratts.rootbeer.runtime.Kernel;
+import edu.syr.pcpratts.rootbeer.test.TestSerialization;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A million node linked list is deeper than the java stack allows for a
+ * recursive serializer.
+ */
+public class LinkedListTest implements TestSerialization {
+
+  @Override
+  public List<Kernel> create() {
+    List<Kernel> ret = new ArrayList<Kernel>();
+    ret.add(new LinkedListRunOnGpu(1000000));
+    return ret;
+  }
+
+  @Override
+  public boolean compare(Kernel lhs, Kernel rhs) {
+    LinkedListRunOnGpu blhs = (LinkedListRunOnGpu) lhs;
+    LinkedListRunOnGpu brhs = (LinkedListRunOnGpu) rhs;
+    return blhs.compare(brhs);
+  }
+}
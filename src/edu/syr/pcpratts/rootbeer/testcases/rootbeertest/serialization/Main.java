@@ -41,6 +41,9 @@ public class Main implements TestSerializationFactory {
     ret.add(new SameClassUsedTwiceTest2());
     ret.add(new NativeStrictMathTest());
     ret.add(new MMult());
+    ret.add(new ReadOnlyInputTest());
+    ret.add(new SparseWriteTest());
+    ret.add(new GarbageCollectTest());
     return ret;
   }
 
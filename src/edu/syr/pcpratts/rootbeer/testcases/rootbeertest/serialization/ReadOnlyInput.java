@@ -0,0 +1,30 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.testcases.rootbeertest.serialization;
+
+public class ReadOnlyInput {
+
+  private float[] m_Values;
+  private float m_Scale;
+
+  public ReadOnlyInput(int size, float scale){
+    m_Values = new float[size];
+    for(int i = 0; i < size; ++i){
+      m_Values[i] = i % 13;
+    }
+    m_Scale = scale;
+  }
+
+  public float[] getValues(){
+    return m_Values;
+  }
+
+  public float getScale(){
+    return m_Scale;
+  }
+}
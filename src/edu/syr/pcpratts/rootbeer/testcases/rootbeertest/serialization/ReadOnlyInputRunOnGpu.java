@@ -0,0 +1,63 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.testcases.rootbeertest.serialization;
+
+import edu.syr.pcpratts.rootbeer.runtime.Kernel;
+
+public class ReadOnlyInputRunOnGpu implements Kernel {
+
+  private ReadOnlyInput m_Input;
+  private int m_Index;
+  private double m_Sum;
+  private double[] m_Output;
+
+  public ReadOnlyInputRunOnGpu(ReadOnlyInput input, int index){
+    m_Input = input;
+    m_Index = index;
+    m_Output = new double[4];
+  }
+
+  public void gpuMethod() {
+    float[] values = m_Input.getValues();
+    m_Sum = 0;
+    for(int i = m_Index; i < values.length; i += 16){
+      m_Sum += values[i] * m_Input.getScale();
+    }
+    fill(m_Output, m_Sum);
+  }
+
+  private void fill(double[] output, double value){
+    for(int i = 0; i < output.length; ++i){
+      output[i] = value + i;
+    }
+  }
+
+  boolean compare(ReadOnlyInputRunOnGpu rhs) {
+    if(m_Sum != rhs.m_Sum){
+      System.out.println("sum");
+      System.out.println("lhs: "+m_Sum);
+      System.out.println("rhs: "+rhs.m_Sum);
+      return false;
+    }
+    for(int i = 0; i < m_Output.length; ++i){
+      if(m_Output[i] != rhs.m_Output[i]){
+        System.out.println("output: "+i);
+        return false;
+      }
+    }
+    float[] values = m_Input.getValues();
+    float[] rhs_values = rhs.m_Input.getValues();
+    for(int i = 0; i < values.length; ++i){
+      if(values[i] != rhs_values[i]){
+        System.out.println("input: "+i);
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,35 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.testcases.rootbeertest.serialization;
+
+import edu.syr.pcpratts.rootbeer.runtime.Kernel;
+import edu.syr.pcpratts.rootbeer.test.TestSerialization;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kernels sharing a large input the gpu never writes. Only the sums and
+ * the small output arrays are read back.
+ */
+public class ReadOnlyInputTest implements TestSerialization {
+
+  public List<Kernel> create() {
+    ReadOnlyInput input = new ReadOnlyInput(1024 * 1024, 0.5f);
+    List<Kernel> ret = new ArrayList<Kernel>();
+    for(int i = 0; i < 16; ++i){
+      ret.add(new ReadOnlyInputRunOnGpu(input, i));
+    }
+    return ret;
+  }
+
+  public boolean compare(Kernel original, Kernel from_heap) {
+    ReadOnlyInputRunOnGpu lhs = (ReadOnlyInputRunOnGpu) original;
+    ReadOnlyInputRunOnGpu rhs = (ReadOnlyInputRunOnGpu) from_heap;
+    return lhs.compare(rhs);
+  }
+}
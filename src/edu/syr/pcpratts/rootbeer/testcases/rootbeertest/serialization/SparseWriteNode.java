@@ -0,0 +1,39 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.testcases.rootbeertest.serialization;
+
+public class SparseWriteNode {
+
+  private double[] m_Values;
+  private double m_Weight;
+
+  public SparseWriteNode(int index, int size){
+    m_Values = new double[size];
+    for(int i = 0; i < size; ++i){
+      m_Values[i] = index + i;
+    }
+    m_Weight = index;
+  }
+
+  public void update(double value){
+    m_Weight += value;
+    m_Values[0] = m_Weight;
+  }
+
+  public boolean compare(SparseWriteNode rhs){
+    if(m_Weight != rhs.m_Weight){
+      return false;
+    }
+    for(int i = 0; i < m_Values.length; ++i){
+      if(m_Values[i] != rhs.m_Values[i]){
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,36 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.testcases.rootbeertest.serialization;
+
+import edu.syr.pcpratts.rootbeer.runtime.Kernel;
+
+public class SparseWriteRunOnGpu implements Kernel {
+
+  private SparseWriteNode[] m_Nodes;
+  private int m_Index;
+
+  public SparseWriteRunOnGpu(SparseWriteNode[] nodes, int index){
+    m_Nodes = nodes;
+    m_Index = index;
+  }
+
+  public void gpuMethod() {
+    m_Nodes[m_Index].update(m_Index * 0.5);
+  }
+
+  boolean compare(SparseWriteRunOnGpu rhs) {
+    //the written node and its clean neighbour
+    for(int i = m_Index; i < m_Index + 2 && i < m_Nodes.length; ++i){
+      if(m_Nodes[i].compare(rhs.m_Nodes[i]) == false){
+        System.out.println("node: "+i);
+        return false;
+      }
+    }
+    return true;
+  }
+}
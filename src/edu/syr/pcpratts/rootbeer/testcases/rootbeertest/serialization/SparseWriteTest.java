@@ -0,0 +1,43 @@
+/* 
+ * Copyright 2012 Phil Pratt-Szeliga and other contributors
+ * http://chirrup.org/
+ * 
+ * See the file LICENSE for copying permission.
+ */
+
+package edu.syr.pcpratts.rootbeer.testcases.rootbeertest.serialization;
+
+import edu.syr.pcpratts.rootbeer.runtime.Kernel;
+import edu.syr.pcpratts.rootbeer.test.TestSerialization;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kernels sharing a graph of 64K nodes where the gpu writes one node in a
+ * hundred. Readback only walks the clean nodes and decodes the written 
+ * ones, run under nemu to see the deserialization time.
+ */
+public class SparseWriteTest implements TestSerialization {
+
+  private static final int m_NumNodes = 64 * 1024;
+  private static final int m_NodeSize = 32;
+  private static final int m_Stride = 100;
+
+  public List<Kernel> create() {
+    SparseWriteNode[] nodes = new SparseWriteNode[m_NumNodes];
+    for(int i = 0; i < m_NumNodes; ++i){
+      nodes[i] = new SparseWriteNode(i, m_NodeSize);
+    }
+    List<Kernel> ret = new ArrayList<Kernel>();
+    for(int i = 0; i < m_NumNodes; i += m_Stride){
+      ret.add(new SparseWriteRunOnGpu(nodes, i));
+    }
+    return ret;
+  }
+
+  public boolean compare(Kernel original, Kernel from_heap) {
+    SparseWriteRunOnGpu lhs = (SparseWriteRunOnGpu) original;
+    SparseWriteRunOnGpu rhs = (SparseWriteRunOnGpu) from_heap;
+    return lhs.compare(rhs);
+  }
+}
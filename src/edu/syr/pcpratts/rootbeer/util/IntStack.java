@@ -30,8 +30,7 @@ public class IntStack {
     if(mTopPtr >= mAlloc){
       mAlloc *= 2;
       long[] temp = new long[mAlloc];
-      for(int i = 0; i < mTopPtr-1; ++i)
-        temp[i] = mData[i];
+      System.arraycopy(mData, 0, temp, 0, mTopPtr);
       mData = temp;
     }
     mData[mTopPtr] = value;